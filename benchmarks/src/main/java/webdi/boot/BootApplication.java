@@ -0,0 +1,321 @@
+package webdi.boot;
+
+import webdi.annotation.*;
+
+import java.util.List;
+
+// A small application booted by BootBenchmark: a chain of services, a configuration with beans and a few
+// controllers, next to plain classes the scan has to read and skip.
+public final class BootApplication {
+
+    private BootApplication() {
+    }
+
+    @Configuration
+    public static class BootConfiguration {
+
+        @Bean
+        public StringBuilder greetingBuilder() {
+            return new StringBuilder("hello");
+        }
+
+        @Bean
+        public Clock clock() {
+            return new Clock();
+        }
+    }
+
+    public static class Clock {
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    }
+
+    @Component
+    public static class Service0 {
+        private final Clock clock;
+
+        @Inject
+        public Service0(Clock clock) {
+            this.clock = clock;
+        }
+
+        public String describe(String value) {
+            return value + "@" + clock.now();
+        }
+    }
+
+    @Component
+    public static class Service1 {
+        private final Service0 previous;
+
+        @Inject
+        public Service1(Service0 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 1);
+        }
+    }
+
+    @Component
+    public static class Service2 {
+        private final Service1 previous;
+
+        @Inject
+        public Service2(Service1 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 2);
+        }
+    }
+
+    @Component
+    public static class Service3 {
+        private final Service2 previous;
+
+        @Inject
+        public Service3(Service2 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 3);
+        }
+    }
+
+    @Component
+    public static class Service4 {
+        private final Service3 previous;
+
+        @Inject
+        public Service4(Service3 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 4);
+        }
+    }
+
+    @Component
+    public static class Service5 {
+        private final Service4 previous;
+
+        @Inject
+        public Service5(Service4 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 5);
+        }
+    }
+
+    @Component
+    public static class Service6 {
+        private final Service5 previous;
+
+        @Inject
+        public Service6(Service5 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 6);
+        }
+    }
+
+    @Component
+    public static class Service7 {
+        private final Service6 previous;
+
+        @Inject
+        public Service7(Service6 previous) {
+            this.previous = previous;
+        }
+
+        public String describe(String value) {
+            return previous.describe(value + 7);
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class Controller0 {
+        private final Service7 service;
+
+        @Inject
+        public Controller0(Service7 service) {
+            this.service = service;
+        }
+
+        @Route("/c0/r0/{id}")
+        public String route0(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c0/r1/{id}")
+        public String route1(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c0/r2/{id}")
+        public String route2(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c0/r3/{id}")
+        public String route3(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c0/r4/{id}")
+        public String route4(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class Controller1 {
+        private final Service7 service;
+
+        @Inject
+        public Controller1(Service7 service) {
+            this.service = service;
+        }
+
+        @Route("/c1/r0/{id}")
+        public String route0(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c1/r1/{id}")
+        public String route1(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c1/r2/{id}")
+        public String route2(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c1/r3/{id}")
+        public String route3(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c1/r4/{id}")
+        public String route4(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class Controller2 {
+        private final Service7 service;
+
+        @Inject
+        public Controller2(Service7 service) {
+            this.service = service;
+        }
+
+        @Route("/c2/r0/{id}")
+        public String route0(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c2/r1/{id}")
+        public String route1(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c2/r2/{id}")
+        public String route2(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c2/r3/{id}")
+        public String route3(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c2/r4/{id}")
+        public String route4(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class Controller3 {
+        private final Service7 service;
+
+        @Inject
+        public Controller3(Service7 service) {
+            this.service = service;
+        }
+
+        @Route("/c3/r0/{id}")
+        public String route0(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c3/r1/{id}")
+        public String route1(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c3/r2/{id}")
+        public String route2(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c3/r3/{id}")
+        public String route3(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+
+        @Route("/c3/r4/{id}")
+        public String route4(@PathParam("id") int id, @QueryParam("q") String q) {
+            return service.describe(q + id);
+        }
+    }
+
+    public record Model0(String name, long value, List<String> tags) {
+    }
+
+    public record Model1(String name, long value, List<String> tags) {
+    }
+
+    public record Model2(String name, long value, List<String> tags) {
+    }
+
+    public record Model3(String name, long value, List<String> tags) {
+    }
+
+    public record Model4(String name, long value, List<String> tags) {
+    }
+
+    public record Model5(String name, long value, List<String> tags) {
+    }
+
+    public record Model6(String name, long value, List<String> tags) {
+    }
+
+    public record Model7(String name, long value, List<String> tags) {
+    }
+
+    public record Model8(String name, long value, List<String> tags) {
+    }
+
+    public record Model9(String name, long value, List<String> tags) {
+    }
+
+    public record Model10(String name, long value, List<String> tags) {
+    }
+
+    public record Model11(String name, long value, List<String> tags) {
+    }
+}
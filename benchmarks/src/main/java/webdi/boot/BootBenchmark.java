@@ -0,0 +1,28 @@
+package webdi.boot;
+
+import org.openjdk.jmh.annotations.*;
+import webdi.Config;
+import webdi.WebdiApplication;
+import webdi.web.RequestHandler;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cold start: every fork boots the application once, so class loading and JIT warm-up are part of the time
+// as they are for a fresh container.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class BootBenchmark {
+
+    @Param({"true", "false"})
+    private boolean index;
+
+    @Benchmark
+    public RequestHandler boot() {
+        return WebdiApplication.boot(BootApplication.class, new Config(Map.of("webdi.index.enabled", Boolean.toString(index))));
+    }
+}
@@ -0,0 +1,97 @@
+package webdi.web;
+
+import org.openjdk.jmh.annotations.*;
+import webdi.annotation.Cookie;
+import webdi.annotation.Header;
+import webdi.annotation.PathParam;
+import webdi.annotation.QueryParam;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentBindingBenchmark {
+
+    private RouteHandler routeHandler;
+    private MyRequest request;
+    private Map<String, String> pathParameters;
+
+    @Setup
+    public void setup() throws Exception {
+        Method method = BenchmarkController.class.getMethod("user", int.class, String.class, String.class, String.class);
+        routeHandler = new RouteHandler(method, new BenchmarkController(), BenchmarkController.class, new JsonCodec());
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put("host", List.of("localhost:8080"));
+        headers.put("cookie", List.of("session=0123456789abcdef; theme=dark"));
+        request = new MyRequest(new RequestLine("GET", "/users/42?fields=name", "HTTP/1.1"), headers, RequestBody.of(new byte[0]));
+        pathParameters = Map.of("id", "42");
+    }
+
+    @Benchmark
+    public Object[] precompiledBinders() throws Exception {
+        return routeHandler.bindArguments(new RequestContext(request, pathParameters));
+    }
+
+    // The per-request reflection loop handleRequest used before binders were compiled at startup.
+    @Benchmark
+    public Object[] reflectiveBinding() {
+        String[] requestPathParts = request.requestLine().path().split("\\?");
+        Map<String, String> queryParameters = new HashMap<>();
+        if (requestPathParts.length > 1) {
+            for (String p : requestPathParts[1].split("&")) {
+                String[] pair = p.split("=");
+                queryParameters.put(pair[0], pair[1]);
+            }
+        }
+        Map<String, String> cookies = new HashMap<>();
+        if (request.requestHeaders().containsKey("cookie")) {
+            for (String allCookies : request.requestHeaders().get("cookie")) {
+                for (String splitCookie : allCookies.split(";")) {
+                    String[] cookieProperties = splitCookie.split("=");
+                    cookies.put(cookieProperties[0].trim(), cookieProperties[1].trim());
+                }
+            }
+        }
+        List<Object> dependencies = new ArrayList<>();
+        for (Parameter parameter : routeHandler.getParameters()) {
+            if (parameter.getAnnotation(PathParam.class) != null) {
+                String value = pathParameters.get(parameter.getAnnotation(PathParam.class).value());
+                dependencies.add(convertType(value, parameter.getType()).orElseThrow());
+            } else if (parameter.getAnnotation(QueryParam.class) != null) {
+                String value = queryParameters.get(parameter.getAnnotation(QueryParam.class).value());
+                dependencies.add(convertType(value, parameter.getType()).orElseThrow());
+            } else if (parameter.getAnnotation(Header.class) != null) {
+                String key = parameter.getAnnotation(Header.class).value().toLowerCase();
+                dependencies.add(request.requestHeaders().get(key).get(0));
+            } else if (parameter.getAnnotation(Cookie.class) != null) {
+                dependencies.add(cookies.get(parameter.getAnnotation(Cookie.class).value().toLowerCase()));
+            }
+        }
+        return dependencies.toArray();
+    }
+
+    // The if-chain the converter registry replaced.
+    private static Optional<Object> convertType(String value, Class<?> parameterType) {
+        Function<String, Object> converter;
+        if (parameterType == String.class) {
+            converter = v -> v;
+        } else if (parameterType == Integer.class || parameterType == int.class) {
+            converter = Integer::valueOf;
+        } else if (parameterType == Double.class || parameterType == double.class) {
+            converter = Double::valueOf;
+        } else if (parameterType == Boolean.class || parameterType == boolean.class) {
+            converter = Boolean::valueOf;
+        } else {
+            return Optional.empty();
+        }
+        return Optional.of(converter.apply(value));
+    }
+}
@@ -0,0 +1,29 @@
+package webdi.web;
+
+import webdi.annotation.*;
+
+@Controller(contentType = "text/plain")
+public class BenchmarkController {
+
+    @Route("/users/{id}")
+    public String user(@PathParam("id") int id, @QueryParam("fields") String fields,
+                       @Header("Host") String host, @Cookie("session") String session) {
+        return fields;
+    }
+
+    @Route("/zero")
+    public String zero() {
+        return "zero";
+    }
+
+    @Route("/one/{a}")
+    public int one(@PathParam("a") int a) {
+        return a + 1;
+    }
+
+    @Route("/five")
+    public int five(@QueryParam("a") int a, @QueryParam("b") int b, @QueryParam("c") String c,
+                    @QueryParam("d") String d, @QueryParam("e") boolean e) {
+        return e ? a + b + c.length() : d.length();
+    }
+}
@@ -0,0 +1,67 @@
+package webdi.web;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerInvocationBenchmark {
+
+    @Param({"0", "1", "5"})
+    public int arguments;
+
+    private BenchmarkController controller;
+    private Method method;
+    private MethodHandle spreader;
+    private RouteHandler routeHandler;
+    private Object[] values;
+
+    @Setup
+    public void setup() throws Exception {
+        controller = new BenchmarkController();
+        switch (arguments) {
+            case 0 -> {
+                method = BenchmarkController.class.getMethod("zero");
+                values = new Object[0];
+            }
+            case 1 -> {
+                method = BenchmarkController.class.getMethod("one", int.class);
+                values = new Object[]{41};
+            }
+            default -> {
+                method = BenchmarkController.class.getMethod("five", int.class, int.class, String.class, String.class, boolean.class);
+                values = new Object[]{1, 2, "three", "four", true};
+            }
+        }
+        spreader = MethodHandles.publicLookup().unreflect(method)
+                .bindTo(controller)
+                .asSpreader(Object[].class, values.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        routeHandler = new RouteHandler(method, controller, BenchmarkController.class, new JsonCodec());
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        return method.invoke(controller, values);
+    }
+
+    @Benchmark
+    public Object spreadingMethodHandle() throws Throwable {
+        return (Object) spreader.invokeExact(values);
+    }
+
+    // RouteHandler.execute, backed by the LambdaMetafactory generated invoker
+    @Benchmark
+    public Object generatedInvoker() {
+        return routeHandler.execute(values);
+    }
+}
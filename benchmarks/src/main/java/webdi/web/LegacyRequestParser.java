@@ -0,0 +1,48 @@
+package webdi.web;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// The BufferedReader based parser MyWebServer used before HttpRequestParser, kept as a baseline.
+final class LegacyRequestParser {
+
+    private LegacyRequestParser() {
+    }
+
+    static MyRequest parse(InputStream inputStream) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+        String currentLine;
+        RequestLine requestLine = null;
+        HashMap<String, List<String>> requestHeaders = new HashMap<>();
+        boolean inHeaders = false;
+        while ((currentLine = bufferedReader.readLine()) != null) {
+            if (!inHeaders) {
+                String[] split = currentLine.split(" ");
+                requestLine = new RequestLine(split[0], split[1], split[2]);
+                inHeaders = true;
+            } else {
+                if (currentLine.isEmpty()) {
+                    break;
+                }
+                int index = currentLine.indexOf(":");
+                String name = currentLine.substring(0, index).trim().toLowerCase();
+                String value = currentLine.substring(index + 1).trim();
+                requestHeaders.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (requestHeaders.containsKey("content-length") && requestHeaders.containsKey("content-type")) {
+            int contentLength = Integer.parseInt(requestHeaders.get("content-length").get(0));
+            for (int i = 0; i < contentLength; i++) {
+                body.write((byte) bufferedReader.read());
+            }
+        }
+        return new MyRequest(requestLine, requestHeaders, RequestBody.of(body.toByteArray()));
+    }
+}
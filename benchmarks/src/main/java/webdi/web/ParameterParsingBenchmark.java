@@ -0,0 +1,74 @@
+package webdi.web;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Run with -prof gc, gc.alloc.rate.norm is the allocation per request. Routes that bind no query parameter or
+// cookie don't pay for them, lookups only allocate the value they return.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterParsingBenchmark {
+
+    private MyRequest request;
+    private Map<String, String> pathParameters;
+
+    @Setup
+    public void setup() {
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put("host", List.of("localhost:8080"));
+        headers.put("cookie", List.of("session=0123456789abcdef; theme=dark; tracking=a1b2c3d4e5f6; consent=yes"));
+        request = new MyRequest(new RequestLine("GET", "/users/42?fields=name&sort=desc&page=3&size=50&filter=active", "HTTP/1.1"),
+                headers, RequestBody.of(new byte[0]));
+        pathParameters = Map.of("id", "42");
+    }
+
+    @Benchmark
+    public String unusedParameters() {
+        RequestContext context = new RequestContext(request, pathParameters);
+        return context.pathParameters().get("id");
+    }
+
+    @Benchmark
+    public String queryParameter() {
+        return new RequestContext(request, pathParameters).queryParameter("size");
+    }
+
+    @Benchmark
+    public String missingQueryParameter() {
+        return new RequestContext(request, pathParameters).queryParameter("missing");
+    }
+
+    @Benchmark
+    public String cookie() {
+        return new RequestContext(request, pathParameters).cookie("tracking");
+    }
+
+    // What every request paid before: both split into maps up front.
+    @Benchmark
+    public Object eagerMaps() {
+        Map<String, String> queryParameters = new HashMap<>();
+        String[] requestPathParts = request.requestLine().path().split("\\?");
+        if (requestPathParts.length > 1) {
+            for (String p : requestPathParts[1].split("&")) {
+                String[] pair = p.split("=");
+                queryParameters.put(pair[0], pair[1]);
+            }
+        }
+        Map<String, String> cookies = new HashMap<>();
+        for (String allCookies : request.requestHeaders().get("cookie")) {
+            for (String splitCookie : allCookies.split(";")) {
+                String[] cookieProperties = splitCookie.split("=");
+                cookies.put(cookieProperties[0].trim(), cookieProperties[1].trim());
+            }
+        }
+        return pathParameters.get("id") + queryParameters.size() + cookies.size();
+    }
+}
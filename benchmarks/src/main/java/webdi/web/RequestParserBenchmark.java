@@ -0,0 +1,60 @@
+package webdi.web;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParserBenchmark {
+
+    @Param({"get", "post-4k"})
+    public String request;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private HttpRequestParser parser;
+
+    @Setup
+    public void setup() {
+        String head = "GET /users/42/orders?limit=10 HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)\r\n" +
+                "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+                "Accept-Encoding: gzip, deflate, br\r\n" +
+                "Accept-Language: en-US,en;q=0.5\r\n" +
+                "Cookie: session=0123456789abcdef; theme=dark\r\n" +
+                "Connection: keep-alive\r\n";
+        if (request.equals("get")) {
+            bytes = (head + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        } else {
+            String body = "{\"payload\":\"" + "x".repeat(4096 - 14) + "\"}";
+            bytes = (head.replace("GET", "POST") +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        buffer = ByteBuffer.wrap(bytes);
+        parser = new HttpRequestParser(16 * 1024, 10 * 1024 * 1024);
+    }
+
+    @Benchmark
+    public MyRequest legacyBufferedReader() throws IOException {
+        return LegacyRequestParser.parse(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public MyRequest byteBufferParser() {
+        buffer.clear();
+        parser.reset();
+        parser.parse(buffer);
+        return parser.getRequest();
+    }
+}
@@ -0,0 +1,69 @@
+package webdi.web;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int routes;
+
+    private Router compiledRouter;
+    private Router legacyRouter;
+    private RequestLine[] requests;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        Method method = BenchmarkController.class.getMethod("zero");
+        RouteHandler handler = new RouteHandler(method, new BenchmarkController(), BenchmarkController.class, new JsonCodec());
+        // a mix of constant, unconstrained and regex constrained routes spread over a few top level prefixes
+        Map<HandlerKey, RouteHandler> table = new HashMap<>();
+        for (int i = 0; table.size() < routes; i++) {
+            String base = "/api/v" + (i % 3) + "/resource" + i;
+            switch (i % 3) {
+                case 0 -> table.put(new HandlerKey("GET", base), handler);
+                case 1 -> table.put(new HandlerKey("GET", base + "/{id}"), handler);
+                default -> table.put(new HandlerKey("GET", base + "/{id:[0-9]+}/items/{item}"), handler);
+            }
+        }
+        compiledRouter = new TrieRouter(table);
+        legacyRouter = new LegacyTrieRouter(table);
+        int last = routes - 1;
+        requests = new RequestLine[]{
+                new RequestLine("GET", "/api/v0/resource0", "HTTP/1.1"),
+                new RequestLine("GET", "/api/v1/resource1/abc", "HTTP/1.1"),
+                new RequestLine("GET", "/api/v2/resource2/42/items/7", "HTTP/1.1"),
+                new RequestLine("GET", "/api/v" + (last % 3) + "/resource" + last + (last % 3 == 0 ? "" : "/12") +
+                        (last % 3 == 2 ? "/items/x" : ""), "HTTP/1.1"),
+                new RequestLine("GET", "/api/v0/missing/route", "HTTP/1.1"),
+        };
+    }
+
+    private RequestLine nextRequest() {
+        RequestLine request = requests[next];
+        next = next + 1 == requests.length ? 0 : next + 1;
+        return request;
+    }
+
+    @Benchmark
+    public Optional<RoutedRequest> compiledTrie() {
+        return compiledRouter.route(nextRequest());
+    }
+
+    @Benchmark
+    public Optional<RoutedRequest> legacyTrie() {
+        return legacyRouter.route(nextRequest());
+    }
+}
@@ -0,0 +1,244 @@
+package webdi.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+// Writes META-INF/webdi/index, one tab separated line per entry:
+//   component|controller <class> <constructor parameter types>
+//   configuration <class>
+//   bean <configuration class> <method> <parameter types>
+//   route <controller class> <method> <parameter types> <http method> <path>
+// Classes are binary names and parameter types are comma separated erasures, arrays end with []. The
+// constructor is the one WebdiApplication would pick: the one annotated with @Inject, else the public no-arg one.
+@SupportedAnnotationTypes({IndexProcessor.COMPONENT, IndexProcessor.CONTROLLER, IndexProcessor.CONFIGURATION})
+public final class IndexProcessor extends AbstractProcessor {
+
+    static final String INDEX_LOCATION = "META-INF/webdi/index";
+
+    static final String COMPONENT = "webdi.annotation.Component";
+    static final String CONTROLLER = "webdi.annotation.Controller";
+    static final String CONFIGURATION = "webdi.annotation.Configuration";
+    private static final String INJECT = "webdi.annotation.Inject";
+    private static final String BEAN = "webdi.annotation.Bean";
+    private static final String ROUTE = "webdi.annotation.Route";
+
+    // entries of every class indexed in this compilation, by binary class name
+    private final Map<String, List<String>> entries = new TreeMap<>();
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> annotated = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            annotated.addAll(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation)));
+        }
+        for (TypeElement type : annotated) {
+            if (type.getKind() == ElementKind.CLASS) {
+                index(type);
+            }
+        }
+        if (roundEnv.processingOver()) {
+            write();
+        }
+        return false;
+    }
+
+    // Same precedence as the scan: @Component over @Controller over @Configuration, while routes are read
+    // from any @Controller.
+    private void index(TypeElement type) {
+        String className = elements.getBinaryName(type).toString();
+        List<String> lines = new ArrayList<>();
+        entries.put(className, lines);
+        boolean controller = annotation(type, CONTROLLER) != null;
+        String kind = annotation(type, COMPONENT) != null ? "component" : controller ? "controller" : "configuration";
+        if (kind.equals("configuration")) {
+            lines.add(line(kind, className));
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                if (method.getModifiers().contains(Modifier.PUBLIC) && annotation(method, BEAN) != null) {
+                    lines.add(line("bean", className, method.getSimpleName().toString(), parameterTypes(method)));
+                }
+            }
+            return;
+        }
+        ExecutableElement constructor = findConstructor(type);
+        if (constructor == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Couldn't find a suitable constructor for class " + className, type);
+            return;
+        }
+        lines.add(line(kind, className, parameterTypes(constructor)));
+        if (controller) {
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                AnnotationMirror route = annotation(method, ROUTE);
+                if (method.getModifiers().contains(Modifier.PUBLIC) && route != null) {
+                    lines.add(line("route", className, method.getSimpleName().toString(), parameterTypes(method),
+                            value(route, "method"), value(route, "value")));
+                }
+            }
+        }
+    }
+
+    private ExecutableElement findConstructor(TypeElement type) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (annotation(constructor, INJECT) != null) {
+                return constructor;
+            }
+        }
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return constructor;
+            }
+        }
+        return null;
+    }
+
+    private String parameterTypes(ExecutableElement executable) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (VariableElement parameter : executable.getParameters()) {
+            joiner.add(typeName(types.erasure(parameter.asType())));
+        }
+        return joiner.toString();
+    }
+
+    private String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            return elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+        }
+        return type.toString();
+    }
+
+    private AnnotationMirror annotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String value(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue().toString();
+            }
+        }
+        return "";
+    }
+
+    // Incremental compilations only see the changed classes, the entries of the others are carried over from
+    // the previous index as long as the class still exists and is still annotated.
+    private void write() {
+        Map<String, List<String>> merged = new TreeMap<>(entries);
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (Reader reader = existing.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    String className = line.split("\t", -1)[1];
+                    if (!entries.containsKey(className) && isStillIndexed(className)) {
+                        merged.computeIfAbsent(className, key -> new ArrayList<>()).add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // no previous index
+        }
+        if (merged.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (Writer writer = index.openWriter()) {
+                for (List<String> lines : merged.values()) {
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + INDEX_LOCATION + ": " + e);
+        }
+    }
+
+    private boolean isStillIndexed(String className) {
+        TypeElement type = findType(className);
+        return type != null && (annotation(type, COMPONENT) != null || annotation(type, CONTROLLER) != null ||
+                annotation(type, CONFIGURATION) != null);
+    }
+
+    // A '$' in a binary name separates a nested class, or is part of a class name, so the type is found by
+    // trying each top level class the name could start with and walking down its members.
+    private TypeElement findType(String binaryName) {
+        for (int end = binaryName.indexOf('$'); ; end = binaryName.indexOf('$', end + 1)) {
+            TypeElement type = elements.getTypeElement(end < 0 ? binaryName : binaryName.substring(0, end));
+            if (type != null && type.getNestingKind() == NestingKind.TOP_LEVEL) {
+                TypeElement found = findMember(type, binaryName);
+                if (found != null) {
+                    return found;
+                }
+            }
+            if (end < 0) {
+                return null;
+            }
+        }
+    }
+
+    private TypeElement findMember(TypeElement type, String binaryName) {
+        String name = elements.getBinaryName(type).toString();
+        if (name.equals(binaryName)) {
+            return type;
+        }
+        if (!binaryName.startsWith(name + "$")) {
+            return null;
+        }
+        for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+            TypeElement found = findMember(member, binaryName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static String line(String... fields) {
+        return String.join("\t", fields);
+    }
+}
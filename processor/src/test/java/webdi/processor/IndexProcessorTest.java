@@ -0,0 +1,165 @@
+package webdi.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compiles fixtures with the system compiler and the processor, the annotations are compiled along with them.
+class IndexProcessorTest {
+
+    private static final Map<String, String> ANNOTATIONS = Map.of(
+            "webdi.annotation.Component", annotation("Component", "ElementType.TYPE", ""),
+            "webdi.annotation.Controller", annotation("Controller", "ElementType.TYPE", ""),
+            "webdi.annotation.Configuration", annotation("Configuration", "ElementType.TYPE", ""),
+            "webdi.annotation.Inject", annotation("Inject", "ElementType.CONSTRUCTOR, ElementType.PARAMETER", ""),
+            "webdi.annotation.Bean", annotation("Bean", "ElementType.METHOD", ""),
+            "webdi.annotation.Route", annotation("Route", "ElementType.METHOD",
+                    "String method() default \"GET\"; String value();"));
+
+    private static final String OUTER = """
+            package fixture;
+
+            import webdi.annotation.*;
+
+            public class Outer {
+                @Component
+                public static class Inner {
+                }
+
+                @Component
+                public static class In$ner {
+                    @Inject
+                    public In$ner(Inner inner, String[] names) {
+                    }
+                }
+
+                @Controller
+                public static class Api {
+                    @Route(method = "POST", value = "/items")
+                    public String create(In$ner owner) {
+                        return "";
+                    }
+                }
+            }
+            """;
+
+    private static final String DOLLAR_TOP = """
+            package fixture;
+
+            @webdi.annotation.Configuration
+            public class Dollar$Top {
+                @webdi.annotation.Bean
+                public String name() {
+                    return "";
+                }
+            }
+            """;
+
+    private static final List<String> INDEX = List.of(
+            "configuration\tfixture.Dollar$Top",
+            "bean\tfixture.Dollar$Top\tname\t",
+            "controller\tfixture.Outer$Api\t",
+            "route\tfixture.Outer$Api\tcreate\tfixture.Outer$In$ner\tPOST\t/items",
+            "component\tfixture.Outer$In$ner\tfixture.Outer$Inner,java.lang.String[]",
+            "component\tfixture.Outer$Inner\t");
+
+    @Test
+    void indexesNestedClassesByBinaryName(@TempDir Path output) throws IOException {
+        List<String> sources = new ArrayList<>(ANNOTATIONS.keySet());
+        sources.addAll(List.of("fixture.Outer", "fixture.Dollar$Top"));
+        compile(output, sources, Map.of("fixture.Outer", OUTER, "fixture.Dollar$Top", DOLLAR_TOP));
+        assertEquals(INDEX, index(output));
+    }
+
+    @Test
+    void keepsEntriesOfUnchangedClassesOnIncrementalCompilation(@TempDir Path output) throws IOException {
+        List<String> sources = new ArrayList<>(ANNOTATIONS.keySet());
+        sources.addAll(List.of("fixture.Outer", "fixture.Dollar$Top"));
+        compile(output, sources, Map.of("fixture.Outer", OUTER, "fixture.Dollar$Top", DOLLAR_TOP));
+
+        compile(output, List.of("fixture.Added"), Map.of("fixture.Added", """
+                package fixture;
+
+                @webdi.annotation.Component
+                public class Added {
+                }
+                """));
+        List<String> expected = new ArrayList<>(List.of("component\tfixture.Added\t"));
+        expected.addAll(INDEX);
+        assertEquals(expected, index(output));
+    }
+
+    @Test
+    void dropsEntriesOfClassesNoLongerAnnotated(@TempDir Path output) throws IOException {
+        List<String> sources = new ArrayList<>(ANNOTATIONS.keySet());
+        sources.addAll(List.of("fixture.Outer", "fixture.Dollar$Top"));
+        compile(output, sources, Map.of("fixture.Outer", OUTER, "fixture.Dollar$Top", DOLLAR_TOP));
+
+        compile(output, List.of("fixture.Dollar$Top", "fixture.Added"), Map.of(
+                "fixture.Dollar$Top", "package fixture;\n\npublic class Dollar$Top {\n}\n",
+                "fixture.Added", "package fixture;\n\n@webdi.annotation.Component\npublic class Added {\n}\n"));
+        List<String> expected = new ArrayList<>(List.of("component\tfixture.Added\t"));
+        expected.addAll(INDEX.subList(2, INDEX.size()));
+        assertEquals(expected, index(output));
+    }
+
+    // Compiles the named classes into output, which is also on the class path like in an incremental build.
+    private static void compile(Path output, List<String> classNames, Map<String, String> fixtures) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(output));
+            fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, List.of(output));
+            List<JavaFileObject> units = new ArrayList<>();
+            for (String className : classNames) {
+                String source = ANNOTATIONS.containsKey(className) ? ANNOTATIONS.get(className) : fixtures.get(className);
+                units.add(new Source(className, source));
+            }
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, units);
+            task.setProcessors(List.of(new IndexProcessor()));
+            assertTrue(task.call(), diagnostics.getDiagnostics().toString());
+        }
+    }
+
+    private static List<String> index(Path output) throws IOException {
+        return Files.readAllLines(output.resolve(IndexProcessor.INDEX_LOCATION));
+    }
+
+    private static String annotation(String name, String targets, String members) {
+        return "package webdi.annotation;\n\n" +
+                "import java.lang.annotation.*;\n\n" +
+                "@Retention(RetentionPolicy.RUNTIME)\n" +
+                "@Target({" + targets + "})\n" +
+                "public @interface " + name + " {\n" + members + "\n}\n";
+    }
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String content;
+
+        private Source(String className, String content) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package webdi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.di.Injectable;
+import webdi.di.InjectableBean;
+import webdi.di.InjectableComponent;
+import webdi.exception.InjectionException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The index written by the webdi-processor annotation processor at compile time. It names the components,
+// configurations, beans and routes together with the constructors and methods to use, so startup neither scans
+// the classpath nor looks through every method of every class for annotations.
+final class ApplicationIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationIndex.class);
+
+    static final String ENABLED_KEY = "webdi.index.enabled";
+    static final String LOCATION = "META-INF/webdi/index";
+
+    private static final Map<String, Class<?>> PRIMITIVES = Map.of(
+            "boolean", boolean.class, "byte", byte.class, "char", char.class, "short", short.class,
+            "int", int.class, "long", long.class, "float", float.class, "double", double.class);
+
+    private final ClassLoader classLoader;
+    private final List<String[]> entries;
+
+    private ApplicationIndex(ClassLoader classLoader, List<String[]> entries) {
+        this.classLoader = classLoader;
+        this.entries = entries;
+    }
+
+    // Empty when no index on the classpath covers the package, the caller then falls back to scanning.
+    static Optional<ApplicationIndex> load(ClassLoader classLoader, String packageName) {
+        String prefix = packageName + ".";
+        List<String[]> entries = new ArrayList<>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(LOCATION);
+            while (indexes.hasMoreElements()) {
+                URL url = indexes.nextElement();
+                try (InputStream inputStream = url.openStream()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                    for (String line; (line = reader.readLine()) != null; ) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        String[] fields = line.split("\t", -1);
+                        if (fields.length < 2) {
+                            throw new InjectionException("Malformed line in " + url + ": " + line);
+                        }
+                        if (fields[1].startsWith(prefix)) {
+                            entries.add(fields);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new InjectionException("Failed to read " + LOCATION, e);
+        }
+        if (entries.isEmpty()) {
+            return Optional.empty();
+        }
+        // the same order as the scan, entries of one class keep their order
+        entries.sort(Comparator.comparing(fields -> fields[1]));
+        return Optional.of(new ApplicationIndex(classLoader, entries));
+    }
+
+    List<Injectable> injectables() {
+        List<Injectable> injectables = new ArrayList<>();
+        Map<String, Object> configurations = new HashMap<>();
+        for (String[] fields : entries) {
+            switch (fields[0]) {
+                case "component", "controller" -> {
+                    logger.info("Found " + fields[0] + " " + fields[1]);
+                    Class<?> clazz = load(fields[1]);
+                    try {
+                        Constructor<?> constructor = clazz.getDeclaredConstructor(types(fields[2]));
+                        injectables.add(new InjectableComponent(clazz, constructor));
+                    } catch (NoSuchMethodException e) {
+                        throw outdated(fields, e);
+                    }
+                }
+                case "configuration" -> {
+                    logger.info("Found configuration " + fields[1]);
+                    try {
+                        configurations.put(fields[1], load(fields[1]).getConstructor().newInstance());
+                    } catch (Exception e) {
+                        throw new InjectionException("Class " + fields[1] + " annotated as @Configuration doesn't have an empty constructor.");
+                    }
+                }
+                case "bean" -> {
+                    logger.info("Found bean " + fields[2]);
+                    Object configuration = configurations.get(fields[1]);
+                    try {
+                        Method method = configuration.getClass().getMethod(fields[2], types(fields[3]));
+                        injectables.add(new InjectableBean(method, configuration));
+                    } catch (NoSuchMethodException e) {
+                        throw outdated(fields, e);
+                    }
+                }
+                case "route" -> {
+                }
+                default -> throw new InjectionException("Unknown entry " + fields[0] + " in " + LOCATION);
+            }
+        }
+        return injectables;
+    }
+
+    List<Method> routeMethods(Class<?> controllerClass) {
+        List<Method> methods = new ArrayList<>();
+        for (String[] fields : entries) {
+            if (fields[0].equals("route") && fields[1].equals(controllerClass.getName())) {
+                try {
+                    methods.add(controllerClass.getMethod(fields[2], types(fields[3])));
+                } catch (NoSuchMethodException e) {
+                    throw outdated(fields, e);
+                }
+            }
+        }
+        return methods;
+    }
+
+    private Class<?> load(String className) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new InjectionException("Class " + className + " from " + LOCATION + " doesn't exist, the index is out of date", e);
+        }
+    }
+
+    private Class<?>[] types(String names) {
+        if (names.isEmpty()) {
+            return new Class<?>[0];
+        }
+        String[] split = names.split(",");
+        Class<?>[] types = new Class<?>[split.length];
+        for (int i = 0; i < split.length; i++) {
+            types[i] = type(split[i]);
+        }
+        return types;
+    }
+
+    private Class<?> type(String name) {
+        if (name.endsWith("[]")) {
+            return type(name.substring(0, name.length() - 2)).arrayType();
+        }
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : load(name);
+    }
+
+    private static InjectionException outdated(String[] fields, Exception cause) {
+        return new InjectionException("Entry " + String.join(" ", fields) + " from " + LOCATION +
+                " doesn't match the class, the index is out of date", cause);
+    }
+}
@@ -0,0 +1,258 @@
+package webdi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.exception.InjectionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+// Finds the annotated classes of a package and its subpackages in directories and jars. Class files are read
+// as bytes and only those carrying one of the annotations get loaded, the rest never reach the class loader.
+final class ClassScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassScanner.class);
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private ClassScanner() {
+    }
+
+    // Sorted by name, so the order doesn't depend on the file system or on the threads that read the files.
+    static List<Class<?>> scan(String packageName, ClassLoader classLoader, List<Class<? extends Annotation>> annotations) {
+        long start = System.nanoTime();
+        Set<String> descriptors = new HashSet<>();
+        for (Class<? extends Annotation> annotation : annotations) {
+            descriptors.add("L" + annotation.getName().replace('.', '/') + ";");
+        }
+        String packagePath = packageName.replace('.', '/');
+        List<JarFile> jars = new ArrayList<>();
+        try {
+            List<ClassFile> classFiles = new ArrayList<>();
+            Enumeration<URL> roots = classLoader.getResources(packagePath);
+            while (roots.hasMoreElements()) {
+                URL root = roots.nextElement();
+                if (root.getProtocol().equals("file")) {
+                    listDirectory(Paths.get(root.toURI()), packageName, classFiles);
+                } else if (root.getProtocol().equals("jar")) {
+                    URLConnection connection = root.openConnection();
+                    connection.setUseCaches(false);
+                    JarFile jar = ((JarURLConnection) connection).getJarFile();
+                    jars.add(jar);
+                    listJar(jar, packagePath, classFiles);
+                } else {
+                    logger.warn("Skipping unsupported classpath location " + root);
+                }
+            }
+            long listed = System.nanoTime();
+            List<String> annotated = classFiles.parallelStream()
+                    .filter(classFile -> isAnnotated(classFile.read(), descriptors))
+                    .map(ClassFile::className)
+                    .sorted()
+                    .toList();
+            long read = System.nanoTime();
+            List<Class<?>> classes = new ArrayList<>(annotated.size());
+            for (String className : annotated) {
+                classes.add(Class.forName(className, false, classLoader));
+            }
+            long loaded = System.nanoTime();
+            logger.info("Scanned " + classFiles.size() + " class files of package " + packageName + " in " +
+                    millis(loaded - start) + " ms (listing " + millis(listed - start) + " ms, reading " +
+                    millis(read - listed) + " ms, loading " + classes.size() + " classes " + millis(loaded - read) + " ms)");
+            return classes;
+        } catch (IOException | UncheckedIOException | URISyntaxException e) {
+            throw new InjectionException("Failed to scan package " + packageName, e);
+        } catch (ClassNotFoundException e) {
+            throw new InjectionException("Failed to load scanned class " + e.getMessage(), e);
+        } finally {
+            for (JarFile jar : jars) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    logger.debug("Failed to close " + jar.getName(), e);
+                }
+            }
+        }
+    }
+
+    static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private static void listDirectory(Path directory, String packageName, List<ClassFile> classFiles) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(path -> isClassFile(path.getFileName().toString()) && Files.isRegularFile(path)).forEach(path -> {
+                String relative = directory.relativize(path).toString().replace(path.getFileSystem().getSeparator(), ".");
+                String className = packageName + "." + relative.substring(0, relative.length() - ".class".length());
+                classFiles.add(new ClassFile(className, () -> Files.readAllBytes(path)));
+            });
+        }
+    }
+
+    private static void listJar(JarFile jar, String packagePath, List<ClassFile> classFiles) {
+        String prefix = packagePath + "/";
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (name.startsWith(prefix) && isClassFile(name)) {
+                String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                classFiles.add(new ClassFile(className, () -> {
+                    try (InputStream inputStream = jar.getInputStream(entry)) {
+                        return inputStream.readAllBytes();
+                    }
+                }));
+            }
+        }
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.endsWith("module-info.class") && !name.endsWith("package-info.class");
+    }
+
+    static boolean isAnnotated(byte[] bytes, Set<String> descriptors) {
+        try {
+            return hasAnnotation(bytes, descriptors);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            logger.warn("Skipping malformed class file", e);
+            return false;
+        }
+    }
+
+    // Walks the class file up to its attributes, see JVMS chapter 4, and checks the type annotations there.
+    private static boolean hasAnnotation(byte[] bytes, Set<String> descriptors) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.remaining() < 10 || buffer.getInt() != MAGIC) {
+            return false;
+        }
+        buffer.position(8);
+        int constantCount = Short.toUnsignedInt(buffer.getShort());
+        // offsets of the Utf8 constants, anything else is only skipped
+        int[] utf8Offsets = new int[constantCount];
+        for (int i = 1; i < constantCount; i++) {
+            int tag = buffer.get();
+            switch (tag) {
+                case 1 -> {
+                    utf8Offsets[i] = buffer.position();
+                    buffer.position(buffer.position() + 2 + Short.toUnsignedInt(buffer.getShort(buffer.position())));
+                }
+                case 7, 8, 16, 19, 20 -> skip(buffer, 2);
+                case 15 -> skip(buffer, 3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> skip(buffer, 4);
+                case 5, 6 -> {
+                    skip(buffer, 8);
+                    i++;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        // access flags, this class, super class
+        skip(buffer, 6);
+        skip(buffer, 2 * Short.toUnsignedInt(buffer.getShort()));
+        for (int members = 0; members < 2; members++) {
+            int count = Short.toUnsignedInt(buffer.getShort());
+            for (int i = 0; i < count; i++) {
+                // access flags, name, descriptor
+                skip(buffer, 6);
+                skipAttributes(buffer);
+            }
+        }
+        int attributes = Short.toUnsignedInt(buffer.getShort());
+        for (int i = 0; i < attributes; i++) {
+            String name = utf8(bytes, utf8Offsets[Short.toUnsignedInt(buffer.getShort())]);
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            if (name.equals(RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = Short.toUnsignedInt(buffer.getShort());
+                for (int j = 0; j < annotations; j++) {
+                    if (descriptors.contains(utf8(bytes, utf8Offsets[Short.toUnsignedInt(buffer.getShort())]))) {
+                        return true;
+                    }
+                    skipElementValuePairs(buffer);
+                }
+            }
+            buffer.position(end);
+        }
+        return false;
+    }
+
+    private static void skipAttributes(ByteBuffer buffer) {
+        int count = Short.toUnsignedInt(buffer.getShort());
+        for (int i = 0; i < count; i++) {
+            skip(buffer, 2);
+            skip(buffer, buffer.getInt());
+        }
+    }
+
+    private static void skipElementValuePairs(ByteBuffer buffer) {
+        int pairs = Short.toUnsignedInt(buffer.getShort());
+        for (int i = 0; i < pairs; i++) {
+            skip(buffer, 2);
+            skipElementValue(buffer);
+        }
+    }
+
+    private static void skipElementValue(ByteBuffer buffer) {
+        int tag = buffer.get();
+        switch (tag) {
+            case 'e' -> skip(buffer, 4);
+            case '@' -> {
+                skip(buffer, 2);
+                skipElementValuePairs(buffer);
+            }
+            case '[' -> {
+                int count = Short.toUnsignedInt(buffer.getShort());
+                for (int i = 0; i < count; i++) {
+                    skipElementValue(buffer);
+                }
+            }
+            // constants, strings and classes are a single constant pool index
+            default -> skip(buffer, 2);
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int count) {
+        buffer.position(buffer.position() + count);
+    }
+
+    // Annotation and attribute names are plain ASCII, where modified UTF-8 and UTF-8 agree.
+    private static String utf8(byte[] bytes, int offset) {
+        int length = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+        return new String(bytes, offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        byte[] read() throws IOException;
+    }
+
+    private record ClassFile(String className, Content content) {
+
+        byte[] read() {
+            try {
+                return content.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package webdi;
+
+import webdi.exception.InjectionException;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public final class Config {
+
+    private final Map<String, String> values;
+
+    public Config(Map<String, String> values) {
+        this.values = values;
+    }
+
+    public static Config load(String resourceName) {
+        ClassLoader classloader = Thread.currentThread().getContextClassLoader();
+        Map<String, String> values = new HashMap<>();
+        try (InputStream inputStream = classloader.getResourceAsStream(resourceName)) {
+            if (inputStream == null) {
+                throw new InjectionException("Couldn't find " + resourceName + " on the classpath");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            for (String line; (line = reader.readLine()) != null;) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                int index = line.indexOf('=');
+                if (index < 0) {
+                    throw new InjectionException("Malformed line in " + resourceName + ": " + line);
+                }
+                values.put(line.substring(0, index).trim(), line.substring(index + 1).trim());
+            }
+        } catch (InjectionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InjectionException("Failed to read " + resourceName, e);
+        }
+        return new Config(values);
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(values.get(key));
+    }
+
+    public String getString(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new InjectionException("Config value " + key + "=" + value + " is not an integer", e);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new InjectionException("Config value " + key + "=" + value + " is not a number", e);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
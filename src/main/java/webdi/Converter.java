@@ -0,0 +1,9 @@
+package webdi;
+
+// Converts path, query and form parameters and config values. Malformed input is reported by throwing an
+// IllegalArgumentException, which binding a request answers with 400.
+@FunctionalInterface
+public interface Converter<T> {
+
+    T convert(String value);
+}
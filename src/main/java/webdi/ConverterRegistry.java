@@ -0,0 +1,107 @@
+package webdi;
+
+import webdi.exception.WebServerException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The converters from strings to parameter types. Binders look their converter up once when the route is
+// created, so a request only calls it. An application registers its own converters by declaring a
+// ConverterRegistry bean, which replaces the default one for routes and @Value parameters alike.
+public final class ConverterRegistry {
+
+    private static final ConverterRegistry DEFAULTS = new ConverterRegistry();
+
+    private final Map<Class<?>, Converter<?>> converters = new ConcurrentHashMap<>();
+
+    public ConverterRegistry() {
+        register(String.class, value -> value);
+        register(Integer.class, Integer::valueOf);
+        register(Long.class, Long::valueOf);
+        register(Short.class, Short::valueOf);
+        register(Byte.class, Byte::valueOf);
+        register(Double.class, Double::valueOf);
+        register(Float.class, Float::valueOf);
+        register(Boolean.class, Boolean::valueOf);
+        register(Character.class, ConverterRegistry::toCharacter);
+        register(BigDecimal.class, BigDecimal::new);
+        register(BigInteger.class, BigInteger::new);
+        register(UUID.class, UUID::fromString);
+        register(Instant.class, Instant::parse);
+        register(LocalDate.class, LocalDate::parse);
+        register(LocalDateTime.class, LocalDateTime::parse);
+        register(LocalTime.class, LocalTime::parse);
+        register(Duration.class, Duration::parse);
+    }
+
+    // The registry of routes without a container, e.g. in benchmarks.
+    public static ConverterRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    // A converter for a wrapper type also converts the primitive.
+    public <T> ConverterRegistry register(Class<T> type, Converter<? extends T> converter) {
+        converters.put(type, converter);
+        return this;
+    }
+
+    // null when there's no converter for the type
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> Converter<T> find(Class<T> type) {
+        Class<?> boxed = type.isPrimitive() ? box(type) : type;
+        Converter<?> converter = converters.get(boxed);
+        if (converter == null && boxed.isEnum()) {
+            Class<? extends Enum> enumType = (Class<? extends Enum>) boxed;
+            converter = converters.computeIfAbsent(boxed, key -> value -> Enum.valueOf(enumType, value));
+        }
+        return (Converter<T>) converter;
+    }
+
+    public <T> Converter<T> get(Class<T> type) {
+        Converter<T> converter = find(type);
+        if (converter == null) {
+            throw new WebServerException("No converter for type " + type.getName());
+        }
+        return converter;
+    }
+
+    public <T> T convert(String value, Class<T> type) {
+        return get(type).convert(value);
+    }
+
+    private static Class<?> box(Class<?> primitive) {
+        if (primitive == int.class) {
+            return Integer.class;
+        } else if (primitive == long.class) {
+            return Long.class;
+        } else if (primitive == double.class) {
+            return Double.class;
+        } else if (primitive == boolean.class) {
+            return Boolean.class;
+        } else if (primitive == float.class) {
+            return Float.class;
+        } else if (primitive == short.class) {
+            return Short.class;
+        } else if (primitive == byte.class) {
+            return Byte.class;
+        } else if (primitive == char.class) {
+            return Character.class;
+        }
+        return primitive;
+    }
+
+    private static Character toCharacter(String value) {
+        if (value.length() != 1) {
+            throw new IllegalArgumentException("Expected a single character but got " + value);
+        }
+        return value.charAt(0);
+    }
+}
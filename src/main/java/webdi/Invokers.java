@@ -0,0 +1,137 @@
+package webdi;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+// Turns reflective methods and constructors into generated functional interfaces, so calls to them
+// are plain interface calls the JIT can inline instead of Method.invoke/Constructor.newInstance.
+public final class Invokers {
+
+    private static final int MAX_GENERATED_ARITY = 6;
+    private static final Class<?>[] ARITY_INTERFACES = {
+            Arity0.class, Arity1.class, Arity2.class, Arity3.class, Arity4.class, Arity5.class, Arity6.class
+    };
+
+    private Invokers() {
+    }
+
+    @FunctionalInterface
+    public interface Invoker {
+        Object invoke(Object[] arguments) throws Throwable;
+    }
+
+    public static Invoker forMethod(Method method, Object target) throws IllegalAccessException {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodHandles.Lookup lookup = lookupFor(method);
+        MethodHandle handle = lookup.unreflect(method);
+        return create(lookup, method, handle, isStatic ? null : target, method.getReturnType());
+    }
+
+    public static Invoker forConstructor(Constructor<?> constructor) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = lookupFor(constructor);
+        MethodHandle handle = lookup.unreflectConstructor(constructor);
+        return create(lookup, constructor, handle, null, constructor.getDeclaringClass());
+    }
+
+    private static MethodHandles.Lookup lookupFor(Executable executable) throws IllegalAccessException {
+        executable.trySetAccessible();
+        return MethodHandles.privateLookupIn(executable.getDeclaringClass(), MethodHandles.lookup());
+    }
+
+    private static Invoker create(MethodHandles.Lookup lookup, Executable executable, MethodHandle handle,
+                                  Object receiver, Class<?> returnType) {
+        int arity = executable.getParameterCount();
+        if (arity > MAX_GENERATED_ARITY || returnType == void.class) {
+            return spreading(receiver == null ? handle : handle.bindTo(receiver), arity);
+        }
+        Class<?> functionalInterface = ARITY_INTERFACES[arity];
+        MethodType factoryType = receiver == null
+                ? MethodType.methodType(functionalInterface)
+                : MethodType.methodType(functionalInterface, executable.getDeclaringClass());
+        MethodType instantiated = MethodType.methodType(returnType, executable.getParameterTypes()).wrap();
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply", factoryType,
+                    MethodType.genericMethodType(arity), handle, instantiated);
+            Object function = receiver == null ? callSite.getTarget().invoke() : callSite.getTarget().invoke(receiver);
+            return adapt(function, arity);
+        } catch (Throwable e) {
+            // anything the metafactory can't link against still works through a spreading method handle
+            return spreading(receiver == null ? handle : handle.bindTo(receiver), arity);
+        }
+    }
+
+    private static Invoker spreading(MethodHandle handle, int arity) {
+        MethodHandle spreader = handle.asSpreader(Object[].class, arity)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return arguments -> (Object) spreader.invokeExact(arguments);
+    }
+
+    private static Invoker adapt(Object function, int arity) {
+        return switch (arity) {
+            case 0 -> {
+                Arity0 f = (Arity0) function;
+                yield arguments -> f.apply();
+            }
+            case 1 -> {
+                Arity1 f = (Arity1) function;
+                yield arguments -> f.apply(arguments[0]);
+            }
+            case 2 -> {
+                Arity2 f = (Arity2) function;
+                yield arguments -> f.apply(arguments[0], arguments[1]);
+            }
+            case 3 -> {
+                Arity3 f = (Arity3) function;
+                yield arguments -> f.apply(arguments[0], arguments[1], arguments[2]);
+            }
+            case 4 -> {
+                Arity4 f = (Arity4) function;
+                yield arguments -> f.apply(arguments[0], arguments[1], arguments[2], arguments[3]);
+            }
+            case 5 -> {
+                Arity5 f = (Arity5) function;
+                yield arguments -> f.apply(arguments[0], arguments[1], arguments[2], arguments[3], arguments[4]);
+            }
+            case 6 -> {
+                Arity6 f = (Arity6) function;
+                yield arguments -> f.apply(arguments[0], arguments[1], arguments[2], arguments[3], arguments[4], arguments[5]);
+            }
+            default -> throw new IllegalArgumentException("Unsupported arity " + arity);
+        };
+    }
+
+    public interface Arity0 {
+        Object apply();
+    }
+
+    public interface Arity1 {
+        Object apply(Object a);
+    }
+
+    public interface Arity2 {
+        Object apply(Object a, Object b);
+    }
+
+    public interface Arity3 {
+        Object apply(Object a, Object b, Object c);
+    }
+
+    public interface Arity4 {
+        Object apply(Object a, Object b, Object c, Object d);
+    }
+
+    public interface Arity5 {
+        Object apply(Object a, Object b, Object c, Object d, Object e);
+    }
+
+    public interface Arity6 {
+        Object apply(Object a, Object b, Object c, Object d, Object e, Object f);
+    }
+}
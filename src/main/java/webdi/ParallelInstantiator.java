@@ -0,0 +1,147 @@
+package webdi;
+
+import webdi.di.Injectable;
+import webdi.exception.InjectionException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Creates the injectables of the dependency DAG on a fork-join pool, each one as soon as its dependencies exist.
+// Failures are reported as the sequential creation would: the first failing injectable in topological order wins.
+// Once something failed, injectables after it in that order are no longer started, those before it still are,
+// since one of them could fail too and come first.
+final class ParallelInstantiator {
+
+    static final String PARALLEL_KEY = "webdi.di.parallel";
+    static final String PARALLELISM_KEY = "webdi.di.parallelism";
+
+    private final List<Injectable> order;
+    private final Map<Injectable, Integer> positions = new HashMap<>();
+    private final Map<Injectable, List<Injectable>> dependents = new HashMap<>();
+    private final Map<Injectable, AtomicInteger> pendingDependencies = new HashMap<>();
+    private final Set<Injectable> blocked = ConcurrentHashMap.newKeySet();
+    private final Function<Injectable, Object> creator;
+    private final Object[] instances;
+    private final Throwable[] failures;
+    private final AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+    private final CountDownLatch remaining;
+    private ForkJoinPool pool;
+
+    private ParallelInstantiator(List<Injectable> order, Map<Injectable, Set<Injectable>> dependencies,
+                                 Function<Injectable, Object> creator) {
+        this.order = order;
+        this.creator = creator;
+        this.instances = new Object[order.size()];
+        this.failures = new Throwable[order.size()];
+        this.remaining = new CountDownLatch(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            Injectable injectable = order.get(i);
+            positions.put(injectable, i);
+            dependents.put(injectable, new ArrayList<>());
+        }
+        for (Injectable injectable : order) {
+            Set<Injectable> injectableDependencies = dependencies.getOrDefault(injectable, Set.of());
+            pendingDependencies.put(injectable, new AtomicInteger(injectableDependencies.size()));
+            for (Injectable dependency : injectableDependencies) {
+                dependents.get(dependency).add(injectable);
+            }
+        }
+    }
+
+    // Returns the created instances in the order of the given list.
+    static Object[] create(List<Injectable> order, Map<Injectable, Set<Injectable>> dependencies, int parallelism,
+                           Function<Injectable, Object> creator) {
+        return new ParallelInstantiator(order, dependencies, creator).run(parallelism);
+    }
+
+    private Object[] run(int parallelism) {
+        // the roots are picked before any runs, a worker counting a dependent down to zero submits it itself
+        List<Injectable> roots = new ArrayList<>();
+        for (Injectable injectable : order) {
+            if (pendingDependencies.get(injectable).get() == 0) {
+                roots.add(injectable);
+            }
+        }
+        pool = new ForkJoinPool(parallelism);
+        try {
+            for (Injectable injectable : roots) {
+                pool.execute(() -> create(injectable));
+            }
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InjectionException("Interrupted while creating dependencies", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        int first = firstFailure.get();
+        if (first != Integer.MAX_VALUE) {
+            Throwable failure = failures[first];
+            for (int i = first + 1; i < failures.length; i++) {
+                if (failures[i] != null) {
+                    failure.addSuppressed(failures[i]);
+                }
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            throw new InjectionException("Failed to create " + order.get(first), failure);
+        }
+        return instances;
+    }
+
+    private void create(Injectable injectable) {
+        int position = positions.get(injectable);
+        boolean created = false;
+        if (!blocked.contains(injectable) && position < firstFailure.get()) {
+            try {
+                ForkJoinPool.managedBlock(new Creation(injectable, position));
+                created = true;
+            } catch (Throwable e) {
+                failures[position] = e;
+                firstFailure.accumulateAndGet(position, Math::min);
+            }
+        }
+        for (Injectable dependent : dependents.get(injectable)) {
+            if (!created) {
+                blocked.add(dependent);
+            }
+            if (pendingDependencies.get(dependent).decrementAndGet() == 0) {
+                pool.execute(() -> create(dependent));
+            }
+        }
+        remaining.countDown();
+    }
+
+    // Factories may block opening connections or warming caches, as a managed blocker the pool starts
+    // another worker meanwhile instead of leaving the remaining branches waiting.
+    private final class Creation implements ForkJoinPool.ManagedBlocker {
+        private final Injectable injectable;
+        private final int position;
+        private boolean done;
+
+        private Creation(Injectable injectable, int position) {
+            this.injectable = injectable;
+            this.position = position;
+        }
+
+        @Override
+        public boolean block() {
+            instances[position] = creator.apply(injectable);
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+}
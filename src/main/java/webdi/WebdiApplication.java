@@ -8,20 +8,21 @@ import webdi.annotation.*;
 import webdi.di.Injectable;
 import webdi.di.InjectableBean;
 import webdi.di.InjectableComponent;
+import webdi.di.InjectableInstance;
+import webdi.di.LazyInstance;
 import webdi.di.NamedClass;
+import webdi.di.ScopedInstance;
 import webdi.exception.InjectionException;
+import webdi.exception.WebServerException;
+import webdi.metrics.MetricsRegistry;
 import webdi.web.*;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.StreamSupport;
 
 public final class WebdiApplication {
@@ -44,60 +45,58 @@ public final class WebdiApplication {
     }
 
     public static void start(Class<?> c) {
-        logger.info("Starting webdi application for class {}", c.getName());
-        ClassLoader classloader = Thread.currentThread().getContextClassLoader();
-        InputStream inputStream = classloader.getResourceAsStream("config.properties");
-        InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-        BufferedReader reader = new BufferedReader(streamReader);
-        Map<String, String> configValues = new HashMap<>();
-        try {
-            for (String line; (line = reader.readLine()) != null;) {
-                String[] splitLine = line.split("=");
-                String name = splitLine[0];
-                String value = splitLine[1];
-                configValues.put(name, value);
-            }
-        } catch (Exception e) {
-            logger.error("failed to read config", e);
-            throw new RuntimeException(e);
+        Config config = Config.load("config.properties");
+        RequestHandler requestHandler = boot(c, config);
+        ServerSettings settings = ServerSettings.fromConfig(config);
+        try (ConnectionExecutor executor = ConnectionExecutors.fromConfig(config)) {
+            requestHandler.getMetrics().register(executor);
+            ServerEngines.create(settings, requestHandler, executor).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
-        List<Injectable> injectables = new ArrayList<>();
-        Set<Class<?>> classes = AccessingAllClassesInPackage.findAllClassesUsingClassLoader(c.getPackageName());
-        logger.info("Scanning started");
-        for (Class<?> clazz : classes) {
-            if (clazz.isAnnotationPresent(Component.class)) {
-                logger.info("Found component " + clazz.getName());
-                injectables.add(new InjectableComponent(clazz));
-            } else if (clazz.isAnnotationPresent(Controller.class)) {
-                logger.info("Found controller " + clazz.getName());
-                injectables.add(new InjectableComponent(clazz));
-            } else if (clazz.isAnnotationPresent(Configuration.class)) {
-                logger.info("Found configuration " + clazz.getName());
-                try {
-                    Object configuration = clazz.getConstructor().newInstance();
-                    for (Method method : clazz.getMethods()) {
-                        if (method.isAnnotationPresent(Bean.class)) {
-                            logger.info("Found bean " + method.getName());
-                            injectables.add(new InjectableBean(method, configuration));
-                        }
-                    }
-                } catch (Exception e) {
-                    throw new InjectionException("Class " + clazz.getName() + " annotated as @Configuration doesn't have an empty constructor.");
-                }
-            }
+    // Creates the components and routes of the application without opening the server socket.
+    public static RequestHandler boot(Class<?> c, Config config) {
+        logger.info("Starting webdi application for class {}", c.getName());
+        long startupStart = System.nanoTime();
+
+        Optional<ApplicationIndex> index = config.getBoolean(ApplicationIndex.ENABLED_KEY, true)
+                ? ApplicationIndex.load(c.getClassLoader(), c.getPackageName()) : Optional.empty();
+        List<Injectable> injectables;
+        if (index.isPresent()) {
+            logger.info("Reading components from " + ApplicationIndex.LOCATION);
+            injectables = index.get().injectables();
+        } else {
+            logger.info("Scanning started");
+            injectables = scan(c);
+            logger.info("Scanning finished");
+        }
+        long scanned = System.nanoTime();
+        if (injectables.stream().noneMatch(i -> i.getImplementedTypes().contains(JsonCodec.class))) {
+            injectables.add(new InjectableInstance(new JsonCodec()));
         }
-        logger.info("Scanning finished");
+        if (injectables.stream().noneMatch(i -> i.getImplementedTypes().contains(ConverterRegistry.class))) {
+            injectables.add(new InjectableInstance(new ConverterRegistry()));
+        }
+        // components can inject the registry to publish their own metrics next to the server's
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        injectables.add(new InjectableInstance(metricsRegistry));
         Map<NamedClass, Injectable> classInjectableMap = new HashMap<>();
-        Map<Injectable, Set<NamedClass>> dependencies = new HashMap<>();
+        Map<Injectable, Set<NamedClass>> dependencies = new LinkedHashMap<>();
         for (Injectable i : injectables) {
             String name = i.getName().orElse(null);
             for (Class<?> clazz : i.getImplementedTypes()) {
                 classInjectableMap.put(new NamedClass(name, clazz), i);
             }
-            Set<NamedClass> parameters = new HashSet<>();
+            Set<NamedClass> parameters = new LinkedHashSet<>();
             for (Parameter parameter : i.getParameters()) {
-                if (!parameter.isAnnotationPresent(Value.class)) {
+                if (parameter.isAnnotationPresent(Value.class)) {
+                    // config values are converted by the registry, which is therefore created first
+                    if (!i.getImplementedTypes().contains(ConverterRegistry.class)) {
+                        parameters.add(new NamedClass(null, ConverterRegistry.class));
+                    }
+                } else {
                     Named n = parameter.getAnnotation(Named.class);
                     if (n != null) {
                         parameters.add(new NamedClass(n.value(), parameter.getType()));
@@ -124,43 +123,42 @@ public final class WebdiApplication {
 
         Map<Class<?>, Map<String, Object>> instances = new HashMap<>();
         logger.info("Starting to create dependencies");
-        for (Injectable injectable : orderedInjectables) {
-            logger.info("Creating dependency " + injectable);
-            List<Object> arguments = new ArrayList<>();
-            for (Parameter parameter : injectable.getParameters()) {
-                Class<?> parameterType = parameter.getType();
-                Value value = parameter.getAnnotation(Value.class);
-                if (value == null) {
-                    if (!instances.containsKey(parameterType)) {
-                        throw new InjectionException("Failed to create " + injectable + ", because parameter " + parameterType.getName() +
-                                " wasn't found in the list of created instances.");
-                    }
-                    Map<String, Object> namesMap = instances.get(parameterType);
-                    Named named = parameter.getAnnotation(Named.class);
-                    if (named != null) {
-                        arguments.add(namesMap.get(named.value()));
-                    } else {
-                        arguments.add(namesMap.get(null));
-                    }
-                    continue;
+        boolean lazyMode = config.getBoolean(LazyInstance.MODE_KEY, false);
+        if (config.getBoolean(ParallelInstantiator.PARALLEL_KEY, false)) {
+            Map<Injectable, Set<Injectable>> edges = new HashMap<>();
+            for (Injectable injectable : orderedInjectables) {
+                Set<Injectable> targets = new HashSet<>();
+                for (DefaultEdge edge : dag.outgoingEdgesOf(injectable)) {
+                    targets.add(dag.getEdgeTarget(edge));
                 }
-                if (!configValues.containsKey(value.value())) {
-                    throw new InjectionException("Parameter can't be injected, because the value can't be found in config.");
-                }
-                String parameterValue = configValues.get(value.value());
-                arguments.add(ConvertingParameters.convertType(parameterValue, parameterType).orElseThrow(() -> new InjectionException("Failed to inject value " +
-                        parameterValue + " from config, because it has unsupported type " + parameterType.getName())));
+                edges.put(injectable, targets);
             }
-            Object newInstance = injectable.construct(arguments.toArray());
-            for (Class<?> clazz : injectable.getImplementedTypes()) {
-                if (!instances.containsKey(clazz)) {
-                    instances.put(clazz, new HashMap<>());
+            int parallelism = config.getInt(ParallelInstantiator.PARALLELISM_KEY, Runtime.getRuntime().availableProcessors());
+            Object[] created = ParallelInstantiator.create(orderedInjectables, edges, parallelism, injectable -> {
+                Object[] arguments;
+                synchronized (instances) {
+                    arguments = resolveArguments(injectable, instances, config, isDeferred(injectable, lazyMode));
+                }
+                Object newInstance = instantiate(injectable, arguments, lazyMode);
+                synchronized (instances) {
+                    register(instances, injectable, newInstance);
                 }
-                Map<String, Object> namesMap = instances.get(clazz);
-                namesMap.put(injectable.getName().orElse(null), newInstance);
+                return newInstance;
+            });
+            // rebuilt in topological order, so the instance that wins for a type and name is the sequential one
+            instances.clear();
+            for (int i = 0; i < created.length; i++) {
+                register(instances, orderedInjectables.get(i), created[i]);
+            }
+        } else {
+            for (Injectable injectable : orderedInjectables) {
+                Object[] arguments = resolveArguments(injectable, instances, config, isDeferred(injectable, lazyMode));
+                register(instances, injectable, instantiate(injectable, arguments, lazyMode));
             }
         }
 
+        long created = System.nanoTime();
+
         List<Object> controllers = new ArrayList<>();
         for (Map.Entry<Class<?>, Map<String, Object>> entry : instances.entrySet()) {
             if (entry.getKey().isAnnotationPresent(Controller.class)) {
@@ -169,37 +167,208 @@ public final class WebdiApplication {
         }
 
         logger.info("Started scanning routes");
-        HashMap<HandlerKey, RouteHandler> routes = extractRoutes(controllers);
+        JsonCodec jsonCodec = (JsonCodec) LazyInstance.unwrap(instances.get(JsonCodec.class).values().iterator().next());
+        // route handler parameters annotated with @Inject are looked up like constructor parameters
+        Function<NamedClass, Object> registry = namedClass -> {
+            Map<String, Object> namesMap = instances.get(namedClass.clazz());
+            return namesMap != null ? namesMap.get(namedClass.name()) : null;
+        };
+        HashMap<HandlerKey, RouteHandler> routes = extractRoutes(controllers, jsonCodec, metricsRegistry, registry,
+                index.isPresent() ? index.get()::routeMethods : WebdiApplication::findRouteMethods);
         Router router = new TrieRouter(routes);
         logger.info("Finished scanning routes and created router");
+        long routed = System.nanoTime();
+
+        Compression compression = Compression.fromConfig(config);
+        ServerMetrics metrics = ServerMetrics.fromConfig(config, metricsRegistry);
+        // the scrape is answered before routing, it would hide the application's own route
+        if (metrics.path() != null && routes.containsKey(new HandlerKey("GET", metrics.path()))) {
+            throw new WebServerException("Metrics path " + metrics.path() + " is taken by a route, change " +
+                    ServerMetrics.PATH_KEY + " or disable " + ServerMetrics.ENABLED_KEY);
+        }
+        RequestHandler requestHandler = new RequestHandler(router, StaticFiles.fromConfig(config, compression),
+                ResponseCache.fromConfig(config), compression, metrics, ConcurrencyLimits.fromConfig(config, metricsRegistry),
+                FormSettings.fromConfig(config));
+        logger.info("Booted in " + ClassScanner.millis(System.nanoTime() - startupStart) + " ms: " +
+                (index.isPresent() ? "reading index " : "scanning ") + ClassScanner.millis(scanned - startupStart) +
+                " ms, creating " + orderedInjectables.size() + " dependencies " + ClassScanner.millis(created - scanned) +
+                " ms, routes " + ClassScanner.millis(routed - created) + " ms, request handler " +
+                ClassScanner.millis(System.nanoTime() - routed) + " ms");
+        return requestHandler;
+    }
 
-        try (ServerSocket serverSocket = new ServerSocket(8080)) {
-            int counter = 1;
-            while (true) {
-                Socket socket = serverSocket.accept();
-                logger.info("Received new connection from " + socket.getRemoteSocketAddress());
-                MyWebServer webServer = new MyWebServer(socket, router);
-                Thread thread = new Thread(webServer, "[" + counter + "]");
-                thread.start();
-                counter += 1;
+    // Lazy dependencies are passed as proxies to interface parameters. Parameters of a class type get the LazyInstance
+    // itself with deferred, for injectables that are lazy or scoped too. Otherwise a @Lazy one fails, and one that's
+    // only lazy through the global mode is created with a warning. Scoped dependencies
+    // are passed as they are when deferred, else they must be prototypes and a new instance is created.
+    private static Object[] resolveArguments(Injectable injectable, Map<Class<?>, Map<String, Object>> instances, Config config,
+                                             boolean deferred) {
+        List<Object> arguments = new ArrayList<>();
+        for (Parameter parameter : injectable.getParameters()) {
+            Class<?> parameterType = parameter.getType();
+            Value value = parameter.getAnnotation(Value.class);
+            if (value == null) {
+                if (!instances.containsKey(parameterType)) {
+                    throw new InjectionException("Failed to create " + injectable + ", because parameter " + parameterType.getName() +
+                            " wasn't found in the list of created instances.");
+                }
+                Map<String, Object> namesMap = instances.get(parameterType);
+                Named named = parameter.getAnnotation(Named.class);
+                Object argument = named != null ? namesMap.get(named.value()) : namesMap.get(null);
+                if (argument instanceof LazyInstance lazyInstance) {
+                    if (parameterType.isInterface()) {
+                        argument = lazyInstance.proxy(parameterType);
+                    } else if (!deferred) {
+                        // a class can't be proxied, the dependency would be created right here
+                        if (lazyInstance.isDeclared()) {
+                            throw new InjectionException("Failed to create " + injectable + ", because @Lazy parameter " +
+                                    parameterType.getName() + " is injected by its class and can't be proxied. " +
+                                    "Inject it through an interface it implements.");
+                        }
+                        logger.warn("Creating lazy dependency " + parameterType.getName() + " at boot, because " + injectable +
+                                " injects it by its class, which can't be proxied");
+                        argument = lazyInstance.get();
+                    }
+                } else if (argument instanceof ScopedInstance scopedInstance) {
+                    // pooled instances outlive their request, they'd keep request scoped ones or share pooled ones
+                    ScopeType scope = findScope(injectable).map(Scope::value).orElse(ScopeType.SINGLETON);
+                    if (scopedInstance.getType() != ScopeType.PROTOTYPE && (scope == ScopeType.SINGLETON || scope == ScopeType.POOLED)) {
+                        throw new InjectionException("Failed to create " + injectable + ", because parameter " + parameterType.getName() +
+                                " is " + scopedInstance.getType().name().toLowerCase(Locale.ROOT) + " scoped and " +
+                                injectable + " is " + scope.name().toLowerCase(Locale.ROOT) + ".");
+                    }
+                    if (!deferred) {
+                        argument = scopedInstance.get(null);
+                    }
+                }
+                arguments.add(argument);
+                continue;
+            }
+            String parameterValue = config.get(value.value()).orElseThrow(() ->
+                    new InjectionException("Parameter can't be injected, because the value can't be found in config."));
+            Converter<?> converter = converters(instances).find(parameterType);
+            if (converter == null) {
+                throw new InjectionException("Failed to inject value " + parameterValue + " from config, because it has unsupported type " +
+                        parameterType.getName());
+            }
+            try {
+                arguments.add(converter.convert(parameterValue));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new InjectionException("Failed to inject value " + parameterValue + " from config into " + injectable, e);
+            }
+        }
+        return arguments.toArray();
+    }
+
+    // The registry bean converts its own @Value parameters with the default converters.
+    private static ConverterRegistry converters(Map<Class<?>, Map<String, Object>> instances) {
+        Map<String, Object> namesMap = instances.get(ConverterRegistry.class);
+        Object registry = namesMap != null ? LazyInstance.unwrap(namesMap.get(null)) : null;
+        return registry != null ? (ConverterRegistry) registry : ConverterRegistry.defaults();
+    }
+
+    private static Object instantiate(Injectable injectable, Object[] arguments, boolean lazyMode) {
+        Optional<Scope> scope = findScope(injectable);
+        if (scope.isPresent()) {
+            logger.info("Registering " + scope.get().value().name().toLowerCase(Locale.ROOT) + " scoped dependency " + injectable);
+            return new ScopedInstance(injectable, scope.get(), arguments);
+        }
+        if (isLazy(injectable, lazyMode)) {
+            logger.info("Deferring dependency " + injectable);
+            return new LazyInstance(injectable, arguments);
+        }
+        logger.info("Creating dependency " + injectable);
+        return injectable.construct(arguments);
+    }
+
+    private static boolean isDeferred(Injectable injectable, boolean lazyMode) {
+        return findScope(injectable).isPresent() || isLazy(injectable, lazyMode);
+    }
+
+    // Empty for singletons. Controllers are always singletons, their routes are registered from the instances.
+    private static Optional<Scope> findScope(Injectable injectable) {
+        Optional<Scope> scope = injectable.getScope().filter(s -> s.value() != ScopeType.SINGLETON);
+        if (scope.isPresent() && isController(injectable)) {
+            throw new InjectionException("Controller " + injectable + " can't be " +
+                    scope.get().value().name().toLowerCase(Locale.ROOT) + " scoped");
+        }
+        return scope;
+    }
+
+    // Controllers are always created, their routes are registered from the instances. Scoped injectables are
+    // created on demand anyway.
+    private static boolean isLazy(Injectable injectable, boolean lazyMode) {
+        if (isController(injectable) || findScope(injectable).isPresent()) {
+            return false;
+        }
+        return injectable.isLazy() || (lazyMode && !(injectable instanceof InjectableInstance));
+    }
+
+    private static boolean isController(Injectable injectable) {
+        return injectable.getImplementedTypes().get(0).isAnnotationPresent(Controller.class);
+    }
+
+    private static void register(Map<Class<?>, Map<String, Object>> instances, Injectable injectable, Object newInstance) {
+        for (Class<?> clazz : injectable.getImplementedTypes()) {
+            if (!instances.containsKey(clazz)) {
+                instances.put(clazz, new HashMap<>());
+            }
+            Map<String, Object> namesMap = instances.get(clazz);
+            namesMap.put(injectable.getName().orElse(null), newInstance);
+        }
+    }
+
+    private static List<Injectable> scan(Class<?> c) {
+        List<Injectable> injectables = new ArrayList<>();
+        List<Class<?>> classes = ClassScanner.scan(c.getPackageName(), c.getClassLoader(),
+                List.of(Component.class, Controller.class, Configuration.class));
+        for (Class<?> clazz : classes) {
+            if (clazz.isAnnotationPresent(Component.class)) {
+                logger.info("Found component " + clazz.getName());
+                injectables.add(new InjectableComponent(clazz));
+            } else if (clazz.isAnnotationPresent(Controller.class)) {
+                logger.info("Found controller " + clazz.getName());
+                injectables.add(new InjectableComponent(clazz));
+            } else if (clazz.isAnnotationPresent(Configuration.class)) {
+                logger.info("Found configuration " + clazz.getName());
+                try {
+                    Object configuration = clazz.getConstructor().newInstance();
+                    for (Method method : clazz.getMethods()) {
+                        if (method.isAnnotationPresent(Bean.class)) {
+                            logger.info("Found bean " + method.getName());
+                            injectables.add(new InjectableBean(method, configuration));
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new InjectionException("Class " + clazz.getName() + " annotated as @Configuration doesn't have an empty constructor.");
+                }
+            }
+        }
+        return injectables;
+    }
+
+    private static List<Method> findRouteMethods(Class<?> controllerClass) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : controllerClass.getMethods()) {
+            if (method.isAnnotationPresent(Route.class)) {
+                methods.add(method);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return methods;
     }
 
-    private static HashMap<HandlerKey, RouteHandler> extractRoutes(List<Object> controllers) {
+    private static HashMap<HandlerKey, RouteHandler> extractRoutes(List<Object> controllers, JsonCodec jsonCodec,
+                                                                 MetricsRegistry metricsRegistry,
+                                                                 Function<NamedClass, Object> registry,
+                                                                 Function<Class<?>, List<Method>> routeMethods) {
         HashMap<HandlerKey, RouteHandler> map = new HashMap<>();
         for (Object controller : controllers) {
             logger.info("Scanning routes for controller " + controller.getClass().getName());
             Class<?> objectClass = controller.getClass();
-            Method[] methods = objectClass.getMethods();
-            for (Method method : methods) {
+            for (Method method : routeMethods.apply(objectClass)) {
                 Route route = method.getAnnotation(Route.class);
-                if (route != null) {
-                    logger.info("Found route " + method.getName());
-                    map.put(new HandlerKey(route.method(), route.value()), new RouteHandler(method, controller, objectClass));
-                }
+                logger.info("Found route " + method.getName());
+                map.put(new HandlerKey(route.method(), route.value()), new RouteHandler(method, controller, objectClass, jsonCodec, metricsRegistry, registry));
             }
         }
         return map;
@@ -0,0 +1,16 @@
+package webdi.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+    long ttl() default 60;
+    TimeUnit unit() default TimeUnit.SECONDS;
+    // request headers that are part of the cache key next to the method, path and query
+    String[] headers() default {};
+}
@@ -6,6 +6,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.CONSTRUCTOR)
+// on route handler parameters it injects a dependency, usually a request scoped or pooled one
+@Target({ElementType.CONSTRUCTOR, ElementType.PARAMETER})
 public @interface Inject {
 }
@@ -0,0 +1,13 @@
+package webdi.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// On @Route methods: how much of the global concurrency limit the route may use before its requests are rejected.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Priority {
+    PriorityLevel value();
+}
@@ -0,0 +1,11 @@
+package webdi.annotation;
+
+public enum PriorityLevel {
+    // may use all of the global concurrency limit, e.g. health checks
+    CRITICAL,
+    HIGH,
+    // routes without @Priority
+    NORMAL,
+    // the first to be shed when the server gets busy
+    LOW
+}
@@ -0,0 +1,15 @@
+package webdi.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Scope {
+    ScopeType value();
+
+    // idle instances kept by a POOLED scope
+    int poolSize() default 32;
+}
@@ -0,0 +1,12 @@
+package webdi.annotation;
+
+public enum ScopeType {
+    // one instance for the application, the default
+    SINGLETON,
+    // a new instance every time it's injected
+    PROTOTYPE,
+    // one instance per request, only injectable into route handler parameters and other scoped instances
+    REQUEST,
+    // like REQUEST, but instances are handed back to a bounded pool when the request is done and reused
+    POOLED
+}
@@ -0,0 +1,16 @@
+package webdi.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+// For routes returning a CompletionStage: answers with the status, 504 or 503, when the stage isn't complete in time.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Timeout {
+    long value();
+    TimeUnit unit() default TimeUnit.SECONDS;
+    int status() default 504;
+}
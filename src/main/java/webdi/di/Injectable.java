@@ -1,5 +1,7 @@
 package webdi.di;
 
+import webdi.annotation.Scope;
+
 import java.lang.reflect.Parameter;
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +13,12 @@ public interface Injectable {
     Parameter[] getParameters();
     Object construct(Object[] dependencies);
     Optional<String> getName();
+
+    default boolean isLazy() {
+        return false;
+    }
+
+    default Optional<Scope> getScope() {
+        return Optional.empty();
+    }
 }
@@ -1,6 +1,9 @@
 package webdi.di;
 
+import webdi.Invokers;
+import webdi.annotation.Lazy;
 import webdi.annotation.Named;
+import webdi.annotation.Scope;
 import webdi.annotation.Value;
 import webdi.exception.InjectionException;
 
@@ -15,10 +18,16 @@ public class InjectableBean implements Injectable{
 
     private final Method method;
     private final Object configuration;
+    private final Invokers.Invoker invoker;
 
     public InjectableBean(Method method, Object configuration) {
         this.method = method;
         this.configuration = configuration;
+        try {
+            this.invoker = Invokers.forMethod(method, configuration);
+        } catch (IllegalAccessException e) {
+            throw new InjectionException("Method " + method.getName() + " isn't accessible", e);
+        }
     }
 
     @Override
@@ -38,8 +47,10 @@ public class InjectableBean implements Injectable{
     @Override
     public Object construct(Object[] dependencies) {
         try {
-            return method.invoke(configuration, dependencies);
-        } catch (Exception e) {
+            return invoker.invoke(dependencies);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new InjectionException("Couldn't invoke method " + method.getName(), e);
         }
     }
@@ -54,6 +65,16 @@ public class InjectableBean implements Injectable{
         }
     }
 
+    @Override
+    public boolean isLazy() {
+        return method.isAnnotationPresent(Lazy.class);
+    }
+
+    @Override
+    public Optional<Scope> getScope() {
+        return Optional.ofNullable(method.getAnnotation(Scope.class));
+    }
+
     @Override
     public String toString() {
         return "InjectableBean{" +
@@ -1,7 +1,10 @@
 package webdi.di;
 
+import webdi.Invokers;
 import webdi.annotation.Inject;
+import webdi.annotation.Lazy;
 import webdi.annotation.Named;
+import webdi.annotation.Scope;
 import webdi.exception.InjectionException;
 
 import java.lang.reflect.Constructor;
@@ -15,14 +18,21 @@ public class InjectableComponent implements Injectable {
 
     private final Class<?> clazz;
     private final Constructor<?> constructor;
+    private final Invokers.Invoker invoker;
 
     public InjectableComponent(Class<?> clazz) {
+        this(clazz, findConstructor(clazz).orElseThrow(() ->
+                new InjectionException("Couldn't find a suitable constructor for class " + clazz.getName())));
+    }
+
+    public InjectableComponent(Class<?> clazz, Constructor<?> constructor) {
         this.clazz = clazz;
-        Optional<Constructor<?>> constructorOptional = findConstructor(clazz);
-        if (constructorOptional.isEmpty()) {
-            throw new InjectionException("Couldn't find a suitable constructor for class " + clazz.getName());
+        this.constructor = constructor;
+        try {
+            this.invoker = Invokers.forConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            throw new InjectionException("Constructor of class " + clazz.getName() + " isn't accessible", e);
         }
-        this.constructor = constructorOptional.get();
     }
 
     @Override
@@ -41,8 +51,10 @@ public class InjectableComponent implements Injectable {
     @Override
     public Object construct(Object[] dependencies) {
         try {
-            return constructor.newInstance(dependencies);
-        } catch (Exception e) {
+            return invoker.invoke(dependencies);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new InjectionException("Failed to construct class " + clazz.getName(), e);
         }
     }
@@ -57,6 +69,16 @@ public class InjectableComponent implements Injectable {
         }
     }
 
+    @Override
+    public boolean isLazy() {
+        return clazz.isAnnotationPresent(Lazy.class);
+    }
+
+    @Override
+    public Optional<Scope> getScope() {
+        return Optional.ofNullable(clazz.getAnnotation(Scope.class));
+    }
+
     private static Optional<Constructor<?>> findConstructor(Class<?> c) {
         for (Constructor<?> constructor : c.getDeclaredConstructors()) {
             if (constructor.isAnnotationPresent(Inject.class)) {
@@ -0,0 +1,46 @@
+package webdi.di;
+
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class InjectableInstance implements Injectable {
+
+    private final Object instance;
+
+    public InjectableInstance(Object instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public List<Class<?>> getImplementedTypes() {
+        Class<?> clazz = instance.getClass();
+        List<Class<?>> types = new ArrayList<>();
+        types.add(clazz);
+        types.addAll(List.of(clazz.getInterfaces()));
+        return types;
+    }
+
+    @Override
+    public Parameter[] getParameters() {
+        return new Parameter[0];
+    }
+
+    @Override
+    public Object construct(Object[] dependencies) {
+        return instance;
+    }
+
+    @Override
+    public Optional<String> getName() {
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "InjectableInstance{" +
+                "class=" + instance.getClass().getName() +
+                '}';
+    }
+}
@@ -0,0 +1,84 @@
+package webdi.di;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stands in for a @Lazy injectable in the instance registry. Its arguments are resolved at boot, so missing
+// dependencies and config values still fail there, but the instance is only constructed on first use. Dependents
+// asking for an interface get a proxy that constructs it on the first call. A class can't be proxied, dependents
+// asking for one get this instance if they are deferred themselves. Eager ones fail at boot for a @Lazy injectable,
+// and get it created with a warning when it's only lazy through the global mode.
+public final class LazyInstance {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyInstance.class);
+
+    public static final String MODE_KEY = "webdi.di.lazy";
+
+    private final Injectable injectable;
+    private final Object[] arguments;
+    private final Map<Class<?>, Object> proxies = new ConcurrentHashMap<>();
+    private volatile Object instance;
+
+    // arguments may contain other lazy instances for parameters of a class type
+    public LazyInstance(Injectable injectable, Object[] arguments) {
+        this.injectable = injectable;
+        this.arguments = arguments;
+    }
+
+    public Object get() {
+        Object result = instance;
+        if (result == null) {
+            synchronized (this) {
+                result = instance;
+                if (result == null) {
+                    logger.info("Creating lazy dependency " + injectable);
+                    Object[] resolved = new Object[arguments.length];
+                    for (int i = 0; i < arguments.length; i++) {
+                        resolved[i] = unwrap(arguments[i]);
+                    }
+                    result = injectable.construct(resolved);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Annotated with @Lazy, rather than lazy through the global mode.
+    public boolean isDeclared() {
+        return injectable.isLazy();
+    }
+
+    public Object proxy(Class<?> type) {
+        return proxies.computeIfAbsent(type, key -> {
+            ClassLoader classLoader = key.getClassLoader() != null ? key.getClassLoader() : ClassLoader.getSystemClassLoader();
+            return Proxy.newProxyInstance(classLoader, new Class<?>[]{key}, (proxy, method, methodArguments) -> {
+                try {
+                    return method.invoke(get(), methodArguments);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        });
+    }
+
+    // The instance itself for values of the registry that may be lazy, or prototypes.
+    public static Object unwrap(Object value) {
+        if (value instanceof LazyInstance lazyInstance) {
+            return lazyInstance.get();
+        }
+        return value instanceof ScopedInstance scopedInstance ? scopedInstance.get(null) : value;
+    }
+
+    @Override
+    public String toString() {
+        return "LazyInstance{" +
+                "injectable=" + injectable +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package webdi.di;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded lock-free pool of idle instances. Each thread starts probing at its own slot, so threads mostly take
+// and return instances in different stripes instead of contending on a shared head.
+final class ObjectPool {
+
+    private final AtomicReferenceArray<Object> slots;
+
+    ObjectPool(int size) {
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    // null when the pool is empty
+    Object borrow() {
+        int length = slots.length();
+        int start = start(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            Object instance = slots.get(index);
+            if (instance != null && slots.compareAndSet(index, instance, null)) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    // false when the pool is full and the instance is left to the garbage collector
+    boolean release(Object instance) {
+        int length = slots.length();
+        int start = start(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, instance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int start(int length) {
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 33) % length;
+    }
+}
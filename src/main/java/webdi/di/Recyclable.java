@@ -0,0 +1,7 @@
+package webdi.di;
+
+// Implemented by POOLED instances that keep per-request state, called before the instance goes back to its pool.
+// An instance whose recycle throws is dropped instead of being reused.
+public interface Recyclable {
+    void recycle();
+}
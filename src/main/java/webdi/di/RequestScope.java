@@ -0,0 +1,27 @@
+package webdi.di;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// The REQUEST and POOLED instances of one request. Closing it hands the pooled ones back to their pools.
+// A request is handled by one thread at a time, so nothing here is synchronized.
+public final class RequestScope implements AutoCloseable {
+
+    private final Map<ScopedInstance, Object> instances = new IdentityHashMap<>(4);
+
+    Object get(ScopedInstance scopedInstance) {
+        return instances.get(scopedInstance);
+    }
+
+    void put(ScopedInstance scopedInstance, Object instance) {
+        instances.put(scopedInstance, instance);
+    }
+
+    @Override
+    public void close() {
+        for (Map.Entry<ScopedInstance, Object> entry : instances.entrySet()) {
+            entry.getKey().release(entry.getValue());
+        }
+        instances.clear();
+    }
+}
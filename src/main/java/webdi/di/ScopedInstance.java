@@ -0,0 +1,93 @@
+package webdi.di;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.annotation.Scope;
+import webdi.annotation.ScopeType;
+import webdi.exception.InjectionException;
+
+import java.util.Locale;
+
+// Stands in for a PROTOTYPE, REQUEST or POOLED injectable in the instance registry. Like a LazyInstance its
+// arguments are resolved at boot, scoped dependencies among them stay ScopedInstances and are resolved again
+// for every instance created, within the same request scope.
+public final class ScopedInstance {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScopedInstance.class);
+
+    private final Injectable injectable;
+    private final ScopeType type;
+    private final Object[] arguments;
+    private final ObjectPool pool;
+
+    public ScopedInstance(Injectable injectable, Scope scope, Object[] arguments) {
+        if (scope.value() == ScopeType.SINGLETON) {
+            throw new InjectionException(injectable + " is a singleton");
+        }
+        if (scope.value() == ScopeType.POOLED && scope.poolSize() <= 0) {
+            throw new InjectionException("Pool size of " + injectable + " must be positive, but is " + scope.poolSize());
+        }
+        this.injectable = injectable;
+        this.type = scope.value();
+        this.arguments = arguments;
+        this.pool = type == ScopeType.POOLED ? new ObjectPool(scope.poolSize()) : null;
+    }
+
+    // requestScope is null outside of requests, where only PROTOTYPE instances can be created
+    public Object get(RequestScope requestScope) {
+        if (type == ScopeType.PROTOTYPE) {
+            return create(requestScope);
+        }
+        if (requestScope == null) {
+            throw new InjectionException(injectable + " is " + type.name().toLowerCase(Locale.ROOT) +
+                    " scoped and can only be injected into route handlers and other scoped dependencies");
+        }
+        Object instance = requestScope.get(this);
+        if (instance == null) {
+            if (type == ScopeType.POOLED) {
+                instance = pool.borrow();
+            }
+            if (instance == null) {
+                instance = create(requestScope);
+            }
+            requestScope.put(this, instance);
+        }
+        return instance;
+    }
+
+    public ScopeType getType() {
+        return type;
+    }
+
+    void release(Object instance) {
+        if (type != ScopeType.POOLED) {
+            return;
+        }
+        if (instance instanceof Recyclable recyclable) {
+            try {
+                recyclable.recycle();
+            } catch (RuntimeException e) {
+                logger.warn("Dropping " + injectable + " from its pool, because recycling failed", e);
+                return;
+            }
+        }
+        pool.release(instance);
+    }
+
+    private Object create(RequestScope requestScope) {
+        Object[] resolved = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            resolved[i] = arguments[i] instanceof ScopedInstance scopedInstance
+                    ? scopedInstance.get(requestScope) : LazyInstance.unwrap(arguments[i]);
+        }
+        return injectable.construct(resolved);
+    }
+
+    @Override
+    public String toString() {
+        return "ScopedInstance{" +
+                "injectable=" + injectable +
+                ", type=" + type +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package webdi.exception;
+
+// A violation of HTTP/2 framing or compression. A connection error ends the connection with GOAWAY, a stream
+// error only resets the stream.
+public class Http2Exception extends WebServerException {
+
+    private final int errorCode;
+    private final int streamId;
+
+    public Http2Exception(int errorCode, String message) {
+        this(errorCode, 0, message);
+    }
+
+    public Http2Exception(int errorCode, int streamId, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    // 0 for connection errors
+    public int getStreamId() {
+        return streamId;
+    }
+}
@@ -0,0 +1,17 @@
+package webdi.exception;
+
+import webdi.web.Status;
+
+public class HttpParseException extends WebServerException {
+
+    private final Status status;
+
+    public HttpParseException(Status status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,23 @@
+package webdi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
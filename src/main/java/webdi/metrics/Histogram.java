@@ -0,0 +1,74 @@
+package webdi.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear histogram of nanosecond durations in the spirit of HdrHistogram: every power of two is split into
+// 8 linear sub-buckets, so a recorded value is off by at most 12.5%. Buckets are LongAdders created on first use.
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 ns is a little over 18 minutes, anything longer lands in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int index = Math.min(index(value), BUCKETS - 1);
+        LongAdder bucket = buckets.get(index);
+        if (bucket == null) {
+            buckets.compareAndSet(index, null, new LongAdder());
+            bucket = buckets.get(index);
+        }
+        bucket.increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    // Number of recorded values that are at most the given bound, to bucket granularity.
+    public long countAtMost(long nanos) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= nanos; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                total += bucket.sum();
+            }
+        }
+        return total;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
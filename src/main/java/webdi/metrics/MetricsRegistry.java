@@ -0,0 +1,138 @@
+package webdi.metrics;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+// Metrics are looked up once, usually at startup, and then updated without locks. Labels are passed as
+// name/value pairs, e.g. registry.counter("webdi_requests_total", "Requests", "route", "/users/{id}").
+public final class MetricsRegistry {
+
+    // bucket bounds of the exported histograms in seconds
+    private static final double[] EXPORTED_BOUNDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final String[] EXPORTED_LABELS = new String[EXPORTED_BOUNDS.length];
+
+    static {
+        for (int i = 0; i < EXPORTED_BOUNDS.length; i++) {
+            EXPORTED_LABELS[i] = "le=\"" + BigDecimal.valueOf(EXPORTED_BOUNDS[i]).stripTrailingZeros().toPlainString() + "\"";
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).children.computeIfAbsent(labels(labels), key -> new Counter());
+    }
+
+    // A counter whose value is kept elsewhere, e.g. the rejected count of an executor.
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).children.put(labels(labels), value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).children.put(labels(labels), value);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).children.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public String scrape() {
+        StringBuilder builder = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            builder.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                Object metric = child.getValue();
+                if (metric instanceof Histogram histogram) {
+                    for (int i = 0; i < EXPORTED_BOUNDS.length; i++) {
+                        sample(builder, name + "_bucket", join(labels, EXPORTED_LABELS[i]),
+                                histogram.countAtMost((long) (EXPORTED_BOUNDS[i] * 1e9)));
+                    }
+                    long count = histogram.getCount();
+                    sample(builder, name + "_bucket", join(labels, "le=\"+Inf\""), count);
+                    sample(builder, name + "_sum", labels, histogram.getSum() / 1e9);
+                    sample(builder, name + "_count", labels, count);
+                } else if (metric instanceof Counter counter) {
+                    sample(builder, name, labels, counter.get());
+                } else if (metric instanceof LongSupplier supplier) {
+                    sample(builder, name, labels, supplier.getAsLong());
+                } else {
+                    sample(builder, name, labels, ((DoubleSupplier) metric).getAsDouble());
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static void sample(StringBuilder builder, String name, String labels, Object value) {
+        builder.append(name);
+        if (!labels.isEmpty()) {
+            builder.append('{').append(labels).append('}');
+        }
+        builder.append(' ').append(value).append('\n');
+    }
+
+    private static String join(String labels, String label) {
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\' -> builder.append("\\\\");
+                    case '"' -> builder.append("\\\"");
+                    case '\n' -> builder.append("\\n");
+                    default -> builder.append(c);
+                }
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+    private static final class Family {
+        private final String help;
+        private final Type type;
+        private final Map<String, Object> children = new ConcurrentSkipListMap<>();
+
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package webdi.web;
+
+// The result of admitting a request once its head is parsed: its route and, once its body is complete, the
+// concurrency permits it holds until its response is complete. A request over a limit is rejected at its head
+// already, but slow uploads neither hold permits nor count toward the latency that adapts the limits.
+final class Admission {
+
+    // null when no route matches
+    private final RoutedRequest routedRequest;
+    // null when not limited
+    private final ConcurrencyLimits limits;
+    // set while the permits are held
+    private ConcurrencyLimiter global;
+    private ConcurrencyLimiter route;
+    // the latency fed to the limiters includes waiting for a handler thread, which is where queueing shows first
+    private long start;
+    private boolean started;
+    private boolean released;
+
+    Admission(RoutedRequest routedRequest, ConcurrencyLimits limits) {
+        this.routedRequest = routedRequest;
+        this.limits = limits;
+    }
+
+    RoutedRequest routedRequest() {
+        return routedRequest;
+    }
+
+    // Called once the body is complete. Throws an HttpParseException with status 503 when a limit was reached
+    // while the body was read.
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (limits != null) {
+            route = limits.acquire(routedRequest.routeHandler());
+            global = limits.global();
+        }
+        start = System.nanoTime();
+    }
+
+    // dropped for requests that failed or timed out
+    void release(boolean dropped) {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (route != null) {
+            long latencyNanos = System.nanoTime() - start;
+            global.release(latencyNanos, dropped);
+            route.release(latencyNanos, dropped);
+        }
+    }
+
+    // For requests that are never handled, e.g. when the connection closes while the body is read.
+    void cancel() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (route != null) {
+            global.cancel();
+            route.cancel();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package webdi.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+public class BlockingServerEngine implements ServerEngine {
+    private static final Logger logger = LoggerFactory.getLogger(BlockingServerEngine.class);
+
+    private final ServerSettings settings;
+    private final RequestHandler requestHandler;
+    private final ConnectionExecutor executor;
+
+    public BlockingServerEngine(ServerSettings settings, RequestHandler requestHandler, ConnectionExecutor executor) {
+        this.settings = settings;
+        this.requestHandler = requestHandler;
+        this.executor = executor;
+    }
+
+    @Override
+    public void serve() throws IOException {
+        // sockets accepted through a channel expose it, which lets file bodies be sent with transferTo
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(settings.port()));
+            logger.info("Blocking engine listening on port " + settings.port());
+            while (true) {
+                Socket socket = serverChannel.accept().socket();
+                requestHandler.getMetrics().accepted.increment();
+                logger.info("Received new connection from " + socket.getRemoteSocketAddress());
+                MyWebServer webServer = new MyWebServer(socket, requestHandler, settings, executor);
+                if (!executor.submit(webServer)) {
+                    logger.warn("Rejected connection from " + socket.getRemoteSocketAddress() + ", queue depth " +
+                            executor.getQueueDepth() + ", rejected so far " + executor.getRejectedCount());
+                    requestHandler.getMetrics().responses(Status.SERVICE_UNAVAILABLE.code).increment();
+                    MyWebServer.reject(socket);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package webdi.web;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BoundedPoolConnectionExecutor implements ConnectionExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedPoolConnectionExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "webdi-worker-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public boolean submit(Runnable connection) {
+        try {
+            executor.execute(connection);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,4 @@
+package webdi.web;
+
+record CachePolicy(long ttlNanos, String[] headers) {
+}
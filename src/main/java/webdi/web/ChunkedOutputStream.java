@@ -0,0 +1,47 @@
+package webdi.web;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+class ChunkedOutputStream extends FilterOutputStream {
+
+    private static final byte[] CRLF_BYTES = MyWebServer.CRLF.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = ("0" + MyWebServer.CRLF + MyWebServer.CRLF).getBytes(StandardCharsets.US_ASCII);
+
+    private boolean finished;
+
+    ChunkedOutputStream(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF_BYTES);
+        out.write(b, off, len);
+        out.write(CRLF_BYTES);
+    }
+
+    // Writes the last chunk but leaves the connection open for the next response.
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            out.write(LAST_CHUNK);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,229 @@
+package webdi.web;
+
+import webdi.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static webdi.web.MyWebServer.CONTENT_LENGTH_HEADER_NAME;
+import static webdi.web.MyWebServer.CONTENT_TYPE_HEADER_NAME;
+
+// Negotiates a content coding from Accept-Encoding and compresses response bodies while they are written.
+public final class Compression {
+
+    public static final String ENABLED_KEY = "webdi.compression.enabled";
+    public static final String MIN_SIZE_KEY = "webdi.compression.min-size";
+    public static final String LEVEL_KEY = "webdi.compression.level";
+    public static final String CONTENT_TYPES_KEY = "webdi.compression.content-types";
+
+    static final String ACCEPT_ENCODING_HEADER_NAME = "accept-encoding";
+    static final String CONTENT_ENCODING_HEADER_NAME = "content-encoding";
+    static final String VARY_HEADER_NAME = "vary";
+
+    private static final String DEFAULT_CONTENT_TYPES = "text/html,text/plain,text/css,text/javascript,text/xml,application/json," +
+            "application/javascript,application/xml,image/svg+xml";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean enabled;
+    private final long minSize;
+    private final int level;
+    private final Set<String> contentTypes;
+
+    public Compression(boolean enabled, long minSize, int level, Set<String> contentTypes) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.level = level;
+        this.contentTypes = contentTypes;
+    }
+
+    public static Compression disabled() {
+        return new Compression(false, 0, Deflater.DEFAULT_COMPRESSION, Set.of());
+    }
+
+    public static Compression fromConfig(Config config) {
+        Set<String> contentTypes = new HashSet<>();
+        for (String contentType : config.getString(CONTENT_TYPES_KEY, DEFAULT_CONTENT_TYPES).split(",")) {
+            if (!contentType.isBlank()) {
+                contentTypes.add(contentType.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return new Compression(config.getBoolean(ENABLED_KEY, true), config.getLong(MIN_SIZE_KEY, 1024),
+                config.getInt(LEVEL_KEY, Deflater.DEFAULT_COMPRESSION), contentTypes);
+    }
+
+    // The codings the client accepts, most wanted first; q=0 excludes a coding and * stands for the unlisted ones.
+    List<ContentEncoding> negotiate(MyRequest request) {
+        List<String> header = request.requestHeaders().get(ACCEPT_ENCODING_HEADER_NAME);
+        if (!enabled || header == null) {
+            return List.of();
+        }
+        float[] weights = new float[ContentEncoding.values().length];
+        Arrays.fill(weights, -1);
+        float wildcard = 0;
+        for (String value : header) {
+            for (String coding : value.split(",")) {
+                int semicolon = coding.indexOf(';');
+                String token = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim();
+                float weight = semicolon < 0 ? 1 : quality(coding.substring(semicolon + 1));
+                if (token.equals("*")) {
+                    wildcard = weight;
+                    continue;
+                }
+                for (ContentEncoding encoding : ContentEncoding.values()) {
+                    if (encoding.token.equalsIgnoreCase(token)) {
+                        weights[encoding.ordinal()] = weight;
+                    }
+                }
+            }
+        }
+        List<ContentEncoding> accepted = new ArrayList<>(weights.length);
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            if (weights[encoding.ordinal()] < 0) {
+                weights[encoding.ordinal()] = wildcard;
+            }
+            if (weights[encoding.ordinal()] > 0) {
+                accepted.add(encoding);
+            }
+        }
+        // stable, so equally rated codings keep the enum's preference order
+        accepted.sort(Comparator.comparingDouble(encoding -> -weights[encoding.ordinal()]));
+        return accepted;
+    }
+
+    private static float quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    // The first accepted coding we can produce on the fly, or null.
+    static ContentEncoding dynamicEncoding(List<ContentEncoding> accepted) {
+        for (ContentEncoding encoding : accepted) {
+            if (encoding.dynamic) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    boolean isCompressibleType(String contentType) {
+        if (!enabled || contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+        return contentTypes.contains(mediaType);
+    }
+
+    boolean isLargeEnough(long length) {
+        return length < 0 || length >= minSize;
+    }
+
+    // Whether the representation of the response depends on Accept-Encoding, in which case it gets Vary.
+    boolean isCompressible(MyResponse response) {
+        int status = response.statusLine().statusCode();
+        ResponseBody body = response.responseBody();
+        return body != null && status != Status.NO_CONTENT.code && status != Status.PARTIAL_CONTENT.code &&
+                !response.responseHeaders().containsKey(CONTENT_ENCODING_HEADER_NAME) &&
+                isCompressibleType(header(response, CONTENT_TYPE_HEADER_NAME)) && isLargeEnough(body.contentLength());
+    }
+
+    // Wraps the body so it's compressed while it's written; the length isn't known anymore, so it goes out chunked.
+    MyResponse apply(MyResponse response, List<ContentEncoding> accepted) {
+        if (!isCompressible(response)) {
+            return response;
+        }
+        addVary(response.responseHeaders());
+        ContentEncoding encoding = dynamicEncoding(accepted);
+        if (encoding == null) {
+            return response;
+        }
+        ResponseBody body = response.responseBody();
+        response.responseHeaders().remove(CONTENT_LENGTH_HEADER_NAME);
+        response.responseHeaders().put(CONTENT_ENCODING_HEADER_NAME, List.of(encoding.token));
+        return new MyResponse(response.statusLine(), response.responseHeaders(), compressed(body, encoding));
+    }
+
+    ResponseBody compressed(ResponseBody body, ContentEncoding encoding) {
+        return ResponseBody.writer(outputStream -> {
+            DeflaterOutputStream compressingStream = open(outputStream, encoding);
+            try {
+                body.writeTo(compressingStream);
+            } catch (IOException | RuntimeException e) {
+                // e.g. the client went away, finish() still frees the native deflater but likely fails to write
+                try {
+                    compressingStream.finish();
+                } catch (IOException | RuntimeException finishFailure) {
+                    e.addSuppressed(finishFailure);
+                }
+                throw e;
+            }
+            compressingStream.finish();
+        });
+    }
+
+    byte[] compress(ResponseBody body, ContentEncoding encoding) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.max(32, body.contentLength() / 4));
+        compressed(body, encoding).writeTo(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    static void addVary(Map<String, List<String>> headers) {
+        List<String> vary = headers.get(VARY_HEADER_NAME);
+        if (vary == null) {
+            headers.put(VARY_HEADER_NAME, List.of(ACCEPT_ENCODING_HEADER_NAME));
+        } else if (vary.stream().noneMatch(value -> value.toLowerCase(Locale.ROOT).contains(ACCEPT_ENCODING_HEADER_NAME))) {
+            List<String> values = new ArrayList<>(vary);
+            values.add(ACCEPT_ENCODING_HEADER_NAME);
+            headers.put(VARY_HEADER_NAME, values);
+        }
+    }
+
+    // finish() writes the trailer without closing the connection's stream and frees the native deflater.
+    private DeflaterOutputStream open(OutputStream outputStream, ContentEncoding encoding) throws IOException {
+        if (encoding == ContentEncoding.GZIP) {
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    try {
+                        super.finish();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+        return new DeflaterOutputStream(outputStream, new Deflater(level), BUFFER_SIZE) {
+            @Override
+            public void finish() throws IOException {
+                try {
+                    super.finish();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    private static String header(MyResponse response, String name) {
+        List<String> values = response.responseHeaders().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,99 @@
+package webdi.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// An adaptive concurrency limit following the gradient of the latency, like the gradient limit of Netflix's
+// concurrency-limits: while the recent latency stays close to the latency without load the limit grows by its
+// square root, once requests queue up and the recent latency rises above it the limit shrinks in proportion.
+// The latency without load is the minimum of the last two windows of samples, an average would follow the
+// queueing it is meant to detect. Failed and timed out requests shrink the limit multiplicatively. Acquiring is
+// a CAS on the in-flight count, only the samples taken when requests complete are synchronized.
+final class ConcurrencyLimiter {
+
+    // how far the recent latency may rise above the one without load before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_WINDOW = 10;
+    private static final int BASELINE_WINDOW = 500;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+    // in nanoseconds, guarded by this
+    private double shortLatency;
+    private double windowMinimum = Double.MAX_VALUE;
+    private double previousWindowMinimum = Double.MAX_VALUE;
+    private int windowSamples;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    // share is the fraction of the limit available to the caller, without take there only has to be a permit left
+    boolean tryAcquire(double share, boolean take) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejected.increment();
+                return false;
+            }
+            if (!take || inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Gives the permit back without a sample, for requests that never ran.
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    void release(long latencyNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        update(latencyNanos, dropped, current);
+    }
+
+    private synchronized void update(long latency, boolean dropped, int inFlightBefore) {
+        double current = limit;
+        double next;
+        if (dropped) {
+            next = current * BACKOFF;
+        } else {
+            shortLatency = shortLatency == 0 ? latency : shortLatency + (latency - shortLatency) / SHORT_WINDOW;
+            windowMinimum = Math.min(windowMinimum, latency);
+            if (++windowSamples == BASELINE_WINDOW) {
+                previousWindowMinimum = windowMinimum;
+                windowMinimum = Double.MAX_VALUE;
+                windowSamples = 0;
+            }
+            // a limit that isn't used says nothing about the latency it would cause
+            if (inFlightBefore < current / 2) {
+                return;
+            }
+            double baseline = Math.min(windowMinimum, previousWindowMinimum);
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baseline / shortLatency));
+            next = current * gradient + Math.sqrt(current);
+            next = current * (1 - SMOOTHING) + next * SMOOTHING;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.sum();
+    }
+}
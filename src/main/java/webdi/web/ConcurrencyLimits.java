@@ -0,0 +1,106 @@
+package webdi.web;
+
+import webdi.Config;
+import webdi.annotation.PriorityLevel;
+import webdi.exception.HttpParseException;
+import webdi.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sheds load before a request's body is read: every route has its own adaptive limit next to a global one shared
+// by all routes. Routes of a lower priority only get a share of the global limit, so they're rejected first.
+public final class ConcurrencyLimits {
+
+    public static final String ENABLED_KEY = "webdi.limit.enabled";
+    public static final String INITIAL_KEY = "webdi.limit.initial";
+    public static final String MIN_KEY = "webdi.limit.min";
+    public static final String MAX_KEY = "webdi.limit.max";
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final MetricsRegistry registry;
+    private final ConcurrencyLimiter global;
+    private final Map<RouteHandler, ConcurrencyLimiter> routes = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimits(boolean enabled, int initialLimit, int minLimit, int maxLimit, MetricsRegistry registry) {
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.registry = registry;
+        this.global = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        if (enabled) {
+            register(global, "scope", "global");
+        }
+    }
+
+    public static ConcurrencyLimits fromConfig(Config config, MetricsRegistry registry) {
+        return new ConcurrencyLimits(config.getBoolean(ENABLED_KEY, false), config.getInt(INITIAL_KEY, 20),
+                config.getInt(MIN_KEY, 4), config.getInt(MAX_KEY, 1000), registry);
+    }
+
+    public static ConcurrencyLimits disabled() {
+        return new ConcurrencyLimits(false, 0, 0, 0, new MetricsRegistry());
+    }
+
+    // Checks the limits once the head of a request is parsed, the permits are only taken by Admission.start once
+    // its body is complete. Throws an HttpParseException with status 503 when the route or the global limit is reached.
+    Admission admit(RoutedRequest routedRequest) {
+        if (!enabled) {
+            return new Admission(routedRequest, null);
+        }
+        limit(routedRequest.routeHandler(), false);
+        return new Admission(routedRequest, this);
+    }
+
+    // Takes a permit of the route's limit and of the global one and returns the route's limiter.
+    ConcurrencyLimiter acquire(RouteHandler routeHandler) {
+        return limit(routeHandler, true);
+    }
+
+    ConcurrencyLimiter global() {
+        return global;
+    }
+
+    private ConcurrencyLimiter limit(RouteHandler routeHandler, boolean take) {
+        ConcurrencyLimiter route = routes.computeIfAbsent(routeHandler, this::create);
+        if (!route.tryAcquire(1.0, take)) {
+            throw new HttpParseException(Status.SERVICE_UNAVAILABLE, "Concurrency limit of " + route.getLimit() +
+                    " reached for route " + routeHandler.getRoute().value());
+        }
+        if (!global.tryAcquire(share(routeHandler.getPriority()), take)) {
+            if (take) {
+                route.cancel();
+            }
+            throw new HttpParseException(Status.SERVICE_UNAVAILABLE, "Global concurrency limit of " + global.getLimit() +
+                    " reached for " + routeHandler.getPriority().name().toLowerCase() + " priority route " +
+                    routeHandler.getRoute().value());
+        }
+        return route;
+    }
+
+    private ConcurrencyLimiter create(RouteHandler routeHandler) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        register(limiter, "method", routeHandler.getRoute().method(), "route", routeHandler.getRoute().value());
+        return limiter;
+    }
+
+    private void register(ConcurrencyLimiter limiter, String... labels) {
+        registry.gauge("webdi_concurrency_limit", "Current adaptive concurrency limit", limiter::getLimit, labels);
+        registry.gauge("webdi_concurrency_in_flight", "Requests holding a concurrency permit", limiter::getInFlight, labels);
+        registry.counter("webdi_concurrency_rejected_total", "Requests rejected by a concurrency limit",
+                limiter::getRejectedCount, labels);
+    }
+
+    private static double share(PriorityLevel priority) {
+        return switch (priority) {
+            case CRITICAL -> 1.0;
+            case HIGH -> 0.9;
+            case NORMAL -> 0.75;
+            case LOW -> 0.5;
+        };
+    }
+}
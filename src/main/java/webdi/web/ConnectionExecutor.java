@@ -0,0 +1,15 @@
+package webdi.web;
+
+public interface ConnectionExecutor extends AutoCloseable {
+
+    boolean submit(Runnable connection);
+
+    int getActiveCount();
+
+    int getQueueDepth();
+
+    long getRejectedCount();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,27 @@
+package webdi.web;
+
+import webdi.Config;
+import webdi.exception.WebServerException;
+
+public final class ConnectionExecutors {
+
+    public static final String EXECUTOR_KEY = "webdi.server.executor";
+    public static final String THREADS_KEY = "webdi.server.executor.threads";
+    public static final String QUEUE_KEY = "webdi.server.executor.queue";
+
+    private ConnectionExecutors() {
+    }
+
+    public static ConnectionExecutor fromConfig(Config config) {
+        String type = config.getString(EXECUTOR_KEY, "pool");
+        return switch (type) {
+            case "pool" -> new BoundedPoolConnectionExecutor(
+                    config.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors() * 16),
+                    config.getInt(QUEUE_KEY, 1024));
+            case "virtual" -> new VirtualThreadConnectionExecutor();
+            case "thread" -> new ThreadPerConnectionExecutor();
+            default -> throw new WebServerException("Unknown connection executor " + type +
+                    ", expected one of pool, virtual, thread");
+        };
+    }
+}
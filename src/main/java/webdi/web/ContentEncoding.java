@@ -0,0 +1,19 @@
+package webdi.web;
+
+// Codings we can send, in the order preferred when the client rates several the same. Brotli has no encoder in
+// the JDK, so it's only served from precompressed static files.
+public enum ContentEncoding {
+    BROTLI("br", ".br", false),
+    GZIP("gzip", ".gz", true),
+    DEFLATE("deflate", null, true);
+
+    final String token;
+    final String fileExtension;
+    final boolean dynamic;
+
+    ContentEncoding(String token, String fileExtension, boolean dynamic) {
+        this.token = token;
+        this.fileExtension = fileExtension;
+        this.dynamic = dynamic;
+    }
+}
@@ -0,0 +1,48 @@
+package webdi.web;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The fields and files of a urlencoded or multipart request body, parsed once for all form parameters.
+public final class FormData {
+
+    private final Map<String, List<String>> fields;
+    private final Map<String, List<UploadedFile>> files;
+
+    FormData(Map<String, List<String>> fields, Map<String, List<UploadedFile>> files) {
+        this.fields = fields;
+        this.files = files;
+    }
+
+    static FormData empty() {
+        return new FormData(new HashMap<>(), new HashMap<>());
+    }
+
+    // the first value, null when the field is missing
+    public String field(String name) {
+        List<String> values = fields.get(name);
+        return values != null ? values.get(0) : null;
+    }
+
+    public List<String> fields(String name) {
+        return fields.getOrDefault(name, List.of());
+    }
+
+    public UploadedFile file(String name) {
+        List<UploadedFile> values = files.get(name);
+        return values != null ? values.get(0) : null;
+    }
+
+    public List<UploadedFile> files(String name) {
+        return files.getOrDefault(name, List.of());
+    }
+
+    public Map<String, List<String>> fields() {
+        return fields;
+    }
+
+    public Map<String, List<UploadedFile>> files() {
+        return files;
+    }
+}
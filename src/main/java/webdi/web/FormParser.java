@@ -0,0 +1,298 @@
+package webdi.web;
+
+import webdi.exception.HttpParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parses application/x-www-form-urlencoded and multipart/form-data bodies. Multipart bodies are read as a stream,
+// only field values are buffered while file parts are remembered as ranges of the request body.
+final class FormParser {
+
+    static final String URLENCODED = "application/x-www-form-urlencoded";
+    static final String MULTIPART = "multipart/form-data";
+
+    // the headers of a single part, they usually are a content-disposition and a content-type
+    private static final int MAX_PART_HEADERS = 8 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FormParser() {
+    }
+
+    static FormData parse(MyRequest request, FormSettings settings) throws IOException {
+        RequestBody body = request.requestBody();
+        List<String> contentTypes = request.requestHeaders().get(MyWebServer.CONTENT_TYPE_HEADER_NAME);
+        if (contentTypes == null) {
+            if (body.size() == 0) {
+                return FormData.empty();
+            }
+            throw new HttpParseException(Status.UNSUPPORTED_MEDIA_TYPE, "Form body without content-type");
+        }
+        String contentType = contentTypes.get(0);
+        if (body.size() > settings.maxSize()) {
+            throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Form of " + body.size() + " bytes exceeds " + settings.maxSize() + " bytes");
+        }
+        String mediaType = mediaType(contentType);
+        if (mediaType.equals(URLENCODED)) {
+            return parseUrlencoded(body, settings);
+        } else if (mediaType.equals(MULTIPART)) {
+            String boundary = parameter(contentType, "boundary");
+            if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed multipart boundary in " + contentType);
+            }
+            return parseMultipart(body, boundary, settings);
+        }
+        throw new HttpParseException(Status.UNSUPPORTED_MEDIA_TYPE, "Content-type " + contentType + " is not a form");
+    }
+
+    private static FormData parseUrlencoded(RequestBody body, FormSettings settings) throws IOException {
+        Map<String, List<String>> fields = new HashMap<>();
+        String content = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        int count = 0;
+        for (String pair : content.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            if (++count > settings.maxParts()) {
+                throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Form has more than " + settings.maxParts() + " fields");
+            }
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            if (value.length() > settings.maxFieldSize()) {
+                throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Form field exceeds " + settings.maxFieldSize() + " bytes");
+            }
+            try {
+                fields.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), key -> new ArrayList<>())
+                        .add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed form field " + pair);
+            }
+        }
+        return new FormData(fields, new HashMap<>());
+    }
+
+    private static FormData parseMultipart(RequestBody body, String boundary, FormSettings settings) throws IOException {
+        Map<String, List<String>> fields = new HashMap<>();
+        Map<String, List<UploadedFile>> files = new HashMap<>();
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        try (InputStream inputStream = body.openStream()) {
+            PartScanner scanner = new PartScanner(inputStream, Math.max(BUFFER_SIZE, 2 * delimiter.length));
+            // the first delimiter isn't preceded by a line break, anything before it is a preamble to ignore
+            scanner.skipTo(("--" + boundary).getBytes(StandardCharsets.US_ASCII), null, body.size());
+            int parts = 0;
+            while (!isCloseDelimiter(scanner.readLine(MAX_PART_HEADERS, true))) {
+                if (++parts > settings.maxParts()) {
+                    throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Form has more than " + settings.maxParts() + " parts");
+                }
+                Map<String, String> headers = readPartHeaders(scanner);
+                String disposition = headers.get("content-disposition");
+                String name = disposition != null ? parameter(disposition, "name") : null;
+                String fileName = disposition != null ? parameter(disposition, "filename") : null;
+                if (fileName == null) {
+                    ByteArrayOutputStream value = new ByteArrayOutputStream();
+                    scanner.skipTo(delimiter, value, settings.maxFieldSize());
+                    if (name != null) {
+                        fields.computeIfAbsent(name, key -> new ArrayList<>()).add(value.toString(StandardCharsets.UTF_8));
+                    }
+                } else {
+                    long offset = scanner.offset();
+                    long size = scanner.skipTo(delimiter, null, settings.maxPartSize());
+                    // browsers send an empty part with an empty file name for a file input left empty
+                    if (name != null && !(fileName.isEmpty() && size == 0)) {
+                        String contentType = headers.getOrDefault(MyWebServer.CONTENT_TYPE_HEADER_NAME, "application/octet-stream");
+                        files.computeIfAbsent(name, key -> new ArrayList<>())
+                                .add(new UploadedFile(name, fileName, contentType, body, offset, size));
+                    }
+                }
+            }
+        }
+        return new FormData(fields, files);
+    }
+
+    // The rest of the delimiter line, "--" after the last part.
+    private static boolean isCloseDelimiter(String line) {
+        String trimmed = line.strip();
+        if (trimmed.equals("--")) {
+            return true;
+        }
+        if (!trimmed.isEmpty()) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Malformed multipart delimiter");
+        }
+        return false;
+    }
+
+    private static Map<String, String> readPartHeaders(PartScanner scanner) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int size = 0;
+        while (true) {
+            String line = scanner.readLine(MAX_PART_HEADERS, false);
+            size += line.length() + 2;
+            if (size > MAX_PART_HEADERS) {
+                throw new HttpParseException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Part headers exceed " + MAX_PART_HEADERS + " bytes");
+            }
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed part header " + line);
+            }
+            headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+    }
+
+    private static String mediaType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+    }
+
+    // The value of a parameter like boundary=... or name="...", quoted values may contain escaped quotes.
+    static String parameter(String header, String name) {
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            int start = i + 1;
+            int equals = header.indexOf('=', start);
+            if (equals < 0) {
+                return null;
+            }
+            String key = header.substring(start, equals).trim();
+            int position = equals + 1;
+            while (position < header.length() && header.charAt(position) == ' ') {
+                position++;
+            }
+            String value;
+            if (position < header.length() && header.charAt(position) == '"') {
+                StringBuilder builder = new StringBuilder();
+                position++;
+                while (position < header.length() && header.charAt(position) != '"') {
+                    char c = header.charAt(position);
+                    if (c == '\\' && position + 1 < header.length()) {
+                        c = header.charAt(++position);
+                    }
+                    builder.append(c);
+                    position++;
+                }
+                value = builder.toString();
+                i = header.indexOf(';', position);
+            } else {
+                i = header.indexOf(';', position);
+                value = header.substring(position, i < 0 ? header.length() : i).trim();
+            }
+            if (key.equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // Reads the body through a fixed buffer and keeps track of the offset in it.
+    private static final class PartScanner {
+        private final InputStream inputStream;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        // offset of buffer[0] in the body
+        private long base;
+
+        private PartScanner(InputStream inputStream, int bufferSize) {
+            this.inputStream = inputStream;
+            this.buffer = new byte[bufferSize];
+        }
+
+        long offset() {
+            return base + position;
+        }
+
+        // Part headers are ASCII, or UTF-8 for some clients' file names. The rest of a delimiter line may end
+        // with the body instead of a line break, as nothing has to follow the close delimiter.
+        String readLine(int maxLength, boolean delimiterLine) throws IOException {
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        int end = i > position && buffer[i - 1] == '\r' ? i - 1 : i;
+                        String line = new String(buffer, position, end - position, StandardCharsets.UTF_8);
+                        position = i + 1;
+                        return line;
+                    }
+                }
+                if (limit - position >= maxLength) {
+                    throw new HttpParseException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Part header line exceeds " + maxLength + " bytes");
+                }
+                if (!fill()) {
+                    if (delimiterLine) {
+                        String line = new String(buffer, position, limit - position, StandardCharsets.UTF_8);
+                        position = limit;
+                        return line;
+                    }
+                    throw new HttpParseException(Status.BAD_REQUEST, "Multipart body ends in the middle of a part");
+                }
+            }
+        }
+
+        // Consumes the content up to and including the next delimiter and returns its length. The content goes to
+        // the sink, if there is one, and fails once it's larger than maxLength.
+        long skipTo(byte[] delimiter, OutputStream sink, long maxLength) throws IOException {
+            long length = 0;
+            while (true) {
+                int found = indexOf(delimiter);
+                // a delimiter may start in the last bytes of the buffer, those wait for the next read
+                int end = found >= 0 ? found : Math.max(position, limit - delimiter.length + 1);
+                length += end - position;
+                if (length > maxLength) {
+                    throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Form part exceeds " + maxLength + " bytes");
+                }
+                if (sink != null) {
+                    sink.write(buffer, position, end - position);
+                }
+                position = end;
+                if (found >= 0) {
+                    position += delimiter.length;
+                    return length;
+                }
+                if (!fill()) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "Multipart body ends in the middle of a part");
+                }
+            }
+        }
+
+        private int indexOf(byte[] delimiter) {
+            byte first = delimiter[0];
+            int last = limit - delimiter.length;
+            for (int i = position; i <= last; i++) {
+                if (buffer[i] != first) {
+                    continue;
+                }
+                int j = 1;
+                while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                    j++;
+                }
+                if (j == delimiter.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean fill() throws IOException {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            base += position;
+            limit -= position;
+            position = 0;
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read <= 0) {
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+    }
+}
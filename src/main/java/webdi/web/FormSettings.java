@@ -0,0 +1,24 @@
+package webdi.web;
+
+import webdi.Config;
+
+// Limits of form bodies. Files aren't copied out of the request body, maxPartSize only bounds each part.
+public record FormSettings(long maxSize, long maxPartSize, int maxFieldSize, int maxParts) {
+
+    public static final String MAX_SIZE_KEY = "webdi.server.form.max-size";
+    public static final String MAX_PART_SIZE_KEY = "webdi.server.form.max-part-size";
+    public static final String MAX_FIELD_SIZE_KEY = "webdi.server.form.max-field-size";
+    public static final String MAX_PARTS_KEY = "webdi.server.form.max-parts";
+
+    public static FormSettings fromConfig(Config config) {
+        return new FormSettings(
+                config.getLong(MAX_SIZE_KEY, 10 * 1024 * 1024),
+                config.getLong(MAX_PART_SIZE_KEY, 10 * 1024 * 1024),
+                config.getInt(MAX_FIELD_SIZE_KEY, 64 * 1024),
+                config.getInt(MAX_PARTS_KEY, 128));
+    }
+
+    public static FormSettings defaults() {
+        return new FormSettings(10 * 1024 * 1024, 10 * 1024 * 1024, 64 * 1024, 128);
+    }
+}
@@ -0,0 +1,56 @@
+package webdi.web;
+
+// Count-min sketch with counters capped at 15 that estimates how often a key was requested recently. Counters are
+// halved once enough increments were recorded, so old popularity fades out. Not thread safe.
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb0ebc05f, 0x7bd3a89b, 0x5c3a1d37};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 20)) * 2 - 1);
+        this.counters = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    void increment(int hash) {
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            if (counters[i][index] < MAX_COUNT) {
+                counters[i][index]++;
+            }
+        }
+        if (++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counters[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void age() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+}
@@ -0,0 +1,116 @@
+package webdi.web;
+
+import webdi.exception.Http2Exception;
+
+import java.util.Arrays;
+
+// The parts of HPACK (RFC 7541) shared by the decoder and the encoder: the static table, prefixed integers and
+// the Huffman code of string literals.
+final class Hpack {
+
+    static final int COMPRESSION_ERROR = 0x9;
+
+    static final String[][] STATIC_TABLE = {
+            {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"}, {":path", "/index.html"},
+            {":scheme", "http"}, {":scheme", "https"}, {":status", "200"}, {":status", "204"}, {":status", "206"},
+            {":status", "304"}, {":status", "400"}, {":status", "404"}, {":status", "500"}, {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"}, {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""},
+            {"access-control-allow-origin", ""}, {"age", ""}, {"allow", ""}, {"authorization", ""},
+            {"cache-control", ""}, {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""},
+            {"content-length", ""}, {"content-location", ""}, {"content-range", ""}, {"content-type", ""},
+            {"cookie", ""}, {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""}, {"from", ""}, {"host", ""},
+            {"if-match", ""}, {"if-modified-since", ""}, {"if-none-match", ""}, {"if-range", ""},
+            {"if-unmodified-since", ""}, {"last-modified", ""}, {"link", ""}, {"location", ""}, {"max-forwards", ""},
+            {"proxy-authenticate", ""}, {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+            {"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+            {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""}, {"www-authenticate", ""}
+    };
+
+    // Code lengths of the 256 octets and EOS from RFC 7541 Appendix B. The code is canonical, codes are assigned
+    // in order of length and then symbol, so the lengths are all it takes to rebuild it.
+    private static final int[] CODE_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+    private static final int EOS = 256;
+    // decoding tree, node 0 is the root, children[2 * node + bit] is a node or the complement of a symbol
+    private static final int[] CHILDREN = buildTree();
+
+    private Hpack() {
+    }
+
+    private static int[] buildTree() {
+        Integer[] symbols = new Integer[CODE_LENGTHS.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = i;
+        }
+        Arrays.sort(symbols, (a, b) -> CODE_LENGTHS[a] != CODE_LENGTHS[b] ? CODE_LENGTHS[a] - CODE_LENGTHS[b] : a - b);
+        int[] children = new int[4 * symbols.length];
+        int nodes = 1;
+        long code = 0;
+        int length = CODE_LENGTHS[symbols[0]];
+        for (int symbol : symbols) {
+            code <<= CODE_LENGTHS[symbol] - length;
+            length = CODE_LENGTHS[symbol];
+            int node = 0;
+            for (int bit = length - 1; bit > 0; bit--) {
+                int index = 2 * node + (int) ((code >>> bit) & 1);
+                if (children[index] == 0) {
+                    children[index] = nodes++;
+                }
+                node = children[index];
+            }
+            children[2 * node + (int) (code & 1)] = ~symbol;
+            code++;
+        }
+        return children;
+    }
+
+    // Strings are octets, kept one char per octet as the HTTP/1.1 parser does.
+    static String huffmanDecode(byte[] source, int offset, int length) {
+        StringBuilder builder = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        // bits since the last symbol, which at the end must be fewer than 8 and all ones
+        int pendingBits = 0;
+        boolean allOnes = true;
+        for (int i = offset; i < offset + length; i++) {
+            int octet = source[i] & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                int value = (octet >>> bit) & 1;
+                int next = CHILDREN[2 * node + value];
+                pendingBits++;
+                allOnes &= value == 1;
+                if (next < 0) {
+                    if (~next == EOS) {
+                        throw new Http2Exception(COMPRESSION_ERROR, "Huffman encoded string contains EOS");
+                    }
+                    builder.append((char) ~next);
+                    node = 0;
+                    pendingBits = 0;
+                    allOnes = true;
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (pendingBits > 7 || !allOnes) {
+            throw new Http2Exception(COMPRESSION_ERROR, "Invalid padding of Huffman encoded string");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package webdi.web;
+
+import webdi.exception.Http2Exception;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Decodes header blocks. There's one per connection, blocks have to be decoded in the order they arrive since
+// they share the dynamic table.
+final class HpackDecoder {
+
+    private final int maxTableSize;
+    private final ArrayDeque<String[]> dynamicTable = new ArrayDeque<>();
+    private int tableSize;
+    private int tableSizeLimit;
+
+    HpackDecoder(int maxTableSize) {
+        this.maxTableSize = maxTableSize;
+        this.tableSizeLimit = maxTableSize;
+    }
+
+    // Name and value pairs in the order of the block. The block is always decoded completely to keep the table in
+    // sync, the caller checks the size of the list.
+    List<String[]> decode(byte[] block, int length) {
+        List<String[]> headers = new ArrayList<>();
+        int[] position = {0};
+        while (position[0] < length) {
+            int first = block[position[0]] & 0xFF;
+            if ((first & 0x80) != 0) {
+                int index = readInteger(block, length, position, 7);
+                String[] entry = entry(index);
+                headers.add(new String[]{entry[0], entry[1]});
+            } else if ((first & 0x40) != 0) {
+                String[] header = readLiteral(block, length, position, 6);
+                headers.add(header);
+                add(header);
+            } else if ((first & 0x20) != 0) {
+                int size = readInteger(block, length, position, 5);
+                if (size > maxTableSize) {
+                    throw new Http2Exception(Hpack.COMPRESSION_ERROR, "Dynamic table size " + size + " exceeds " + maxTableSize);
+                }
+                tableSizeLimit = size;
+                evict(0);
+            } else {
+                // literals without indexing and never indexed ones only differ for intermediaries
+                headers.add(readLiteral(block, length, position, 4));
+            }
+        }
+        return headers;
+    }
+
+    private String[] readLiteral(byte[] block, int length, int[] position, int prefix) {
+        int index = readInteger(block, length, position, prefix);
+        String name = index == 0 ? readString(block, length, position) : entry(index)[0];
+        return new String[]{name, readString(block, length, position)};
+    }
+
+    private String readString(byte[] block, int length, int[] position) {
+        if (position[0] >= length) {
+            throw new Http2Exception(Hpack.COMPRESSION_ERROR, "Header block ends in the middle of a string");
+        }
+        boolean huffman = (block[position[0]] & 0x80) != 0;
+        int size = readInteger(block, length, position, 7);
+        if (size > length - position[0]) {
+            throw new Http2Exception(Hpack.COMPRESSION_ERROR, "String of " + size + " bytes exceeds the header block");
+        }
+        String value = huffman ? Hpack.huffmanDecode(block, position[0], size)
+                : new String(block, position[0], size, StandardCharsets.ISO_8859_1);
+        position[0] += size;
+        return value;
+    }
+
+    private static int readInteger(byte[] block, int length, int[] position, int prefix) {
+        int mask = (1 << prefix) - 1;
+        int value = block[position[0]++] & mask;
+        if (value < mask) {
+            return value;
+        }
+        for (int shift = 0; ; shift += 7) {
+            if (position[0] >= length || shift > 21) {
+                throw new Http2Exception(Hpack.COMPRESSION_ERROR, "Malformed integer in header block");
+            }
+            int octet = block[position[0]++] & 0xFF;
+            value += (octet & 0x7F) << shift;
+            if ((octet & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private String[] entry(int index) {
+        if (index <= 0) {
+            throw new Http2Exception(Hpack.COMPRESSION_ERROR, "Invalid header index " + index);
+        }
+        if (index <= Hpack.STATIC_TABLE.length) {
+            return Hpack.STATIC_TABLE[index - 1];
+        }
+        int dynamicIndex = index - Hpack.STATIC_TABLE.length - 1;
+        if (dynamicIndex >= dynamicTable.size()) {
+            throw new Http2Exception(Hpack.COMPRESSION_ERROR, "Invalid header index " + index);
+        }
+        // the deque has no random access, the table is small though
+        int i = 0;
+        for (String[] entry : dynamicTable) {
+            if (i++ == dynamicIndex) {
+                return entry;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void add(String[] header) {
+        int size = size(header);
+        evict(size);
+        // an entry larger than the table empties it and isn't added
+        if (size <= tableSizeLimit) {
+            dynamicTable.addFirst(header);
+            tableSize += size;
+        }
+    }
+
+    private void evict(int room) {
+        while (!dynamicTable.isEmpty() && tableSize + room > tableSizeLimit) {
+            tableSize -= size(dynamicTable.removeLast());
+        }
+    }
+
+    static int size(String[] header) {
+        return 32 + header[0].length() + header[1].length();
+    }
+}
@@ -0,0 +1,66 @@
+package webdi.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Encodes response headers without a dynamic table, so it keeps no state and any thread can use it. Names and
+// pairs of the static table are referenced by index, everything else is a literal that isn't indexed.
+final class HpackEncoder {
+
+    // the first index of each name and the index of each name and value pair
+    private static final Map<String, Integer> NAMES = new HashMap<>();
+    private static final Map<String, Integer> PAIRS = new HashMap<>();
+
+    static {
+        for (int i = Hpack.STATIC_TABLE.length; i > 0; i--) {
+            String[] entry = Hpack.STATIC_TABLE[i - 1];
+            NAMES.put(entry[0], i);
+            if (!entry[1].isEmpty()) {
+                PAIRS.put(entry[0] + '\0' + entry[1], i);
+            }
+        }
+    }
+
+    private HpackEncoder() {
+    }
+
+    static void encode(ByteArrayOutputStream block, String name, String value) {
+        Integer pair = PAIRS.get(name + '\0' + value);
+        if (pair != null) {
+            writeInteger(block, 0x80, 7, pair);
+            return;
+        }
+        Integer nameIndex = NAMES.get(name);
+        if (nameIndex != null) {
+            writeInteger(block, 0x00, 4, nameIndex);
+        } else {
+            block.write(0x00);
+            writeString(block, name);
+        }
+        writeString(block, value);
+    }
+
+    // UTF-8, as the HTTP/1.1 engines write headers
+    private static void writeString(ByteArrayOutputStream block, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInteger(block, 0x00, 7, bytes.length);
+        block.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeInteger(ByteArrayOutputStream block, int flags, int prefix, int value) {
+        int mask = (1 << prefix) - 1;
+        if (value < mask) {
+            block.write(flags | value);
+            return;
+        }
+        block.write(flags | mask);
+        value -= mask;
+        while (value >= 0x80) {
+            block.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block.write(value);
+    }
+}
@@ -0,0 +1,958 @@
+package webdi.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.exception.Http2Exception;
+import webdi.exception.HttpParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Serves HTTP/2 over cleartext (RFC 9113) on a connection of the blocking engine, after the client sent the
+// preface right away or upgraded an HTTP/1.1 request. The connection thread reads frames. Each stream becomes
+// a request that is handled on the executor like a connection, so a slow stream doesn't hold up the others.
+// Frames are written under a lock, and DATA frames wait for the peer's flow control windows.
+final class Http2Connection {
+    private static final Logger logger = LoggerFactory.getLogger(Http2Connection.class);
+
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] SWITCHING_PROTOCOLS = ("HTTP/1.1 101 Switching Protocols" + MyWebServer.CRLF +
+            "Connection: Upgrade" + MyWebServer.CRLF + "Upgrade: h2c" + MyWebServer.CRLF + MyWebServer.CRLF)
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY_FLAG = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int DEFAULT_FRAME_SIZE = 16384;
+    private static final int HEADER_TABLE_SIZE = 4096;
+    private static final byte[] EMPTY = new byte[0];
+    // fields that only make sense for a single HTTP/1.1 connection, they aren't allowed in HTTP/2
+    private static final Set<String> CONNECTION_HEADERS = Set.of(MyWebServer.CONNECTION_HEADER_NAME, "keep-alive",
+            "proxy-connection", MyWebServer.TRANSFER_ENCODING_HEADER_NAME, "upgrade", "http2-settings");
+
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final RequestHandler requestHandler;
+    private final ServerSettings settings;
+    private final ConnectionExecutor executor;
+    private final HpackDecoder decoder = new HpackDecoder(HEADER_TABLE_SIZE);
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final byte[] frameHeader = new byte[9];
+
+    // read by the connection thread only
+    private int lastStreamId;
+    private int continuationStreamId;
+    private boolean continuationEndStream;
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int receiveWindow = DEFAULT_WINDOW_SIZE;
+    private boolean goingAway;
+
+    // guarded by this, writers wait on it for window updates
+    private long sendWindow = DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+    private boolean closed;
+
+    Http2Connection(InputStream inputStream, OutputStream outputStream, RequestHandler requestHandler,
+                    ServerSettings settings, ConnectionExecutor executor) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.requestHandler = requestHandler;
+        this.settings = settings;
+        this.executor = executor;
+    }
+
+    // An HTTP/1.1 request asking to continue with HTTP/2, its response is then sent on stream 1.
+    static boolean isUpgrade(MyRequest request) {
+        Map<String, List<String>> headers = request.requestHeaders();
+        List<String> upgrade = headers.get("upgrade");
+        List<String> http2Settings = headers.get("http2-settings");
+        return request.requestLine().protocol().equals("HTTP/1.1") && upgrade != null && http2Settings != null &&
+                http2Settings.size() == 1 && hasToken(upgrade, "h2c") &&
+                hasToken(headers.get(MyWebServer.CONNECTION_HEADER_NAME), "upgrade") &&
+                hasToken(headers.get(MyWebServer.CONNECTION_HEADER_NAME), "http2-settings");
+    }
+
+    private static boolean hasToken(List<String> values, String token) {
+        if (values != null) {
+            for (String value : values) {
+                for (String element : value.split(",")) {
+                    if (element.trim().equalsIgnoreCase(token)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // After the client preface was read by the caller.
+    void serve() throws IOException {
+        writeSettings();
+        readFrames();
+    }
+
+    // After the 101 response to the upgrade request, the client sends its preface before any frames.
+    void serveUpgrade(MyRequest request, Admission admission) throws IOException {
+        writeSettings();
+        String http2Settings = request.requestHeaders().get("http2-settings").get(0);
+        try {
+            applySettings(Base64.getUrlDecoder().decode(http2Settings.trim()));
+        } catch (IllegalArgumentException e) {
+            goAway(PROTOCOL_ERROR, "Malformed HTTP2-Settings " + http2Settings);
+            return;
+        }
+        HashMap<String, List<String>> headers = new HashMap<>(request.requestHeaders());
+        headers.keySet().removeAll(CONNECTION_HEADERS);
+        RequestLine requestLine = request.requestLine();
+        Stream stream = new Stream(1, new RequestLine(requestLine.method(), requestLine.path(), "HTTP/2.0"), headers,
+                request.requestBody(), admission, peerInitialWindowSize);
+        lastStreamId = 1;
+        streams.put(1, stream);
+        stream.remoteClosed = true;
+        dispatch(stream);
+        byte[] preface = new byte[PREFACE.length];
+        if (!read(preface, preface.length, true) || !Arrays.equals(preface, PREFACE)) {
+            goAway(PROTOCOL_ERROR, "Missing client preface after upgrade");
+            return;
+        }
+        readFrames();
+    }
+
+    private void readFrames() throws IOException {
+        try {
+            while (true) {
+                try {
+                    if (!read(frameHeader, frameHeader.length, true)) {
+                        return;
+                    }
+                } catch (SocketTimeoutException e) {
+                    logger.debug("Closing idle HTTP/2 connection");
+                    goAway(NO_ERROR, "Idle connection");
+                    return;
+                }
+                int length = (frameHeader[0] & 0xFF) << 16 | (frameHeader[1] & 0xFF) << 8 | frameHeader[2] & 0xFF;
+                int type = frameHeader[3] & 0xFF;
+                int flags = frameHeader[4] & 0xFF;
+                int streamId = readInt(frameHeader, 5) & 0x7FFFFFFF;
+                try {
+                    if (length > DEFAULT_FRAME_SIZE) {
+                        throw new Http2Exception(FRAME_SIZE_ERROR, "Frame of " + length + " bytes exceeds " + DEFAULT_FRAME_SIZE);
+                    }
+                    byte[] payload = length == 0 ? EMPTY : new byte[length];
+                    read(payload, length, false);
+                    if (continuationStreamId != 0 && (type != CONTINUATION || streamId != continuationStreamId)) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "Expected CONTINUATION of stream " + continuationStreamId);
+                    }
+                    onFrame(type, flags, streamId, payload);
+                } catch (Http2Exception e) {
+                    if (e.getStreamId() == 0) {
+                        logger.info("Closing HTTP/2 connection: " + e.getMessage());
+                        goAway(e.getErrorCode(), e.getMessage());
+                        return;
+                    }
+                    logger.info("Resetting HTTP/2 stream " + e.getStreamId() + ": " + e.getMessage());
+                    discard(streams.remove(e.getStreamId()));
+                    resetStream(e.getStreamId(), e.getErrorCode());
+                }
+            }
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            for (Stream stream : streams.values()) {
+                discard(stream);
+            }
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, byte[] payload) throws IOException {
+        switch (type) {
+            case DATA -> onData(flags, streamId, payload);
+            case HEADERS -> onHeaders(flags, streamId, payload);
+            case CONTINUATION -> {
+                if (continuationStreamId == 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "CONTINUATION without HEADERS");
+                }
+                appendHeaderBlock(payload, 0, payload.length);
+                if ((flags & END_HEADERS) != 0) {
+                    int id = continuationStreamId;
+                    continuationStreamId = 0;
+                    onHeaderBlock(id, continuationEndStream);
+                }
+            }
+            case PRIORITY -> {
+                if (streamId == 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "PRIORITY on stream 0");
+                }
+                if (payload.length != 5) {
+                    throw new Http2Exception(FRAME_SIZE_ERROR, streamId, "PRIORITY of " + payload.length + " bytes");
+                }
+            }
+            case RST_STREAM -> {
+                if (streamId == 0 || streamId > lastStreamId) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+                }
+                if (payload.length != 4) {
+                    throw new Http2Exception(FRAME_SIZE_ERROR, "RST_STREAM of " + payload.length + " bytes");
+                }
+                Stream stream = streams.remove(streamId);
+                if (stream != null) {
+                    discard(stream);
+                    synchronized (this) {
+                        stream.reset = true;
+                        notifyAll();
+                    }
+                }
+            }
+            case SETTINGS -> {
+                if (streamId != 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+                }
+                if ((flags & ACK) != 0) {
+                    if (payload.length != 0) {
+                        throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS acknowledgement with payload");
+                    }
+                    return;
+                }
+                applySettings(payload);
+                synchronized (writeLock) {
+                    writeFrame(SETTINGS, ACK, 0, EMPTY, 0, 0);
+                    outputStream.flush();
+                }
+            }
+            case PUSH_PROMISE -> throw new Http2Exception(PROTOCOL_ERROR, "Clients can't push");
+            case PING -> {
+                if (streamId != 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "PING on stream " + streamId);
+                }
+                if (payload.length != 8) {
+                    throw new Http2Exception(FRAME_SIZE_ERROR, "PING of " + payload.length + " bytes");
+                }
+                if ((flags & ACK) == 0) {
+                    synchronized (writeLock) {
+                        writeFrame(PING, ACK, 0, payload, 0, 8);
+                        outputStream.flush();
+                    }
+                }
+            }
+            case GOAWAY -> {
+                // streams already started are completed, the client closes the connection after them
+                logger.debug("Client is going away");
+                goingAway = true;
+            }
+            case WINDOW_UPDATE -> onWindowUpdate(streamId, payload);
+            default -> {
+                // unknown frame types are ignored
+            }
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, byte[] payload) throws IOException {
+        if (streamId == 0 || streamId % 2 == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on stream " + streamId);
+        }
+        int offset = 0;
+        int padding = 0;
+        if ((flags & PADDED) != 0) {
+            padding = payload.length > 0 ? payload[0] & 0xFF : 0;
+            offset = 1;
+        }
+        if ((flags & PRIORITY_FLAG) != 0) {
+            offset += 5;
+        }
+        if (offset + padding > payload.length) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Padding exceeds HEADERS frame");
+        }
+        headerBlock.reset();
+        appendHeaderBlock(payload, offset, payload.length - padding - offset);
+        if ((flags & END_HEADERS) != 0) {
+            onHeaderBlock(streamId, (flags & END_STREAM) != 0);
+        } else {
+            continuationStreamId = streamId;
+            continuationEndStream = (flags & END_STREAM) != 0;
+        }
+    }
+
+    private void appendHeaderBlock(byte[] payload, int offset, int length) {
+        // compressed fields can't be larger than a few times their decoded size
+        if (headerBlock.size() + length > 4 * settings.maxHeaderSize()) {
+            throw new Http2Exception(ENHANCE_YOUR_CALM, "Header block exceeds " + 4 * settings.maxHeaderSize() + " bytes");
+        }
+        headerBlock.write(payload, offset, length);
+    }
+
+    private void onHeaderBlock(int streamId, boolean endStream) throws IOException {
+        // decoded even when the stream is refused, the dynamic table must stay in sync with the client's
+        List<String[]> fields = decoder.decode(headerBlock.toByteArray(), headerBlock.size());
+        Stream existing = streams.get(streamId);
+        if (existing != null && existing.body == null) {
+            streams.remove(streamId);
+            return;
+        }
+        if (existing != null) {
+            if (existing.remoteClosed) {
+                throw new Http2Exception(STREAM_CLOSED, streamId, "HEADERS on closed stream " + streamId);
+            }
+            if (!endStream) {
+                throw new Http2Exception(PROTOCOL_ERROR, streamId, "Trailers without END_STREAM on stream " + streamId);
+            }
+            HashMap<String, List<String>> trailers = new HashMap<>();
+            for (String[] field : fields) {
+                if (field[0].startsWith(":")) {
+                    throw new Http2Exception(PROTOCOL_ERROR, streamId, "Pseudo-header " + field[0] + " in trailers");
+                }
+                trailers.computeIfAbsent(field[0], key -> new ArrayList<>()).add(field[1]);
+            }
+            // kept apart from the headers like the HTTP/1.1 parser does
+            existing.body.setTrailers(trailers);
+            endStream(existing);
+            return;
+        }
+        if (streamId <= lastStreamId) {
+            throw new Http2Exception(STREAM_CLOSED, "HEADERS on closed stream " + streamId);
+        }
+        lastStreamId = streamId;
+        if (goingAway) {
+            return;
+        }
+        if (streams.size() >= settings.http2MaxConcurrentStreams()) {
+            resetStream(streamId, REFUSED_STREAM);
+            return;
+        }
+        String method = null;
+        String path = null;
+        String authority = null;
+        boolean scheme = false;
+        HashMap<String, List<String>> headers = new HashMap<>();
+        int size = 0;
+        for (String[] field : fields) {
+            String name = field[0];
+            size += HpackDecoder.size(field);
+            if (name.startsWith(":")) {
+                if (!headers.isEmpty()) {
+                    throw new Http2Exception(PROTOCOL_ERROR, streamId, "Pseudo-header " + name + " after regular fields");
+                }
+                switch (name) {
+                    case ":method" -> method = field[1];
+                    case ":path" -> path = field[1];
+                    case ":authority" -> authority = field[1];
+                    case ":scheme" -> scheme = true;
+                    default -> throw new Http2Exception(PROTOCOL_ERROR, streamId, "Unknown pseudo-header " + name);
+                }
+                continue;
+            }
+            if (!name.equals(name.toLowerCase(Locale.ROOT)) || CONNECTION_HEADERS.contains(name)) {
+                throw new Http2Exception(PROTOCOL_ERROR, streamId, "Field " + name + " isn't allowed in HTTP/2");
+            }
+            headers.computeIfAbsent(name, key -> new ArrayList<>()).add(field[1]);
+        }
+        if (method == null || path == null || path.isEmpty() || !scheme) {
+            throw new Http2Exception(PROTOCOL_ERROR, streamId, "Request without :method, :path or :scheme");
+        }
+        if (authority != null && !headers.containsKey("host")) {
+            headers.put("host", new ArrayList<>(List.of(authority)));
+        }
+        RequestLine requestLine = new RequestLine(method, path, "HTTP/2.0");
+        if (size > settings.maxHeaderSize()) {
+            rejectStream(streamId, endStream, Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head exceeds " + settings.maxHeaderSize() + " bytes");
+            return;
+        }
+        long length = -1;
+        List<String> contentLength = headers.get(MyWebServer.CONTENT_LENGTH_HEADER_NAME);
+        if (contentLength != null) {
+            try {
+                length = HttpRequestParser.parseContentLength(contentLength);
+            } catch (HttpParseException e) {
+                throw new Http2Exception(PROTOCOL_ERROR, streamId, e.getMessage());
+            }
+            if (length > settings.maxBodySize()) {
+                rejectStream(streamId, endStream, Status.PAYLOAD_TOO_LARGE, "Request body of " + length + " bytes exceeds " + settings.maxBodySize() + " bytes");
+                return;
+            }
+        }
+        Admission admission;
+        try {
+            admission = requestHandler.admit(requestLine);
+        } catch (HttpParseException e) {
+            rejectStream(streamId, endStream, e.getStatus(), e.getMessage());
+            return;
+        }
+        Stream stream = new Stream(streamId, requestLine, headers,
+                new RequestBody(length, settings.bodySpillThreshold(), settings.bodySpillDirectory()), admission, 0);
+        stream.expectedLength = length;
+        synchronized (this) {
+            stream.sendWindow = peerInitialWindowSize;
+        }
+        streams.put(streamId, stream);
+        if (endStream) {
+            endStream(stream);
+        }
+    }
+
+    private void onData(int flags, int streamId, byte[] payload) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        // padding counts against the window as well
+        receiveWindow -= payload.length;
+        if (receiveWindow < 0) {
+            throw new Http2Exception(FLOW_CONTROL_ERROR, "DATA exceeds the connection window");
+        }
+        if (receiveWindow < DEFAULT_WINDOW_SIZE / 2) {
+            windowUpdate(0, DEFAULT_WINDOW_SIZE - receiveWindow);
+            receiveWindow = DEFAULT_WINDOW_SIZE;
+        }
+        int offset = 0;
+        int padding = 0;
+        if ((flags & PADDED) != 0) {
+            padding = payload.length > 0 ? payload[0] & 0xFF : 0;
+            offset = 1;
+        }
+        if (offset + padding > payload.length) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Padding exceeds DATA frame");
+        }
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw new Http2Exception(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            // a stream that was answered or reset already, its remaining data is dropped
+            return;
+        }
+        if (stream.remoteClosed) {
+            throw new Http2Exception(STREAM_CLOSED, streamId, "DATA on closed stream " + streamId);
+        }
+        stream.receiveWindow -= payload.length;
+        if (stream.receiveWindow < 0) {
+            throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "DATA exceeds the window of stream " + streamId);
+        }
+        int length = payload.length - padding - offset;
+        if (stream.body == null) {
+            stream.discarded += length;
+            if ((flags & END_STREAM) != 0) {
+                streams.remove(streamId);
+                return;
+            }
+            if (stream.discarded > settings.maxBodySize()) {
+                streams.remove(streamId);
+                resetStream(streamId, NO_ERROR);
+                return;
+            }
+        } else if (stream.body.size() + length > settings.maxBodySize()) {
+            streams.remove(streamId);
+            discard(stream);
+            rejectStream(streamId, (flags & END_STREAM) != 0, Status.PAYLOAD_TOO_LARGE, "Request body exceeds " + settings.maxBodySize() + " bytes");
+            return;
+        }
+        if (stream.body != null) {
+            stream.body.write(ByteBuffer.wrap(payload, offset, length), length);
+        }
+        if ((flags & END_STREAM) != 0) {
+            endStream(stream);
+        } else if (stream.receiveWindow < DEFAULT_WINDOW_SIZE / 2) {
+            // the body is spooled, so the client may keep sending
+            windowUpdate(streamId, DEFAULT_WINDOW_SIZE - stream.receiveWindow);
+            stream.receiveWindow = DEFAULT_WINDOW_SIZE;
+        }
+    }
+
+    private void onWindowUpdate(int streamId, byte[] payload) {
+        if (payload.length != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + payload.length + " bytes");
+        }
+        int increment = readInt(payload, 0) & 0x7FFFFFFF;
+        if (increment == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, streamId, "WINDOW_UPDATE without increment");
+        }
+        synchronized (this) {
+            if (streamId == 0) {
+                sendWindow += increment;
+                if (sendWindow > Integer.MAX_VALUE) {
+                    throw new Http2Exception(FLOW_CONTROL_ERROR, "Connection window exceeds 2^31-1");
+                }
+            } else {
+                Stream stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                    if (stream.sendWindow > Integer.MAX_VALUE) {
+                        throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "Window of stream " + streamId + " exceeds 2^31-1");
+                    }
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private void applySettings(byte[] payload) {
+        if (payload.length % 6 != 0) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS of " + payload.length + " bytes");
+        }
+        for (int i = 0; i < payload.length; i += 6) {
+            int identifier = (payload[i] & 0xFF) << 8 | payload[i + 1] & 0xFF;
+            int value = readInt(payload, i + 2);
+            switch (identifier) {
+                case SETTINGS_ENABLE_PUSH -> {
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS_ENABLE_PUSH of " + value);
+                    }
+                }
+                case SETTINGS_INITIAL_WINDOW_SIZE -> {
+                    if (value < 0) {
+                        throw new Http2Exception(FLOW_CONTROL_ERROR, "SETTINGS_INITIAL_WINDOW_SIZE exceeds 2^31-1");
+                    }
+                    synchronized (this) {
+                        int delta = value - peerInitialWindowSize;
+                        peerInitialWindowSize = value;
+                        for (Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        notifyAll();
+                    }
+                }
+                case SETTINGS_MAX_FRAME_SIZE -> {
+                    if (value < DEFAULT_FRAME_SIZE || value > 0xFFFFFF) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS_MAX_FRAME_SIZE of " + value);
+                    }
+                    synchronized (this) {
+                        peerMaxFrameSize = value;
+                    }
+                }
+                default -> {
+                    // the encoder keeps no dynamic table, the header table size doesn't matter to it
+                }
+            }
+        }
+    }
+
+    // The whole request is there, its body spooled like the HTTP/1.1 engines do.
+    private void endStream(Stream stream) {
+        stream.remoteClosed = true;
+        stream.body.finish();
+        if (stream.expectedLength >= 0 && stream.expectedLength != stream.body.size()) {
+            throw new Http2Exception(PROTOCOL_ERROR, stream.id, "Body of " + stream.body.size() +
+                    " bytes doesn't match content-length " + stream.expectedLength);
+        }
+        dispatch(stream);
+    }
+
+    private void dispatch(Stream stream) {
+        MyRequest request = new MyRequest(stream.requestLine, stream.headers, stream.body);
+        logger.info("Serving request " + request.requestLine().method() + " " + request.requestLine().path() +
+                " using protocol HTTP/2.0 on stream " + stream.id);
+        if (stream.admission != null) {
+            try {
+                stream.admission.start();
+            } catch (HttpParseException e) {
+                logger.info("Rejecting request on stream " + stream.id + ": " + e.getMessage());
+                streams.remove(stream.id);
+                discard(stream);
+                requestHandler.getMetrics().responses(e.getStatus().code).increment();
+                try {
+                    writeResponse(stream, MyWebServer.errorResponse(e.getStatus()));
+                } catch (IOException writeFailure) {
+                    logger.debug("Failed to reject stream " + stream.id, writeFailure);
+                }
+                return;
+            }
+        }
+        stream.dispatched = true;
+        if (!executor.submit(() -> handle(stream, request))) {
+            logger.warn("Rejected request, queue depth " + executor.getQueueDepth() +
+                    ", rejected so far " + executor.getRejectedCount());
+            stream.dispatched = false;
+            streams.remove(stream.id);
+            discard(stream);
+            requestHandler.getMetrics().responses(Status.SERVICE_UNAVAILABLE.code).increment();
+            try {
+                writeResponse(stream, MyWebServer.serviceUnavailable());
+            } catch (IOException e) {
+                logger.debug("Failed to reject stream " + stream.id, e);
+            }
+        }
+    }
+
+    // Runs on a handler thread. Async routes free it while pending, their response is written from the executor.
+    private void handle(Stream stream, MyRequest request) {
+        CompletableFuture<MyResponse> response = requestHandler.handleRequest(request, stream.admission);
+        if (response.isDone()) {
+            respond(stream, response);
+            return;
+        }
+        response.whenComplete((r, failure) -> {
+            if (!executor.submit(() -> respond(stream, response))) {
+                respond(stream, response);
+            }
+        });
+    }
+
+    private void respond(Stream stream, CompletableFuture<MyResponse> pendingResponse) {
+        try {
+            long writeStart = System.nanoTime();
+            writeResponse(stream, pendingResponse.join());
+            requestHandler.getMetrics().write.record(System.nanoTime() - writeStart);
+            logger.info("Request served");
+        } catch (Exception e) {
+            logger.error("Failed to write response to " + stream.requestLine, e);
+            try {
+                resetStream(stream.id, INTERNAL_ERROR);
+            } catch (IOException resetFailure) {
+                logger.debug("Failed to reset stream " + stream.id, resetFailure);
+            }
+        } finally {
+            streams.remove(stream.id);
+            // deletes a body that was spilled to disk, only now since a streamed response may read it while written
+            stream.body.close();
+        }
+    }
+
+    // Answers a request that won't be handled. Clients may only read the response once their body is sent, so the
+    // rest of it is dropped up to the size of a body that would have been accepted, then the stream is reset.
+    private void rejectStream(int streamId, boolean endStream, Status status, String message) throws IOException {
+        logger.info("Rejecting request on stream " + streamId + ": " + message);
+        requestHandler.getMetrics().responses(status.code).increment();
+        Stream stream = new Stream(streamId, null, null, null, null, 0);
+        writeResponse(stream, MyWebServer.errorResponse(status));
+        if (!endStream) {
+            streams.put(streamId, stream);
+        }
+    }
+
+    // Gives back what a stream that won't be handled holds.
+    private void discard(Stream stream) {
+        if (stream == null || stream.dispatched) {
+            return;
+        }
+        if (stream.admission != null) {
+            stream.admission.cancel();
+        }
+        if (stream.body != null) {
+            stream.body.close();
+        }
+    }
+
+    private void writeResponse(Stream stream, MyResponse response) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":status", Integer.toString(response.statusLine().statusCode()));
+        for (Map.Entry<String, List<String>> entry : response.responseHeaders().entrySet()) {
+            String name = entry.getKey().toLowerCase(Locale.ROOT);
+            if (CONNECTION_HEADERS.contains(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                HpackEncoder.encode(block, name, value);
+            }
+        }
+        ResponseBody body = response.responseBody();
+        writeHeaders(stream.id, block, body == null);
+        if (body == null) {
+            flush();
+            return;
+        }
+        DataOutputStream dataOutputStream = new DataOutputStream(stream);
+        body.writeTo(dataOutputStream);
+        dataOutputStream.finish();
+    }
+
+    private void writeHeaders(int streamId, ByteArrayOutputStream block, boolean endStream) throws IOException {
+        byte[] bytes = block.toByteArray();
+        synchronized (writeLock) {
+            int maxFrameSize = maxFrameSize();
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                int length = Math.min(maxFrameSize, bytes.length - offset);
+                boolean last = offset + length == bytes.length;
+                int flags = (last ? END_HEADERS : 0) | (type == HEADERS && endStream ? END_STREAM : 0);
+                writeFrame(type, flags, streamId, bytes, offset, length);
+                offset += length;
+                type = CONTINUATION;
+            } while (offset < bytes.length);
+        }
+    }
+
+    // Sends the data as the windows allow, waiting for WINDOW_UPDATE frames once they're used up.
+    private void writeData(Stream stream, byte[] bytes, int length, boolean endStream) throws IOException {
+        int offset = 0;
+        do {
+            int granted = length == 0 ? 0 : acquireWindow(stream, length - offset);
+            synchronized (writeLock) {
+                writeFrame(DATA, endStream && offset + granted == length ? END_STREAM : 0, stream.id, bytes, offset, granted);
+            }
+            offset += granted;
+        } while (offset < length);
+    }
+
+    private int acquireWindow(Stream stream, int wanted) throws IOException {
+        synchronized (this) {
+            int granted = tryAcquireWindow(stream, wanted);
+            if (granted > 0) {
+                return granted;
+            }
+        }
+        // the client may be waiting for what's buffered before it opens the window
+        flush();
+        synchronized (this) {
+            while (true) {
+                int granted = tryAcquireWindow(stream, wanted);
+                if (granted > 0) {
+                    return granted;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the flow control window");
+                }
+            }
+        }
+    }
+
+    private int tryAcquireWindow(Stream stream, int wanted) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed while writing response");
+        }
+        if (stream.reset) {
+            throw new IOException("Stream " + stream.id + " was reset by the client");
+        }
+        int granted = (int) Math.min(Math.min(wanted, peerMaxFrameSize), Math.min(sendWindow, stream.sendWindow));
+        if (granted > 0) {
+            sendWindow -= granted;
+            stream.sendWindow -= granted;
+        }
+        return granted;
+    }
+
+    private synchronized int maxFrameSize() {
+        return peerMaxFrameSize;
+    }
+
+    private void writeSettings() throws IOException {
+        byte[] payload = new byte[18];
+        putSetting(payload, 0, SETTINGS_MAX_CONCURRENT_STREAMS, settings.http2MaxConcurrentStreams());
+        putSetting(payload, 6, SETTINGS_ENABLE_PUSH, 0);
+        putSetting(payload, 12, SETTINGS_MAX_HEADER_LIST_SIZE, settings.maxHeaderSize());
+        synchronized (writeLock) {
+            writeFrame(SETTINGS, 0, 0, payload, 0, payload.length);
+            outputStream.flush();
+        }
+    }
+
+    private void windowUpdate(int streamId, int increment) throws IOException {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, increment);
+        synchronized (writeLock) {
+            writeFrame(WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+            outputStream.flush();
+        }
+    }
+
+    private void resetStream(int streamId, int errorCode) throws IOException {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, errorCode);
+        synchronized (writeLock) {
+            writeFrame(RST_STREAM, 0, streamId, payload, 0, 4);
+            outputStream.flush();
+        }
+    }
+
+    private void goAway(int errorCode, String message) {
+        byte[] debugData = message.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[8 + debugData.length];
+        putInt(payload, 0, lastStreamId);
+        putInt(payload, 4, errorCode);
+        System.arraycopy(debugData, 0, payload, 8, debugData.length);
+        try {
+            synchronized (writeLock) {
+                writeFrame(GOAWAY, 0, 0, payload, 0, payload.length);
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to send GOAWAY", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        synchronized (writeLock) {
+            outputStream.flush();
+        }
+    }
+
+    // Callers hold the write lock.
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) throws IOException {
+        byte[] header = new byte[9];
+        header[0] = (byte) (length >>> 16);
+        header[1] = (byte) (length >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) type;
+        header[4] = (byte) flags;
+        putInt(header, 5, streamId);
+        outputStream.write(header);
+        outputStream.write(payload, offset, length);
+    }
+
+    // false when the connection ended between frames. Timeouts only end an idle connection, one that waits for
+    // responses keeps reading.
+    private boolean read(byte[] target, int length, boolean frameStart) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count;
+            try {
+                count = inputStream.read(target, read, length - read);
+            } catch (SocketTimeoutException e) {
+                if (read == 0 && frameStart && streams.isEmpty()) {
+                    throw e;
+                }
+                continue;
+            }
+            if (count < 0) {
+                if (read == 0 && frameStart) {
+                    return false;
+                }
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static void putSetting(byte[] bytes, int offset, int identifier, int value) {
+        bytes[offset] = (byte) (identifier >>> 8);
+        bytes[offset + 1] = (byte) identifier;
+        putInt(bytes, offset + 2, value);
+    }
+
+    private static final class Stream {
+        private final int id;
+        private final RequestLine requestLine;
+        private final HashMap<String, List<String>> headers;
+        private final RequestBody body;
+        private final Admission admission;
+        private long expectedLength = -1;
+        // bytes dropped after the request was rejected, the stream has no body then
+        private long discarded;
+        // read by the connection thread only
+        private int receiveWindow = DEFAULT_WINDOW_SIZE;
+        private boolean remoteClosed;
+        private volatile boolean dispatched;
+        // guarded by the connection
+        private long sendWindow;
+        private boolean reset;
+
+        private Stream(int id, RequestLine requestLine, HashMap<String, List<String>> headers, RequestBody body,
+                       Admission admission, long sendWindow) {
+            this.id = id;
+            this.requestLine = requestLine;
+            this.headers = headers;
+            this.body = body;
+            this.admission = admission;
+            this.sendWindow = sendWindow;
+        }
+    }
+
+    // Buffers the response body into DATA frames of the peer's maximum frame size.
+    private final class DataOutputStream extends OutputStream {
+        private final Stream stream;
+        private final byte[] buffer = new byte[maxFrameSize()];
+        private int count;
+
+        private DataOutputStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    drain();
+                }
+                int chunk = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            Http2Connection.this.flush();
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                writeData(stream, buffer, count, false);
+                count = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            writeData(stream, buffer, count, true);
+            count = 0;
+            Http2Connection.this.flush();
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package webdi.web;
+
+import webdi.exception.HttpParseException;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+public class HttpRequestParser {
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SP = ' ';
+    private static final byte HT = '\t';
+    private static final byte COLON = ':';
+
+    private static final String[] KNOWN_METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+    private static final String[] KNOWN_PROTOCOLS = {"HTTP/1.1", "HTTP/1.0"};
+    private static final String[] KNOWN_HEADERS = {
+            "host", "accept", "accept-encoding", "accept-language", "user-agent", "connection", "cookie",
+            "content-length", "content-type", "transfer-encoding", "cache-control", "if-none-match",
+            "if-modified-since", "range", "referer", "origin", "authorization", "upgrade", "expect"
+    };
+
+    // chunk size lines don't count against the head, each one is limited on its own
+    private static final int MAX_CHUNK_LINE = 1024;
+
+    private final int maxHeaderSize;
+    private final long maxBodySize;
+    private final int spillThreshold;
+    // null for the default temporary directory
+    private final Path spillDirectory;
+    // null when requests aren't admitted at their head
+    private final Function<RequestLine, Admission> admission;
+
+    private State state = State.REQUEST_LINE;
+    private int headerBytes;
+    private RequestLine requestLine;
+    private HashMap<String, List<String>> headers;
+    // kept apart from the headers, fields arriving after the body must not change how it was framed or routed
+    private HashMap<String, List<String>> trailers;
+    private RequestBody body;
+    private long remainingBody;
+    private long remainingChunk;
+    private boolean continueExpected;
+    private Admission admitted;
+
+    public HttpRequestParser(int maxHeaderSize, long maxBodySize) {
+        this(maxHeaderSize, maxBodySize, Integer.MAX_VALUE, null, null);
+    }
+
+    // Bodies larger than spillThreshold are written to a temporary file in spillDirectory. admission is asked once
+    // the head of a request is parsed and before its body is read, it rejects a request by throwing an
+    // HttpParseException.
+    HttpRequestParser(int maxHeaderSize, long maxBodySize, int spillThreshold, Path spillDirectory,
+                      Function<RequestLine, Admission> admission) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxBodySize = maxBodySize;
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+        this.admission = admission;
+    }
+
+    // Consumes the bytes of the buffer that belong to the current request and returns true once it is complete.
+    // Incomplete header lines are left in the buffer, the caller compacts it, reads more and calls again.
+    public boolean parse(ByteBuffer buffer) {
+        try {
+            return parseBuffer(buffer);
+        } catch (UncheckedIOException e) {
+            throw new HttpParseException(Status.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private boolean parseBuffer(ByteBuffer buffer) {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE, HEADERS, TRAILERS -> {
+                    int lineEnd = indexOf(buffer, LF);
+                    if (lineEnd < 0) {
+                        if (headerBytes + buffer.remaining() >= maxHeaderSize) {
+                            throw new HttpParseException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head exceeds " + maxHeaderSize + " bytes");
+                        }
+                        return false;
+                    }
+                    int start = buffer.position();
+                    headerBytes += lineEnd + 1 - start;
+                    if (headerBytes > maxHeaderSize) {
+                        throw new HttpParseException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head exceeds " + maxHeaderSize + " bytes");
+                    }
+                    int end = lineEnd > start && buffer.get(lineEnd - 1) == CR ? lineEnd - 1 : lineEnd;
+                    buffer.position(lineEnd + 1);
+                    if (state == State.REQUEST_LINE) {
+                        if (end == start) {
+                            // tolerate empty lines between pipelined requests
+                            headerBytes = 0;
+                            continue;
+                        }
+                        requestLine = parseRequestLine(buffer, start, end);
+                        headers = new HashMap<>();
+                        state = State.HEADERS;
+                    } else if (end == start) {
+                        if (state == State.HEADERS) {
+                            startBody();
+                        } else {
+                            finishBody();
+                        }
+                    } else if (state == State.HEADERS) {
+                        parseHeader(buffer, start, end, headers);
+                    } else {
+                        if (trailers == null) {
+                            trailers = new HashMap<>();
+                        }
+                        parseHeader(buffer, start, end, trailers);
+                    }
+                }
+                case BODY -> {
+                    int count = (int) Math.min(remainingBody, buffer.remaining());
+                    body.write(buffer, count);
+                    remainingBody -= count;
+                    if (remainingBody > 0) {
+                        return false;
+                    }
+                    finishBody();
+                }
+                case CHUNK_SIZE, CHUNK_END -> {
+                    int lineEnd = indexOf(buffer, LF);
+                    if (lineEnd < 0) {
+                        if (buffer.remaining() >= MAX_CHUNK_LINE) {
+                            throw new HttpParseException(Status.BAD_REQUEST, "Chunk size line exceeds " + MAX_CHUNK_LINE + " bytes");
+                        }
+                        return false;
+                    }
+                    int start = buffer.position();
+                    int end = lineEnd > start && buffer.get(lineEnd - 1) == CR ? lineEnd - 1 : lineEnd;
+                    buffer.position(lineEnd + 1);
+                    if (state == State.CHUNK_END) {
+                        if (end != start) {
+                            throw new HttpParseException(Status.BAD_REQUEST, "Chunk data isn't followed by CRLF");
+                        }
+                        state = State.CHUNK_SIZE;
+                        continue;
+                    }
+                    remainingChunk = parseChunkSize(buffer, start, end);
+                    if (body.size() + remainingChunk > maxBodySize) {
+                        throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Request body exceeds " + maxBodySize + " bytes");
+                    }
+                    state = remainingChunk == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                }
+                case CHUNK_DATA -> {
+                    int count = (int) Math.min(remainingChunk, buffer.remaining());
+                    body.write(buffer, count);
+                    remainingChunk -= count;
+                    if (remainingChunk > 0) {
+                        return false;
+                    }
+                    state = State.CHUNK_END;
+                }
+                case DONE -> {
+                    return true;
+                }
+            }
+        }
+    }
+
+    public MyRequest getRequest() {
+        if (state != State.DONE) {
+            throw new IllegalStateException("Request hasn't been fully parsed yet");
+        }
+        return new MyRequest(requestLine, headers, body);
+    }
+
+    // True once after the head of a request with "Expect: 100-continue" was admitted and before its body
+    // arrived, the caller then sends the interim 100 response.
+    public boolean takeContinue() {
+        boolean result = continueExpected && state != State.DONE;
+        continueExpected = false;
+        return result;
+    }
+
+    // The admission of the parsed request, the caller releases it once the response is complete.
+    Admission takeAdmission() {
+        Admission result = admitted;
+        admitted = null;
+        return result;
+    }
+
+    // Gives back the admission of a request that won't be handled, e.g. because its connection closed, and
+    // deletes its partial body. The body of a request that was handed out with getRequest belongs to the caller.
+    void discard() {
+        if (admitted != null) {
+            admitted.cancel();
+            admitted = null;
+        }
+        if (body != null && state != State.DONE) {
+            body.close();
+            body = null;
+        }
+    }
+
+    public boolean isIdle() {
+        return state == State.REQUEST_LINE && headerBytes == 0;
+    }
+
+    public void reset() {
+        discard();
+        state = State.REQUEST_LINE;
+        headerBytes = 0;
+        requestLine = null;
+        headers = null;
+        trailers = null;
+        body = null;
+        remainingBody = 0;
+        remainingChunk = 0;
+        continueExpected = false;
+    }
+
+    private void startBody() {
+        List<String> transferEncoding = headers.get("transfer-encoding");
+        List<String> contentLength = headers.get(MyWebServer.CONTENT_LENGTH_HEADER_NAME);
+        boolean chunked = false;
+        long length = 0;
+        if (transferEncoding != null) {
+            if (transferEncoding.size() != 1 || !transferEncoding.get(0).equalsIgnoreCase("chunked")) {
+                throw new HttpParseException(Status.NOT_IMPLEMENTED, "Transfer-Encoding " + transferEncoding + " is not supported");
+            }
+            // a request framed both ways is how requests get smuggled past proxies
+            if (contentLength != null) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Request has both Transfer-Encoding and Content-Length");
+            }
+            chunked = true;
+        } else if (contentLength != null) {
+            length = parseContentLength(contentLength);
+        }
+        if (length > maxBodySize) {
+            throw new HttpParseException(Status.PAYLOAD_TOO_LARGE, "Request body of " + length + " bytes exceeds " + maxBodySize + " bytes");
+        }
+        List<String> expect = headers.get("expect");
+        if (expect != null && !(expect.size() == 1 && expect.get(0).equalsIgnoreCase("100-continue"))) {
+            throw new HttpParseException(Status.EXPECTATION_FAILED, "Expectation " + expect + " is not supported");
+        }
+        if (admission != null) {
+            admitted = admission.apply(requestLine);
+        }
+        body = new RequestBody(chunked ? -1 : length, spillThreshold, spillDirectory);
+        boolean hasBody = chunked || length > 0;
+        continueExpected = expect != null && hasBody && requestLine.protocol().equals("HTTP/1.1");
+        remainingBody = length;
+        if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (hasBody) {
+            state = State.BODY;
+        } else {
+            finishBody();
+        }
+    }
+
+    private void finishBody() {
+        if (admitted != null) {
+            admitted.start();
+        }
+        if (trailers != null) {
+            body.setTrailers(trailers);
+        }
+        body.finish();
+        state = State.DONE;
+    }
+
+    // Repeated content-length fields, or a list in one field, are only accepted when all values are the same,
+    // otherwise the request is framed differently by whoever reads the first or the last of them.
+    static long parseContentLength(List<String> values) {
+        String length = null;
+        for (String value : values) {
+            for (String element : value.split(",", -1)) {
+                String digits = element.trim();
+                if (digits.isEmpty() || !digits.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "Malformed content-length " + value);
+                }
+                if (length != null && !length.equals(digits)) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "Conflicting content-lengths " + values);
+                }
+                length = digits;
+            }
+        }
+        try {
+            return Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Malformed content-length " + length);
+        }
+    }
+
+    private static long parseChunkSize(ByteBuffer buffer, int start, int end) {
+        long size = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            // chunk extensions are ignored
+            if (b == ';' || isWhitespace(b)) {
+                break;
+            }
+            int digit = Character.digit(b, 16);
+            if (digit < 0 || ++digits > 15) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed chunk size " + string(buffer, start, end));
+            }
+            size = size * 16 + digit;
+        }
+        if (digits == 0) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Malformed chunk size " + string(buffer, start, end));
+        }
+        return size;
+    }
+
+    private static RequestLine parseRequestLine(ByteBuffer buffer, int start, int end) {
+        int firstSpace = indexOf(buffer, start, end, SP);
+        int lastSpace = lastIndexOf(buffer, start, end, SP);
+        if (firstSpace <= start || lastSpace <= firstSpace + 1 || lastSpace == end - 1) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Malformed request line " + string(buffer, start, end));
+        }
+        String method = known(buffer, start, firstSpace, KNOWN_METHODS);
+        String path = string(buffer, firstSpace + 1, lastSpace);
+        String protocol = known(buffer, lastSpace + 1, end, KNOWN_PROTOCOLS);
+        return new RequestLine(method, path, protocol);
+    }
+
+    private static void parseHeader(ByteBuffer buffer, int start, int end, HashMap<String, List<String>> fields) {
+        int colon = indexOf(buffer, start, end, COLON);
+        if (colon <= start) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Malformed header " + string(buffer, start, end));
+        }
+        // "Transfer-Encoding : chunked" is read as a header by some servers and ignored by others
+        if (isWhitespace(buffer.get(colon - 1))) {
+            throw new HttpParseException(Status.BAD_REQUEST, "Whitespace before colon in header " + string(buffer, start, end));
+        }
+        int valueStart = colon + 1;
+        while (valueStart < end && isWhitespace(buffer.get(valueStart))) {
+            valueStart++;
+        }
+        int valueEnd = end;
+        while (valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1))) {
+            valueEnd--;
+        }
+        String name = lowerCaseName(buffer, start, colon);
+        fields.computeIfAbsent(name, k -> new ArrayList<>(1)).add(string(buffer, valueStart, valueEnd));
+    }
+
+    private static String lowerCaseName(ByteBuffer buffer, int start, int end) {
+        for (String known : KNOWN_HEADERS) {
+            if (equalsIgnoreCase(buffer, start, end, known)) {
+                return known;
+            }
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = toLowerCase(buffer.get(i));
+        }
+        return new String(chars);
+    }
+
+    private static String known(ByteBuffer buffer, int start, int end, String[] candidates) {
+        for (String candidate : candidates) {
+            if (candidate.length() == end - start && matchesExactly(buffer, start, candidate)) {
+                return candidate;
+            }
+        }
+        return string(buffer, start, end);
+    }
+
+    private static boolean matchesExactly(ByteBuffer buffer, int start, String candidate) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (buffer.get(start + i) != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(ByteBuffer buffer, int start, int end, String lowerCase) {
+        if (end - start != lowerCase.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (toLowerCase(buffer.get(i)) != Character.toLowerCase(lowerCase.charAt(i - start))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer buffer, int start, int end) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b) {
+        return indexOf(buffer, buffer.position(), buffer.limit(), b);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, int start, int end, byte b) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == SP || b == HT;
+    }
+
+    private static char toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (char) (b + 32) : (char) (b & 0xff);
+    }
+
+    private enum State {
+        REQUEST_LINE,
+        HEADERS,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        DONE
+    }
+}
@@ -0,0 +1,68 @@
+package webdi.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class JsonCodec {
+
+    private final ObjectMapper mapper;
+    private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public JsonCodec() {
+        this(new ObjectMapper());
+    }
+
+    public JsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public ObjectReader readerFor(Type type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(javaType(t)));
+    }
+
+    public ObjectWriter writerFor(Type type) {
+        return writers.computeIfAbsent(type, t -> mapper.writerFor(javaType(t)));
+    }
+
+    public JsonParser createParser(InputStream inputStream) throws IOException {
+        return mapper.getFactory().createParser(inputStream);
+    }
+
+    // Streams the elements as a JSON array without materialising the whole list.
+    public void writeArray(OutputStream outputStream, Iterator<?> elements) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            while (elements.hasNext()) {
+                Object element = elements.next();
+                if (element == null) {
+                    generator.writeNull();
+                } else {
+                    writerFor(element.getClass()).writeValue(generator, element);
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private JavaType javaType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+}
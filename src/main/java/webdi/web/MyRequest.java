@@ -1,8 +1,7 @@
 package webdi.web;
 
-import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
 import java.util.List;
 
-public record MyRequest(RequestLine requestLine, HashMap<String, List<String>> requestHeaders, ByteArrayOutputStream requestBody) {
+public record MyRequest(RequestLine requestLine, HashMap<String, List<String>> requestHeaders, RequestBody requestBody) {
 }
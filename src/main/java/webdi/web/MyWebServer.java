@@ -1,17 +1,17 @@
 package webdi.web;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import webdi.ConvertingParameters;
-import webdi.annotation.*;
-import webdi.exception.WebServerException;
+import webdi.exception.HttpParseException;
 
 import java.io.*;
-import java.lang.reflect.Parameter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class MyWebServer implements Runnable{
     private static final Logger logger = LoggerFactory.getLogger(MyWebServer.class);
@@ -19,215 +19,317 @@ public class MyWebServer implements Runnable{
 
     public static final String CONTENT_LENGTH_HEADER_NAME = "content-length";
     public static final String CONTENT_TYPE_HEADER_NAME = "content-type";
+    public static final String CONNECTION_HEADER_NAME = "connection";
+    public static final String TRANSFER_ENCODING_HEADER_NAME = "transfer-encoding";
     public static final String CRLF = "\r\n";
+    // the interim response to "Expect: 100-continue" once the head of the request was accepted
+    static final byte[] CONTINUE = ("HTTP/1.1 100 Continue" + CRLF + CRLF).getBytes(StandardCharsets.US_ASCII);
+
+    private static final int CHUNK_SIZE = 8192;
 
     private final Socket socket;
-    private final Router router;
+    private final RequestHandler requestHandler;
+    private final ServerSettings settings;
+    private final ConnectionExecutor executor;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+    private ByteBuffer buffer;
+    private HttpRequestParser parser;
+    private int served;
+    // set while the connection waits for the response of an async route
+    private MyRequest pendingRequest;
+    private CompletableFuture<MyResponse> pendingResponse;
+    private boolean pendingKeepAlive;
 
-    public MyWebServer(Socket socket, Router router) {
+    public MyWebServer(Socket socket, RequestHandler requestHandler, ServerSettings settings, ConnectionExecutor executor) {
         this.socket = socket;
-        this.router = router;
+        this.requestHandler = requestHandler;
+        this.settings = settings;
+        this.executor = executor;
     }
 
+    // Runs again from the executor after a suspension, continuing with the pending response.
     @Override
     public void run() {
+        boolean suspended = false;
         try {
-            InputStream inputStream = socket.getInputStream();
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-            OutputStream outputStream = socket.getOutputStream();
-            String currentLine = null;
-            RequestLine requestLine = null;
-            HashMap<String, List<String>> requestHeaders = new HashMap<>();
-            RequestPart currentRequestPart = RequestPart.REQUEST_LINE;
-            loop: while ((currentLine = bufferedReader.readLine()) != null) {
-                switch (currentRequestPart) {
-                    case REQUEST_LINE -> {
-                        String[] split = currentLine.split(" ");
-                        String method = split[0];
-                        String path = split[1];
-                        String protocol = split[2];
-                        requestLine = new RequestLine(method, path, protocol);
-                        logger.info("Serving request " + method + " " + path + " using protocol " + protocol);
-                        currentRequestPart = RequestPart.REQUEST_HEADER;
-                    }
-                    case REQUEST_HEADER -> {
-                        if (currentLine.isEmpty()) {
-                            currentRequestPart = RequestPart.REQUEST_BODY;
-                            break loop;
-                        }
-                        int index = currentLine.indexOf(":");
-                        String name = currentLine.substring(0, index).trim().toLowerCase();
-                        String value = currentLine.substring(index + 1).trim();
-                        if (requestHeaders.containsKey(name)) {
-                            requestHeaders.get(name).add(value);
-                        } else {
-                            requestHeaders.put(name, List.of(value));
-                        }
-                    }
+            if (parser == null) {
+                socket.setSoTimeout(settings.idleTimeoutMillis());
+                inputStream = socket.getInputStream();
+                outputStream = new BufferedOutputStream(socket.getOutputStream());
+                buffer = ByteBuffer.allocate(settings.maxHeaderSize());
+                buffer.flip();
+                parser = requestHandler.newParser(settings);
+            }
+            boolean keepAlive = true;
+            if (pendingResponse != null) {
+                CompletableFuture<MyResponse> response = pendingResponse;
+                pendingResponse = null;
+                keepAlive = write(pendingRequest, response.join(), pendingKeepAlive);
+                pendingRequest = null;
+            }
+            suspended = keepAlive && serve();
+        } catch (Exception e) {
+            logger.error("Failed to serve connection from " + socket.getRemoteSocketAddress(), e);
+        } finally {
+            if (!suspended) {
+                if (parser != null) {
+                    parser.discard();
+                }
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.debug("Failed to close connection", e);
                 }
             }
-            ByteArrayOutputStream body = new ByteArrayOutputStream();
-            if (requestHeaders.containsKey(CONTENT_LENGTH_HEADER_NAME) && requestHeaders.containsKey(CONTENT_TYPE_HEADER_NAME)) {
-                int contentLength = Integer.parseInt(requestHeaders.get(CONTENT_LENGTH_HEADER_NAME).get(0));
-                for (int i = 0; i < contentLength; i++) {
-                    body.write((byte) bufferedReader.read());
+        }
+    }
+
+    // true when the connection got suspended waiting for an async route and has to stay open
+    private boolean serve() throws IOException {
+        ServerMetrics metrics = requestHandler.getMetrics();
+        boolean keepAlive = true;
+        while (keepAlive) {
+            try {
+                if (served == 0 && settings.http2() && startsWithPreface()) {
+                    buffer.position(buffer.position() + Http2Connection.PREFACE.length);
+                    logger.info("Serving HTTP/2 connection from " + socket.getRemoteSocketAddress());
+                    newHttp2Connection().serve();
+                    break;
+                }
+                if (!readRequest(inputStream, outputStream, buffer, parser, metrics)) {
+                    break;
                 }
+            } catch (SocketTimeoutException e) {
+                logger.debug("Closing idle connection from " + socket.getRemoteSocketAddress());
+                break;
+            } catch (HttpParseException e) {
+                logger.info("Rejecting request from " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+                metrics.responses(e.getStatus().code).increment();
+                writeResponse(outputStream, errorResponse(e.getStatus()));
+                outputStream.flush();
+                break;
             }
-            MyResponse response = handleRequest(new MyRequest(requestLine, requestHeaders, body));
-            outputStream.write(response.statusLine().convert().getBytes(StandardCharsets.UTF_8));
-            outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
-            for (Map.Entry<String, List<String>> entry : response.responseHeaders().entrySet()) {
-                StringBuilder builder = new StringBuilder();
-                String key = entry.getKey();
-                List<String> values = entry.getValue();
-                for (String value : values) {
-                    builder.append(key).append(": ").append(value);
-                    outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
-                    outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
-                    builder.setLength(0);
+            MyRequest request = parser.getRequest();
+            Admission admission = parser.takeAdmission();
+            parser.reset();
+            if (settings.http2() && Http2Connection.isUpgrade(request)) {
+                outputStream.write(Http2Connection.SWITCHING_PROTOCOLS);
+                outputStream.flush();
+                logger.info("Upgrading connection from " + socket.getRemoteSocketAddress() + " to HTTP/2");
+                newHttp2Connection().serveUpgrade(request, admission);
+                break;
+            }
+            logger.info("Serving request " + request.requestLine().method() + " " + request.requestLine().path() +
+                    " using protocol " + request.requestLine().protocol());
+            served += 1;
+            keepAlive = isKeepAlive(request) && served < settings.maxRequestsPerConnection();
+            CompletableFuture<MyResponse> response = requestHandler.handleRequest(request, admission);
+            if (!response.isDone()) {
+                suspend(request, response, keepAlive);
+                return true;
+            }
+            keepAlive = write(request, response.join(), keepAlive);
+        }
+        return false;
+    }
+
+    // Clients with prior knowledge of HTTP/2 start with its preface instead of a request.
+    private boolean startsWithPreface() throws IOException {
+        byte[] preface = Http2Connection.PREFACE;
+        while (true) {
+            int available = Math.min(buffer.remaining(), preface.length);
+            for (int i = 0; i < available; i++) {
+                if (buffer.get(buffer.position() + i) != preface[i]) {
+                    return false;
                 }
             }
-            outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
-            if (response.responseBody() != null) {
-                outputStream.write(response.responseBody().toByteArray());
+            if (available == preface.length) {
+                return true;
+            }
+            buffer.compact();
+            int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+            if (read < 0) {
+                return false;
             }
-            outputStream.close();
-            logger.info("Request served");
-        } catch (Exception e) {
-            System.out.println("Exception in thread: " + Thread.currentThread().getName());
-            e.printStackTrace();
         }
+    }
 
+    // The connection thread keeps reading frames, what's left in the buffer comes first.
+    private Http2Connection newHttp2Connection() {
+        InputStream remaining = new SequenceInputStream(
+                new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()), inputStream);
+        buffer.position(buffer.limit());
+        return new Http2Connection(remaining, outputStream, requestHandler, settings, executor);
     }
 
-    MyResponse handleRequest(MyRequest request) throws Exception {
-        String requestPathParts[] = request.requestLine().path().split("\\?");
-        Map<String, String> queryParameters = new HashMap<>();
-        if (requestPathParts.length > 1) {
-            String[] splitParameters = requestPathParts[1].split("&");
-            for (String p : splitParameters) {
-                String[] pair = p.split("=");
-                queryParameters.put(pair[0], pair[1]);
+    // The thread goes back to the executor while an async route is pending, the connection is submitted again
+    // once the response is there.
+    private void suspend(MyRequest request, CompletableFuture<MyResponse> response, boolean keepAlive) throws IOException {
+        outputStream.flush();
+        pendingRequest = request;
+        pendingKeepAlive = keepAlive;
+        pendingResponse = response;
+        response.whenComplete((r, failure) -> {
+            // the request was admitted already, a saturated executor doesn't get to drop it
+            if (!executor.submit(this)) {
+                run();
             }
+        });
+    }
+
+    private boolean write(MyRequest request, MyResponse response, boolean keepAlive) throws IOException {
+        keepAlive = prepareFraming(request, response, keepAlive);
+        response.responseHeaders().put(CONNECTION_HEADER_NAME, List.of(keepAlive ? "keep-alive" : "close"));
+        long writeStart = System.nanoTime();
+        try {
+            writeResponse(outputStream, socket.getChannel(), response);
+        } finally {
+            // deletes a body that was spilled to disk, only now since a streamed response may read it while written
+            request.requestBody().close();
+        }
+        // pipelined requests that are already buffered are answered before flushing
+        if (!keepAlive || (!buffer.hasRemaining() && inputStream.available() == 0)) {
+            outputStream.flush();
         }
-        Map<String, String> cookies = new HashMap<>();
-        if (request.requestHeaders().containsKey("cookie")) {
-            for (String allCookies : request.requestHeaders().get("cookie")) {
-                String[] splitCookies = allCookies.split(";");
-                for (String splitCookie : splitCookies) {
-                    String[] cookieProperties = splitCookie.split("=");
-                    cookies.put(cookieProperties[0].trim(), cookieProperties[1].trim());
+        requestHandler.getMetrics().write.record(System.nanoTime() - writeStart);
+        logger.info("Request served");
+        return keepAlive;
+    }
+
+    // Only the time spent in the parser counts as parse time, not the time waiting for the client.
+    private static boolean readRequest(InputStream inputStream, OutputStream outputStream, ByteBuffer buffer,
+                                       HttpRequestParser parser, ServerMetrics metrics) throws IOException {
+        long parseTime = 0;
+        while (true) {
+            long start = System.nanoTime();
+            boolean complete = parser.parse(buffer);
+            parseTime += System.nanoTime() - start;
+            if (complete) {
+                metrics.parse.record(parseTime);
+                return true;
+            }
+            if (parser.takeContinue()) {
+                outputStream.write(CONTINUE);
+                outputStream.flush();
+            }
+            buffer.compact();
+            int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+            if (read < 0) {
+                if (!parser.isIdle()) {
+                    logger.debug("Connection closed in the middle of a request");
                 }
+                return false;
             }
         }
-        Optional<RoutedRequest> optionalRoutedRequest = router.route(request.requestLine());
-        if (optionalRoutedRequest.isPresent()) {
-            RoutedRequest routedRequest = optionalRoutedRequest.get();
-            RouteHandler routeHandler = routedRequest.routeHandler();
-            Map<String, String> pathParameters = routedRequest.pathParameters();
-            ByteArrayOutputStream body = new ByteArrayOutputStream();
-            StatusLine statusLine = new StatusLine("HTTP/1.1", 200, "OK");
-            Object returnValue;
-            List<Object> dependencies = new ArrayList<>();
-            for (Parameter parameter : routeHandler.getParameters()) {
-                if (parameter.getAnnotation(BodyParam.class) != null) {
-                    if (parameter.getType() == ByteArrayOutputStream.class) {
-                        dependencies.add(request.requestBody());
-                    }
-                    ObjectMapper mapper = new ObjectMapper();
-                    Object argument = mapper.readValue(request.requestBody().toByteArray(), parameter.getType());
-                    dependencies.add(argument);
-                } else if (parameter.getAnnotation(PathParam.class) != null) {
-                    String key = parameter.getAnnotation(PathParam.class).value();
-                    if (!pathParameters.containsKey(key)) {
-                        throw new WebServerException("No path parameter named " + key);
-                    }
-                    String value = pathParameters.get(key);
-                    Class<?> parameterType = parameter.getType();
-                    dependencies.add(ConvertingParameters.convertType(value, parameterType)
-                            .orElseThrow(() -> new WebServerException("Failed to read path parameter " + value + " because it has unsupported type " + parameterType)));
-                } else if (parameter.getAnnotation(QueryParam.class) != null) {
-                    String key = parameter.getAnnotation(QueryParam.class).value();
-                    if (!queryParameters.containsKey(key)) {
-                        throw new WebServerException("No query parameter named " + key);
-                    }
-                    String value = queryParameters.get(key);
-                    Class<?> parameterType = parameter.getType();
-                    dependencies.add(ConvertingParameters.convertType(value, parameterType)
-                            .orElseThrow(() -> new WebServerException("Failed to read query parameter " + value + " because it has unsupported type " + parameterType)));
-                } else if (parameter.getAnnotation(Header.class) != null) {
-                    String key = parameter.getAnnotation(Header.class).value().toLowerCase();
-                    if (!request.requestHeaders().containsKey(key)) {
-                        throw new WebServerException("No header named " + key);
+    }
+
+    static boolean isKeepAlive(MyRequest request) {
+        List<String> connection = request.requestHeaders().get(CONNECTION_HEADER_NAME);
+        if (connection != null) {
+            for (String value : connection) {
+                for (String token : value.split(",")) {
+                    if (token.trim().equalsIgnoreCase("close")) {
+                        return false;
                     }
-                    dependencies.add(request.requestHeaders().get(key).get(0));
-                } else if (parameter.getAnnotation(Cookie.class) != null) {
-                    String cookieName = parameter.getAnnotation(Cookie.class).value().toLowerCase();
-                    dependencies.add(cookies.get(cookieName));
-                } else {
-                    throw new WebServerException("Parameter has unsupported annotation");
-                }
-            }
-            returnValue = routeHandler.execute(dependencies.toArray());
-            HashMap<String, List<String>> headers = new HashMap<>();
-            if (returnValue instanceof ResponseEntity responseEntity) {
-                headers.putAll(responseEntity.getHeaders());
-                body = getBody(responseEntity.getBody(), routeHandler.getContentType());
-                if (responseEntity.getStatus().isPresent()) {
-                    Status status = responseEntity.getStatus().get();
-                    statusLine = new StatusLine("HTTP/1.1", status.code, status.reason);
-                }
-                for (ResponseCookie cookie : responseEntity.getCookies()) {
-                    String cookieLine = cookie.name() + "=" + cookie.value() + ";" +
-                            "path=" + cookie.path() + ";" +
-                            "expiration=" + cookie.expiration();
-                    if (headers.containsKey("set-cookie")) {
-                        headers.get("set-cookie").add(cookieLine);
-                    } else {
-                        List<String> list = new ArrayList<>();
-                        list.add(cookieLine);
-                        headers.put("set-cookie", list);
+                    if (token.trim().equalsIgnoreCase("keep-alive")) {
+                        return true;
                     }
                 }
-            } else {
-                String contentType = routeHandler.getContentType();
-                body = getBody(returnValue, contentType);
             }
-            headers.put(CONTENT_TYPE_HEADER_NAME, List.of(routeHandler.getContentType()));
-            headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Integer.toString(body.size())));
-            return new MyResponse(statusLine, headers, body);
-        } else {
-            logger.info("Couldn't find appropriate handler, serving 404");
-            StatusLine statusLine = new StatusLine("HTTP/1.1", 404, "not found");
-            HashMap<String, List<String>> headers = new HashMap<>();
-            ByteArrayOutputStream body = new ByteArrayOutputStream();
-            body.write("<h1>404</h1>".getBytes());
-            return new MyResponse(statusLine, headers, body);
         }
+        return !request.requestLine().protocol().equals("HTTP/1.0");
+    }
+
+    // Bodies of unknown length are sent chunked, or delimited by closing the connection for HTTP/1.0 clients.
+    static boolean prepareFraming(MyRequest request, MyResponse response, boolean keepAlive) {
+        ResponseBody body = response.responseBody();
+        if (body == null || body.contentLength() >= 0) {
+            return keepAlive;
+        }
+        if (request.requestLine().protocol().equals("HTTP/1.0")) {
+            return false;
+        }
+        response.responseHeaders().put(TRANSFER_ENCODING_HEADER_NAME, List.of("chunked"));
+        return keepAlive;
+    }
+
+    static MyResponse errorResponse(Status status) {
+        StatusLine statusLine = new StatusLine("HTTP/1.1", status.code, status.reason);
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put(CONTENT_LENGTH_HEADER_NAME, List.of("0"));
+        headers.put(CONNECTION_HEADER_NAME, List.of("close"));
+        if (status == Status.SERVICE_UNAVAILABLE) {
+            headers.put("retry-after", List.of("1"));
+        }
+        return new MyResponse(statusLine, headers, null);
+    }
+
+    static MyResponse serviceUnavailable() {
+        return errorResponse(Status.SERVICE_UNAVAILABLE);
     }
 
-    ByteArrayOutputStream getBody(Object returnValue, String contentType) throws Exception {
-        ByteArrayOutputStream body = new ByteArrayOutputStream();
-        if (returnValue == null) {
-            return body;
+    public static void reject(Socket socket) {
+        try (socket) {
+            OutputStream outputStream = socket.getOutputStream();
+            writeResponse(outputStream, serviceUnavailable());
+            outputStream.flush();
+        } catch (IOException e) {
+            logger.debug("Failed to reject connection from " + socket.getRemoteSocketAddress(), e);
         }
-        if (returnValue instanceof String) {
-            body.write(((String) returnValue).getBytes());
-        } else if (contentType.equals("application/json")) {
-            ObjectMapper mapper = new ObjectMapper();
-            body.write(mapper.writeValueAsString(returnValue).getBytes());
-        } else if (returnValue instanceof NamedFile) {
-            body.write(((NamedFile) returnValue).bytes);
+    }
+
+    static void writeResponse(OutputStream outputStream, MyResponse response) throws IOException {
+        writeResponse(outputStream, null, response);
+    }
+
+    // With a channel, file and buffer bodies go straight to it after the head is flushed.
+    static void writeResponse(OutputStream outputStream, WritableByteChannel channel, MyResponse response) throws IOException {
+        writeHead(outputStream, response);
+        ResponseBody body = response.responseBody();
+        if (body == null) {
+            return;
+        }
+        if (response.responseHeaders().containsKey(TRANSFER_ENCODING_HEADER_NAME)) {
+            ChunkedOutputStream chunkedOutputStream = new ChunkedOutputStream(outputStream);
+            OutputStream bufferedOutputStream = new BufferedOutputStream(chunkedOutputStream, CHUNK_SIZE);
+            body.writeTo(bufferedOutputStream);
+            bufferedOutputStream.flush();
+            chunkedOutputStream.finish();
+        } else if (channel != null && body instanceof TransferableBody transferable) {
+            outputStream.flush();
+            try (transferable) {
+                for (long offset = 0; offset < transferable.contentLength();) {
+                    offset += transferable.transferTo(offset, channel);
+                }
+            }
         } else {
-            throw new WebServerException("Method annotated as @Route has unsupported return type");
+            body.writeTo(outputStream);
         }
-        return body;
     }
-}
 
-enum RequestPart {
-    REQUEST_LINE,
-    REQUEST_HEADER,
-    REQUEST_BODY
+    static void writeHead(OutputStream outputStream, MyResponse response) throws IOException {
+        outputStream.write(response.statusLine().convert().getBytes(StandardCharsets.UTF_8));
+        outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, List<String>> entry : response.responseHeaders().entrySet()) {
+            StringBuilder builder = new StringBuilder();
+            String key = entry.getKey();
+            List<String> values = entry.getValue();
+            for (String value : values) {
+                builder.append(key).append(": ").append(value);
+                outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+                outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
+                builder.setLength(0);
+            }
+        }
+        outputStream.write(CRLF.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -2,27 +2,43 @@ package webdi.web;
 
 import webdi.exception.WebServerException;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class NamedFile {
 
     String name;
-    byte[] bytes;
+    URL url;
 
     public NamedFile(String name) {
         this.name = name;
-        this.bytes = getBytes(name);
+        this.url = getUrl(name);
     }
 
-    private static byte[] getBytes(String name) {
+    private static URL getUrl(String name) {
         ClassLoader classloader = Thread.currentThread().getContextClassLoader();
-        try (InputStream is = classloader.getResourceAsStream(name)) {
-            if (is == null) {
-                throw new WebServerException("");
+        URL url = classloader.getResource(name);
+        if (url == null) {
+            throw new WebServerException("Couldn't find resource " + name);
+        }
+        return url;
+    }
+
+    ResponseBody body() throws IOException {
+        if (url.getProtocol().equals("file")) {
+            try {
+                FileChannel channel = FileChannel.open(Path.of(url.toURI()), StandardOpenOption.READ);
+                return TransferableBody.of(channel, 0, channel.size());
+            } catch (URISyntaxException e) {
+                throw new IOException("Malformed resource url " + url, e);
             }
-            return is.readAllBytes();
-        } catch (Exception e) {
-            throw new WebServerException(e);
         }
+        URLConnection connection = url.openConnection();
+        return ResponseBody.of(connection.getInputStream(), connection.getContentLengthLong());
     }
 }
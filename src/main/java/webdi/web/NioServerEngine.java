@@ -0,0 +1,534 @@
+package webdi.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.exception.HttpParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class NioServerEngine implements ServerEngine {
+    private static final Logger logger = LoggerFactory.getLogger(NioServerEngine.class);
+
+    private static final int WRITE_CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+
+    private final ServerSettings settings;
+    private final RequestHandler requestHandler;
+    private final ConnectionExecutor executor;
+
+    public NioServerEngine(ServerSettings settings, RequestHandler requestHandler, ConnectionExecutor executor) {
+        this.settings = settings;
+        this.requestHandler = requestHandler;
+        this.executor = executor;
+    }
+
+    @Override
+    public void serve() throws IOException {
+        EventLoop[] eventLoops = new EventLoop[settings.eventLoops()];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+            Thread thread = new Thread(eventLoops[i], "webdi-event-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(settings.port()));
+            logger.info("NIO engine listening on port " + settings.port() + " with " + eventLoops.length + " event loops");
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                requestHandler.getMetrics().accepted.increment();
+                logger.debug("Received new connection from " + channel.getRemoteAddress());
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            }
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    channel.configureBlocking(false);
+                    NioConnection connection = new NioConnection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    logger.debug("Failed to register connection", e);
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+            while (true) {
+                try {
+                    selector.select(1000);
+                    for (Runnable task; (task = tasks.poll()) != null;) {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (Exception e) {
+                            logger.debug("Closing connection after failure", e);
+                            connection.close();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep >= 1000) {
+                        closeIdleConnections(now);
+                        lastSweep = now;
+                    }
+                } catch (Exception e) {
+                    logger.error("Unexpected failure in event loop " + Thread.currentThread().getName(), e);
+                }
+            }
+        }
+
+        // A connection with a request in flight isn't idle, but one whose client stopped reading the response is,
+        // otherwise it holds the handler thread blocked on backpressure forever.
+        private void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (connection == null) {
+                    continue;
+                }
+                if (!connection.inFlight && now - connection.lastActive > settings.idleTimeoutMillis()) {
+                    logger.debug("Closing idle connection");
+                    connection.close();
+                } else if (connection.inFlight && !connection.pendingWrites.isEmpty() &&
+                        now - connection.lastWrite > settings.writeTimeoutMillis()) {
+                    logger.debug("Closing connection that stopped reading its response");
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private final class NioConnection {
+        private final EventLoop eventLoop;
+        private final SocketChannel channel;
+        private final Queue<Outbound> pendingWrites = new ArrayDeque<>();
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(settings.maxHeaderSize());
+        private final HttpRequestParser parser = requestHandler.newParser(settings);
+        private boolean inFlight;
+        private boolean responseComplete;
+        private boolean closeAfterWrite;
+        private long pendingBytes;
+        private boolean closed;
+        private int served;
+        // parser time of the current request, which may arrive over several reads
+        private long parseTime;
+        private long lastActive = System.currentTimeMillis();
+        // when the last bytes of a response went out, or the first were queued while none were waiting
+        private long lastWrite;
+
+        private NioConnection(EventLoop eventLoop, SocketChannel channel) {
+            this.eventLoop = eventLoop;
+            this.channel = channel;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            processBuffer();
+        }
+
+        // Parses at most one request; the next pipelined one is parsed after its response is written.
+        private void processBuffer() throws IOException {
+            if (inFlight) {
+                return;
+            }
+            readBuffer.flip();
+            boolean complete;
+            long start = System.nanoTime();
+            try {
+                complete = parser.parse(readBuffer);
+            } catch (HttpParseException e) {
+                logger.info("Rejecting request: " + e.getMessage());
+                parseTime = 0;
+                requestHandler.getMetrics().responses(e.getStatus().code).increment();
+                readBuffer.position(readBuffer.limit());
+                inFlight = true;
+                key.interestOps(0);
+                writeNow(encode(MyWebServer.errorResponse(e.getStatus())));
+                complete(false);
+                return;
+            } finally {
+                readBuffer.compact();
+            }
+            parseTime += System.nanoTime() - start;
+            if (!complete) {
+                key.interestOps(SelectionKey.OP_READ);
+                if (parser.takeContinue()) {
+                    writeNow(ByteBuffer.wrap(MyWebServer.CONTINUE));
+                }
+                return;
+            }
+            requestHandler.getMetrics().parse.record(parseTime);
+            parseTime = 0;
+            MyRequest request = parser.getRequest();
+            Admission admission = parser.takeAdmission();
+            parser.reset();
+            logger.info("Serving request " + request.requestLine().method() + " " + request.requestLine().path() +
+                    " using protocol " + request.requestLine().protocol());
+            inFlight = true;
+            served += 1;
+            key.interestOps(0);
+            boolean keepAlive = MyWebServer.isKeepAlive(request) && served < settings.maxRequestsPerConnection();
+            if (!executor.submit(() -> dispatch(request, admission, keepAlive))) {
+                if (admission != null) {
+                    admission.cancel();
+                }
+                request.requestBody().close();
+                logger.warn("Rejected request, queue depth " + executor.getQueueDepth() +
+                        ", rejected so far " + executor.getRejectedCount());
+                requestHandler.getMetrics().responses(Status.SERVICE_UNAVAILABLE.code).increment();
+                writeNow(encode(MyWebServer.serviceUnavailable()));
+                complete(false);
+            }
+        }
+
+        // Runs on a handler thread. Async routes free it while pending, their response is written from the executor.
+        private void dispatch(MyRequest request, Admission admission, boolean keepAlive) {
+            CompletableFuture<MyResponse> response = requestHandler.handleRequest(request, admission);
+            if (response.isDone()) {
+                respond(request, response, keepAlive);
+                return;
+            }
+            response.whenComplete((r, failure) -> {
+                // the request was admitted already, a saturated executor doesn't get to drop it
+                if (!executor.submit(() -> respond(request, response, keepAlive))) {
+                    respond(request, response, keepAlive);
+                }
+            });
+        }
+
+        // The response is streamed to the event loop through a ConnectionOutputStream.
+        private void respond(MyRequest request, CompletableFuture<MyResponse> pendingResponse, boolean keepAlive) {
+            boolean persistent = false;
+            try {
+                MyResponse response = pendingResponse.join();
+                persistent = MyWebServer.prepareFraming(request, response, keepAlive);
+                response.responseHeaders().put(MyWebServer.CONNECTION_HEADER_NAME, List.of(persistent ? "keep-alive" : "close"));
+                long writeStart = System.nanoTime();
+                ConnectionOutputStream outputStream = new ConnectionOutputStream(this);
+                if (response.responseBody() instanceof TransferableBody transferable &&
+                        !response.responseHeaders().containsKey(MyWebServer.TRANSFER_ENCODING_HEADER_NAME)) {
+                    MyWebServer.writeHead(outputStream, response);
+                    outputStream.flush();
+                    sendBody(transferable);
+                } else {
+                    MyWebServer.writeResponse(outputStream, response);
+                    outputStream.flush();
+                }
+                // the time to hand the response to the event loop, including waiting on backpressure
+                requestHandler.getMetrics().write.record(System.nanoTime() - writeStart);
+                logger.info("Request served");
+            } catch (Exception e) {
+                logger.error("Failed to write response to " + request.requestLine(), e);
+                persistent = false;
+            } finally {
+                // deletes a body that was spilled to disk, only now since a streamed response may read it while written
+                request.requestBody().close();
+            }
+            boolean finalPersistent = persistent;
+            eventLoop.execute(() -> complete(finalPersistent));
+        }
+
+        // Called from handler threads, blocks while too much of the response is still waiting for the socket.
+        void send(ByteBuffer buffer) throws IOException {
+            synchronized (this) {
+                while (pendingBytes > MAX_PENDING_BYTES && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while writing response");
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Connection closed while writing response");
+                }
+                pendingBytes += buffer.remaining();
+            }
+            post(new BufferWrite(buffer));
+        }
+
+        // File and buffer bodies are written by the event loop straight from their source.
+        void sendBody(TransferableBody body) throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    body.close();
+                    throw new IOException("Connection closed while writing response");
+                }
+            }
+            post(new BodyTransfer(body));
+        }
+
+        private void post(Outbound outbound) {
+            eventLoop.execute(() -> {
+                try {
+                    write(outbound);
+                } catch (IOException e) {
+                    logger.debug("Failed to write response", e);
+                    close();
+                }
+            });
+        }
+
+        private void writeNow(ByteBuffer buffer) throws IOException {
+            synchronized (this) {
+                pendingBytes += buffer.remaining();
+            }
+            write(new BufferWrite(buffer));
+        }
+
+        private void write(Outbound outbound) throws IOException {
+            if (!channel.isOpen()) {
+                outbound.release();
+                return;
+            }
+            if (pendingWrites.isEmpty()) {
+                lastWrite = System.currentTimeMillis();
+            }
+            pendingWrites.add(outbound);
+            onWritable();
+        }
+
+        private void complete(boolean keepAlive) {
+            responseComplete = true;
+            closeAfterWrite = !keepAlive;
+            try {
+                onWritable();
+            } catch (IOException e) {
+                logger.debug("Failed to write response", e);
+                close();
+            }
+        }
+
+        void onWritable() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            while (!pendingWrites.isEmpty()) {
+                Outbound outbound = pendingWrites.peek();
+                long remaining = outbound.remaining();
+                boolean written = outbound.writeTo(channel);
+                if (outbound.remaining() < remaining) {
+                    lastWrite = System.currentTimeMillis();
+                }
+                if (!written) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingWrites.poll();
+                outbound.release();
+                released(outbound.heapBytes());
+            }
+            lastActive = System.currentTimeMillis();
+            if (!responseComplete) {
+                // an interim response was written while the body of the request is still being read
+                key.interestOps(inFlight ? 0 : SelectionKey.OP_READ);
+                return;
+            }
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+            responseComplete = false;
+            inFlight = false;
+            processBuffer();
+        }
+
+        private synchronized void released(long bytes) {
+            pendingBytes -= bytes;
+            notifyAll();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            for (Outbound outbound; (outbound = pendingWrites.poll()) != null;) {
+                outbound.release();
+            }
+            parser.discard();
+        }
+    }
+
+    private interface Outbound {
+        // true once everything has been written
+        boolean writeTo(SocketChannel channel) throws IOException;
+
+        // bytes counted against MAX_PENDING_BYTES until this is written
+        long heapBytes();
+
+        long remaining();
+
+        void release();
+    }
+
+    private record BufferWrite(ByteBuffer buffer) implements Outbound {
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            channel.write(buffer);
+            return !buffer.hasRemaining();
+        }
+
+        @Override
+        public long heapBytes() {
+            return buffer.limit();
+        }
+
+        @Override
+        public long remaining() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static final class BodyTransfer implements Outbound {
+        private final TransferableBody body;
+        private long offset;
+
+        private BodyTransfer(TransferableBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while (offset < body.contentLength()) {
+                long written = body.transferTo(offset, channel);
+                if (written == 0) {
+                    return false;
+                }
+                offset += written;
+            }
+            return true;
+        }
+
+        @Override
+        public long heapBytes() {
+            return 0;
+        }
+
+        @Override
+        public long remaining() {
+            return body.contentLength() - offset;
+        }
+
+        @Override
+        public void release() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close response body", e);
+            }
+        }
+    }
+
+    private static final class ConnectionOutputStream extends OutputStream {
+        private final NioConnection connection;
+        private byte[] buffer = new byte[WRITE_CHUNK_SIZE];
+        private int count;
+
+        private ConnectionOutputStream(NioConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= WRITE_CHUNK_SIZE) {
+                flush();
+                connection.send(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+                return;
+            }
+            if (len > buffer.length - count) {
+                flush();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                connection.send(ByteBuffer.wrap(buffer, 0, count));
+                buffer = new byte[WRITE_CHUNK_SIZE];
+                count = 0;
+            }
+        }
+    }
+
+    private static ByteBuffer encode(MyResponse response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MyWebServer.writeResponse(outputStream, response);
+        return ByteBuffer.wrap(outputStream.toByteArray());
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close channel", e);
+        }
+    }
+}
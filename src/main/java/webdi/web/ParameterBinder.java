@@ -0,0 +1,6 @@
+package webdi.web;
+
+public interface ParameterBinder {
+
+    Object bind(RequestContext context) throws Exception;
+}
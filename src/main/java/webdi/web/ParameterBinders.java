@@ -0,0 +1,233 @@
+package webdi.web;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import webdi.Converter;
+import webdi.ConverterRegistry;
+import webdi.annotation.*;
+import webdi.di.LazyInstance;
+import webdi.di.NamedClass;
+import webdi.di.ScopedInstance;
+import webdi.exception.HttpParseException;
+import webdi.exception.WebServerException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.nio.channels.ReadableByteChannel;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+final class ParameterBinders {
+
+    private ParameterBinders() {
+    }
+
+    // Bodies beyond the spill threshold are on disk, streams read them from there instead of loading them into memory.
+    private static ParameterBinder forBody(Parameter parameter, JsonCodec jsonCodec) {
+        Class<?> parameterType = parameter.getType();
+        if (parameterType == RequestBody.class) {
+            return context -> context.request().requestBody();
+        } else if (parameterType == InputStream.class) {
+            return context -> context.request().requestBody().openStream();
+        } else if (parameterType == ReadableByteChannel.class) {
+            return context -> context.request().requestBody().openChannel();
+        } else if (parameterType == JsonParser.class) {
+            return context -> jsonCodec.createParser(context.request().requestBody().openStream());
+        } else if (parameterType == MappingIterator.class) {
+            if (!(parameter.getParameterizedType() instanceof ParameterizedType parameterizedType)) {
+                throw new WebServerException("Body parameter " + parameter.getName() + " must declare the element type of its MappingIterator");
+            }
+            // a JSON array is iterated element by element, as is a sequence of root values
+            ObjectReader reader = jsonCodec.readerFor(parameterizedType.getActualTypeArguments()[0]);
+            return context -> {
+                try {
+                    return reader.readValues(context.request().requestBody().openStream());
+                } catch (JsonProcessingException e) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "Malformed body parameter " + parameter.getName() + ": " + e.getOriginalMessage());
+                }
+            };
+        } else if (parameterType == ByteArrayOutputStream.class) {
+            return context -> {
+                RequestBody body = context.request().requestBody();
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.min(body.size(), Integer.MAX_VALUE - 8));
+                try (InputStream inputStream = body.openStream()) {
+                    inputStream.transferTo(outputStream);
+                }
+                return outputStream;
+            };
+        }
+        ObjectReader reader = jsonCodec.readerFor(parameter.getParameterizedType());
+        return context -> {
+            RequestBody body = context.request().requestBody();
+            // malformed JSON, or JSON that doesn't map to the parameter type, is the client's fault
+            try {
+                if (body.isInMemory()) {
+                    return reader.readValue(body.toByteArray());
+                }
+                try (InputStream inputStream = body.openStream()) {
+                    return reader.readValue(inputStream);
+                }
+            } catch (JsonProcessingException e) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed body parameter " + parameter.getName() + ": " + e.getOriginalMessage());
+            }
+        };
+    }
+
+    private static ParameterBinder forFile(Parameter parameter) {
+        String key = parameter.getAnnotation(FileParam.class).value();
+        Class<?> parameterType = parameter.getType();
+        if (parameterType == List.class) {
+            return context -> context.form().files(key);
+        }
+        Function<UploadedFile, Object> converter;
+        if (parameterType == UploadedFile.class) {
+            converter = file -> file;
+        } else if (parameterType == InputStream.class) {
+            converter = file -> {
+                try {
+                    return file.openStream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        } else if (parameterType == byte[].class) {
+            converter = file -> {
+                try {
+                    return file.toByteArray();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        } else {
+            throw new WebServerException("Can't bind file " + key + " because it has unsupported type " + parameterType);
+        }
+        return context -> {
+            UploadedFile file = context.form().file(key);
+            if (file == null) {
+                throw new HttpParseException(Status.BAD_REQUEST, "No file named " + key);
+            }
+            return converter.apply(file);
+        };
+    }
+
+    static ParameterBinder forParameter(Parameter parameter, JsonCodec jsonCodec, Function<NamedClass, Object> instances) {
+        Class<?> parameterType = parameter.getType();
+        Object registry = LazyInstance.unwrap(instances.apply(new NamedClass(null, ConverterRegistry.class)));
+        ConverterRegistry converters = registry != null ? (ConverterRegistry) registry : ConverterRegistry.defaults();
+        if (parameter.isAnnotationPresent(BodyParam.class)) {
+            return forBody(parameter, jsonCodec);
+        } else if (parameter.isAnnotationPresent(PathParam.class)) {
+            String key = parameter.getAnnotation(PathParam.class).value();
+            Function<String, Object> converter = findConverter(converters, parameterType, "path parameter " + key);
+            return context -> {
+                String value = context.pathParameters().get(key);
+                if (value == null) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "No path parameter named " + key);
+                }
+                return converter.apply(value);
+            };
+        } else if (parameter.isAnnotationPresent(QueryParam.class)) {
+            String key = parameter.getAnnotation(QueryParam.class).value();
+            if (parameterType == List.class) {
+                Function<String, Object> converter = findConverter(converters, elementType(parameter), "query parameter " + key);
+                return context -> convertAll(context.queryParameters(key), converter);
+            }
+            Function<String, Object> converter = findConverter(converters, parameterType, "query parameter " + key);
+            return context -> {
+                String value = context.queryParameter(key);
+                if (value == null) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "No query parameter named " + key);
+                }
+                return converter.apply(value);
+            };
+        } else if (parameter.isAnnotationPresent(FormParam.class)) {
+            String key = parameter.getAnnotation(FormParam.class).value();
+            if (parameterType == List.class) {
+                Function<String, Object> converter = findConverter(converters, elementType(parameter), "form field " + key);
+                return context -> convertAll(context.form().fields(key), converter);
+            }
+            Function<String, Object> converter = findConverter(converters, parameterType, "form field " + key);
+            return context -> {
+                String value = context.form().field(key);
+                if (value == null) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "No form field named " + key);
+                }
+                return converter.apply(value);
+            };
+        } else if (parameter.isAnnotationPresent(FileParam.class)) {
+            return forFile(parameter);
+        } else if (parameter.isAnnotationPresent(Header.class)) {
+            String key = parameter.getAnnotation(Header.class).value().toLowerCase();
+            return context -> {
+                List<String> values = context.request().requestHeaders().get(key);
+                if (values == null) {
+                    throw new HttpParseException(Status.BAD_REQUEST, "No header named " + key);
+                }
+                return values.get(0);
+            };
+        } else if (parameter.isAnnotationPresent(Cookie.class)) {
+            // cookie names are case-sensitive
+            String cookieName = parameter.getAnnotation(Cookie.class).value();
+            if (parameterType == List.class) {
+                return context -> context.cookies(cookieName);
+            }
+            return context -> context.cookie(cookieName);
+        } else if (parameter.isAnnotationPresent(Inject.class)) {
+            Named named = parameter.getAnnotation(Named.class);
+            Object instance = instances.apply(new NamedClass(named != null ? named.value() : null, parameterType));
+            if (instance == null) {
+                throw new WebServerException("Can't inject parameter " + parameter.getName() + ", because there's no dependency of type " +
+                        parameterType.getName() + (named != null ? " named " + named.value() : ""));
+            }
+            if (instance instanceof ScopedInstance scopedInstance) {
+                return context -> scopedInstance.get(context.requestScope());
+            }
+            if (instance instanceof LazyInstance lazyInstance) {
+                return context -> lazyInstance.get();
+            }
+            return context -> instance;
+        } else {
+            throw new WebServerException("Parameter " + parameter.getName() + " has unsupported annotation");
+        }
+    }
+
+    private static List<Object> convertAll(List<String> values, Function<String, Object> converter) {
+        List<Object> converted = new ArrayList<>(values.size());
+        for (String value : values) {
+            converted.add(converter.apply(value));
+        }
+        return converted;
+    }
+
+    // The element type of a List parameter, String for a raw List.
+    private static Class<?> elementType(Parameter parameter) {
+        if (parameter.getParameterizedType() instanceof ParameterizedType parameterizedType &&
+                parameterizedType.getActualTypeArguments()[0] instanceof Class<?> elementType) {
+            return elementType;
+        }
+        return String.class;
+    }
+
+    // Resolved once per parameter, a value the converter rejects is answered with 400.
+    private static Function<String, Object> findConverter(ConverterRegistry converters, Class<?> parameterType, String description) {
+        Converter<?> converter = converters.find(parameterType);
+        if (converter == null) {
+            throw new WebServerException("Can't bind " + description + " because it has unsupported type " + parameterType);
+        }
+        return value -> {
+            try {
+                return converter.convert(value);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new HttpParseException(Status.BAD_REQUEST, "Malformed " + description + " " + value);
+            }
+        };
+    }
+}
@@ -0,0 +1,200 @@
+package webdi.web;
+
+import webdi.exception.HttpParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Looks up parameters in the raw query string or cookie header without splitting it up front. Pairs are scanned
+// in place and only the values asked for are copied, a route that binds no query parameter or cookie never
+// allocates for them. A pair without "=" has an empty value, values keep any further "=".
+final class ParameterScanner {
+
+    private ParameterScanner() {
+    }
+
+    // null when the query string doesn't have the parameter
+    static String queryParameter(String path, String name) {
+        int start = path.indexOf('?');
+        return start < 0 ? null : first(path, start + 1, path.length(), '&', name, true);
+    }
+
+    static List<String> queryParameters(String path, String name) {
+        List<String> values = new ArrayList<>();
+        int start = path.indexOf('?');
+        if (start >= 0) {
+            collect(path, start + 1, path.length(), '&', name, true, values);
+        }
+        return values;
+    }
+
+    static String cookie(List<String> headers, String name) {
+        if (headers != null) {
+            for (String header : headers) {
+                String value = first(header, 0, header.length(), ';', name, false);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    static List<String> cookies(List<String> headers, String name) {
+        List<String> values = new ArrayList<>();
+        if (headers != null) {
+            for (String header : headers) {
+                collect(header, 0, header.length(), ';', name, false, values);
+            }
+        }
+        return values;
+    }
+
+    // Every parameter with its first value.
+    static void putAll(String source, int start, int end, char separator, boolean query, Map<String, String> parameters) {
+        int pairStart = start;
+        while (pairStart <= end) {
+            int pairEnd = indexOf(source, separator, pairStart, end);
+            int nameStart = query ? pairStart : skipWhitespace(source, pairStart, pairEnd);
+            int pairLast = query ? pairEnd : trimWhitespace(source, nameStart, pairEnd);
+            if (nameStart < pairLast) {
+                int equals = indexOf(source, '=', nameStart, pairLast);
+                int nameEnd = query ? equals : trimWhitespace(source, nameStart, equals);
+                String name = query ? decode(source, nameStart, nameEnd) : source.substring(nameStart, nameEnd);
+                parameters.computeIfAbsent(name, key -> value(source, equals, pairLast, query));
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    private static String first(String source, int start, int end, char separator, String name, boolean query) {
+        int pairStart = start;
+        while (pairStart <= end) {
+            int pairEnd = indexOf(source, separator, pairStart, end);
+            String value = match(source, pairStart, pairEnd, name, query);
+            if (value != null) {
+                return value;
+            }
+            pairStart = pairEnd + 1;
+        }
+        return null;
+    }
+
+    private static void collect(String source, int start, int end, char separator, String name, boolean query, List<String> values) {
+        int pairStart = start;
+        while (pairStart <= end) {
+            int pairEnd = indexOf(source, separator, pairStart, end);
+            String value = match(source, pairStart, pairEnd, name, query);
+            if (value != null) {
+                values.add(value);
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    // The value of the pair if it has the name, null otherwise. Cookie pairs are surrounded by optional whitespace.
+    private static String match(String source, int pairStart, int pairEnd, String name, boolean query) {
+        int nameStart = query ? pairStart : skipWhitespace(source, pairStart, pairEnd);
+        int pairLast = query ? pairEnd : trimWhitespace(source, nameStart, pairEnd);
+        if (nameStart >= pairLast) {
+            return null;
+        }
+        int equals = indexOf(source, '=', nameStart, pairLast);
+        int nameEnd = query ? equals : trimWhitespace(source, nameStart, equals);
+        boolean matches;
+        if (query && needsDecoding(source, nameStart, nameEnd)) {
+            matches = decode(source, nameStart, nameEnd).equals(name);
+        } else {
+            matches = nameEnd - nameStart == name.length() && source.regionMatches(nameStart, name, 0, name.length());
+        }
+        return matches ? value(source, equals, pairLast, query) : null;
+    }
+
+    private static String value(String source, int equals, int pairEnd, boolean query) {
+        if (equals == pairEnd) {
+            return "";
+        }
+        if (query) {
+            return decode(source, equals + 1, pairEnd);
+        }
+        int valueStart = skipWhitespace(source, equals + 1, pairEnd);
+        // a cookie value may be quoted
+        if (pairEnd - valueStart >= 2 && source.charAt(valueStart) == '"' && source.charAt(pairEnd - 1) == '"') {
+            return source.substring(valueStart + 1, pairEnd - 1);
+        }
+        return source.substring(valueStart, pairEnd);
+    }
+
+    private static boolean needsDecoding(String source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '%' || c == '+' || c >= 0x80) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Percent-decodes a query string component as UTF-8, "+" is a space. The request line is read as ISO-8859-1,
+    // so characters above 0x7F are raw bytes of the UTF-8 encoding and are decoded along with the escapes.
+    static String decode(String source, int start, int end) {
+        if (!needsDecoding(source, start, end)) {
+            return source.substring(start, end);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        byte[] bytes = null;
+        int i = start;
+        while (i < end) {
+            char c = source.charAt(i);
+            if (c == '%' || c >= 0x80) {
+                if (bytes == null) {
+                    bytes = new byte[end - i];
+                }
+                int count = 0;
+                while (i < end && (source.charAt(i) == '%' || source.charAt(i) >= 0x80)) {
+                    if (source.charAt(i) == '%') {
+                        int high = i + 2 < end ? Character.digit(source.charAt(i + 1), 16) : -1;
+                        int low = i + 2 < end ? Character.digit(source.charAt(i + 2), 16) : -1;
+                        if (high < 0 || low < 0) {
+                            throw new HttpParseException(Status.BAD_REQUEST, "Malformed percent-encoding in " + source.substring(start, end));
+                        }
+                        bytes[count++] = (byte) (high << 4 | low);
+                        i += 3;
+                    } else {
+                        bytes[count++] = (byte) source.charAt(i++);
+                    }
+                }
+                builder.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+            } else {
+                builder.append(c == '+' ? ' ' : c);
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int indexOf(String source, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int skipWhitespace(String source, int start, int end) {
+        while (start < end && (source.charAt(start) == ' ' || source.charAt(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(String source, int start, int end) {
+        while (end > start && (source.charAt(end - 1) == ' ' || source.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+}
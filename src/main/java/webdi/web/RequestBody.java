@@ -0,0 +1,214 @@
+package webdi.web;
+
+import webdi.exception.WebServerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// The body of a request as it's received. Up to the spill threshold it's kept in memory, beyond that it's written
+// to a temporary file, so uploads larger than the heap can be received and read back as a stream. The file is
+// deleted when the request is done.
+public final class RequestBody implements Closeable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int spillThreshold;
+    private final Path spillDirectory;
+    private byte[] buffer;
+    private int count;
+    private Path file;
+    private FileChannel fileChannel;
+    private long size;
+    // the trailer fields of a chunked or HTTP/2 body
+    private Map<String, List<String>> trailers = Map.of();
+    // streams and channels handed out, closed with the body in case the handler didn't
+    private List<Closeable> opened;
+
+    // expectedSize is the content-length, or -1 for chunked bodies
+    RequestBody(long expectedSize, int spillThreshold, Path spillDirectory) {
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+        this.buffer = expectedSize <= 0 ? EMPTY : new byte[(int) Math.min(expectedSize, spillThreshold)];
+    }
+
+    public static RequestBody of(byte[] bytes) {
+        RequestBody body = new RequestBody(0, Integer.MAX_VALUE, null);
+        body.buffer = bytes;
+        body.count = bytes.length;
+        body.size = bytes.length;
+        return body;
+    }
+
+    // Moves length bytes from the source, which has at least that many remaining.
+    void write(ByteBuffer source, int length) {
+        try {
+            if (fileChannel == null && count + length > spillThreshold) {
+                spill();
+            }
+            if (fileChannel != null) {
+                ByteBuffer slice = source.slice(source.position(), length);
+                while (slice.hasRemaining()) {
+                    fileChannel.write(slice);
+                }
+                source.position(source.position() + length);
+            } else {
+                if (count + length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(spillThreshold, Math.max(count + length, buffer.length * 2L)));
+                }
+                source.get(buffer, count, length);
+                count += length;
+            }
+            size += length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write request body to " + file, e);
+        }
+    }
+
+    // Called once the whole body is received.
+    void finish() {
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write request body to " + file, e);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = spillDirectory != null ? Files.createTempFile(spillDirectory, "webdi-body-", ".tmp")
+                : Files.createTempFile("webdi-body-", ".tmp");
+        fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+        ByteBuffer buffered = ByteBuffer.wrap(buffer, 0, count);
+        while (buffered.hasRemaining()) {
+            fileChannel.write(buffered);
+        }
+        buffer = null;
+        count = 0;
+    }
+
+    void setTrailers(Map<String, List<String>> trailers) {
+        this.trailers = trailers;
+    }
+
+    public Map<String, List<String>> trailers() {
+        return trailers;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    // Loads a spilled body into memory, which is exactly what spilling avoids, so better read it as a stream.
+    public byte[] toByteArray() throws IOException {
+        if (file == null) {
+            return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new WebServerException("Request body of " + size + " bytes doesn't fit into an array");
+        }
+        return Files.readAllBytes(file);
+    }
+
+    // Each call starts from the beginning of the body.
+    public InputStream openStream() throws IOException {
+        return file == null ? new ByteArrayInputStream(buffer, 0, count) : track(Files.newInputStream(file));
+    }
+
+    // A range of the body, multipart file parts are read this way instead of being copied out of it.
+    InputStream openStream(long offset, long length) throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(buffer, (int) offset, (int) length);
+        }
+        FileChannel channel = track(FileChannel.open(file, StandardOpenOption.READ));
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    public ReadableByteChannel openChannel() throws IOException {
+        return file == null ? Channels.newChannel(openStream()) : track(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    private <T extends Closeable> T track(T closeable) {
+        if (opened == null) {
+            opened = new ArrayList<>();
+        }
+        opened.add(closeable);
+        return closeable;
+    }
+
+    @Override
+    public void close() {
+        if (file == null) {
+            return;
+        }
+        try {
+            fileChannel.close();
+            if (opened != null) {
+                for (Closeable closeable : opened) {
+                    closeable.close();
+                }
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete spilled request body " + file, e);
+        }
+    }
+
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream inputStream;
+        private long remaining;
+
+        private BoundedInputStream(InputStream inputStream, long remaining) {
+            this.inputStream = inputStream;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = inputStream.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = inputStream.read(bytes, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package webdi.web;
+
+import webdi.di.RequestScope;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class RequestContext {
+
+    private final MyRequest request;
+    private final Map<String, String> pathParameters;
+    private final FormSettings formSettings;
+    private Map<String, String> queryParameters;
+    private Map<String, String> cookies;
+    private FormData form;
+    private RequestScope requestScope;
+
+    public RequestContext(MyRequest request, Map<String, String> pathParameters) {
+        this(request, pathParameters, FormSettings.defaults());
+    }
+
+    public RequestContext(MyRequest request, Map<String, String> pathParameters, FormSettings formSettings) {
+        this.request = request;
+        this.pathParameters = pathParameters;
+        this.formSettings = formSettings;
+    }
+
+    public MyRequest request() {
+        return request;
+    }
+
+    public Map<String, String> pathParameters() {
+        return pathParameters;
+    }
+
+    // created with the first request scoped or pooled dependency
+    public RequestScope requestScope() {
+        if (requestScope == null) {
+            requestScope = new RequestScope();
+        }
+        return requestScope;
+    }
+
+    // Ends the request scope, pooled dependencies go back to their pools.
+    public void close() {
+        if (requestScope != null) {
+            requestScope.close();
+        }
+    }
+
+    // parsed with the first form parameter
+    public FormData form() throws IOException {
+        if (form == null) {
+            form = FormParser.parse(request, formSettings);
+        }
+        return form;
+    }
+
+    // The first value of the parameter, null when it's missing. The query string is scanned for each lookup.
+    public String queryParameter(String name) {
+        return ParameterScanner.queryParameter(request.requestLine().path(), name);
+    }
+
+    public List<String> queryParameters(String name) {
+        return ParameterScanner.queryParameters(request.requestLine().path(), name);
+    }
+
+    public String cookie(String name) {
+        return ParameterScanner.cookie(request.requestHeaders().get("cookie"), name);
+    }
+
+    public List<String> cookies(String name) {
+        return ParameterScanner.cookies(request.requestHeaders().get("cookie"), name);
+    }
+
+    // All parameters with their first values, prefer the lookups by name which don't build the map.
+    public Map<String, String> queryParameters() {
+        if (queryParameters == null) {
+            queryParameters = new HashMap<>();
+            String path = request.requestLine().path();
+            int start = path.indexOf('?');
+            if (start >= 0) {
+                ParameterScanner.putAll(path, start + 1, path.length(), '&', true, queryParameters);
+            }
+        }
+        return queryParameters;
+    }
+
+    public Map<String, String> cookies() {
+        if (cookies == null) {
+            cookies = new HashMap<>();
+            List<String> headers = request.requestHeaders().get("cookie");
+            if (headers != null) {
+                for (String header : headers) {
+                    ParameterScanner.putAll(header, 0, header.length(), ';', false, cookies);
+                }
+            }
+        }
+        return cookies;
+    }
+}
@@ -0,0 +1,295 @@
+package webdi.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.exception.HttpParseException;
+import webdi.exception.WebServerException;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static webdi.web.MyWebServer.CONTENT_LENGTH_HEADER_NAME;
+import static webdi.web.MyWebServer.CONTENT_TYPE_HEADER_NAME;
+
+public class RequestHandler {
+    private static final Logger logger = LoggerFactory.getLogger(RequestHandler.class);
+
+    private static final byte[] NOT_FOUND_BODY = "<h1>404</h1>".getBytes();
+
+    private final Router router;
+    private final StaticFiles staticFiles;
+    private final ResponseCache responseCache;
+    private final Compression compression;
+    private final ServerMetrics metrics;
+    private final ConcurrencyLimits limits;
+    private final FormSettings formSettings;
+
+    public RequestHandler(Router router) {
+        this(router, StaticFiles.none(), new ResponseCache(0, 0), Compression.disabled(),
+                new ServerMetrics(new MetricsRegistry(), null), ConcurrencyLimits.disabled(), FormSettings.defaults());
+    }
+
+    public RequestHandler(Router router, StaticFiles staticFiles, ResponseCache responseCache, Compression compression,
+                          ServerMetrics metrics, ConcurrencyLimits limits, FormSettings formSettings) {
+        this.router = router;
+        this.staticFiles = staticFiles;
+        this.responseCache = responseCache;
+        this.compression = compression;
+        this.metrics = metrics;
+        this.limits = limits;
+        this.formSettings = formSettings;
+        metrics.register(responseCache);
+    }
+
+    HttpRequestParser newParser(ServerSettings settings) {
+        return new HttpRequestParser(settings.maxHeaderSize(), settings.maxBodySize(), settings.bodySpillThreshold(),
+                settings.bodySpillDirectory(), this::admit);
+    }
+
+    // Routes a request as soon as its head is parsed, so requests over a concurrency limit are rejected before
+    // their body is read.
+    Admission admit(RequestLine requestLine) {
+        long start = System.nanoTime();
+        Optional<RoutedRequest> routedRequest = router.route(requestLine);
+        metrics.route.record(System.nanoTime() - start);
+        return routedRequest.isPresent() ? limits.admit(routedRequest.get()) : new Admission(null, null);
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Complete right away, unless the route returns a CompletionStage. Then it completes with the stage, nothing
+    // waits for it and the response is built by the thread that completes the stage.
+    // The admission comes from the parser, without one the request is routed here and isn't limited.
+    CompletableFuture<MyResponse> handleRequest(MyRequest request, Admission admission) {
+        CompletableFuture<MyResponse> response;
+        try {
+            response = respond(request, admission);
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        // limits and malformed input found while binding, e.g. in a form, are answered like those found by the parser
+        response = response.exceptionally(failure -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof HttpParseException e) {
+                logger.info("Rejecting request " + request.requestLine().path() + ": " + e.getMessage());
+                return MyWebServer.errorResponse(e.getStatus());
+            }
+            throw failure instanceof CompletionException completionException ? completionException : new CompletionException(failure);
+        });
+        return response.whenComplete((r, failure) -> {
+            if (r != null) {
+                metrics.responses(r.statusLine().statusCode()).increment();
+            }
+            // the request body stays open, a streamed response may still read it, the engines close it once written
+            if (admission != null) {
+                boolean dropped = failure != null || r.statusLine().statusCode() == Status.GATEWAY_TIMEOUT.code ||
+                        r.statusLine().statusCode() == Status.SERVICE_UNAVAILABLE.code;
+                admission.release(dropped);
+            }
+        }).exceptionally(failure -> {
+            // a failing handler or stage still gets an answer, only connections that can't be written to are dropped
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            logger.error("Failed to handle request " + request.requestLine(), cause);
+            metrics.responses(Status.INTERNAL_SERVER_ERROR.code).increment();
+            return MyWebServer.errorResponse(Status.INTERNAL_SERVER_ERROR);
+        });
+    }
+
+    private CompletableFuture<MyResponse> respond(MyRequest request, Admission admission) throws Exception {
+        if (metrics.isScrape(request)) {
+            return CompletableFuture.completedFuture(metrics.scrape());
+        }
+        List<ContentEncoding> accepted = compression.negotiate(request);
+        Optional<MyResponse> staticResponse = staticFiles.serve(request, accepted);
+        if (staticResponse.isPresent()) {
+            return CompletableFuture.completedFuture(staticResponse.get());
+        }
+        long start = System.nanoTime();
+        Optional<RoutedRequest> optionalRoutedRequest;
+        if (admission != null) {
+            optionalRoutedRequest = Optional.ofNullable(admission.routedRequest());
+        } else {
+            optionalRoutedRequest = router.route(request.requestLine());
+            metrics.route.record(System.nanoTime() - start);
+        }
+        if (optionalRoutedRequest.isPresent()) {
+            RoutedRequest routedRequest = optionalRoutedRequest.get();
+            RouteMetrics routeMetrics = routedRequest.routeHandler().getMetrics();
+            routeMetrics.requests().increment();
+            if (routedRequest.routeHandler().isAsync()) {
+                return invokeAsync(request, routedRequest, accepted)
+                        .whenComplete((response, failure) -> routeMetrics.duration().record(System.nanoTime() - start));
+            }
+            try {
+                CachePolicy cachePolicy = routedRequest.routeHandler().getCachePolicy();
+                if (cachePolicy != null) {
+                    return CompletableFuture.completedFuture(responseCache.get(ResponseCache.key(request, cachePolicy),
+                            cachePolicy, compression, accepted, () -> invoke(request, routedRequest)));
+                }
+                return CompletableFuture.completedFuture(compression.apply(invoke(request, routedRequest), accepted));
+            } finally {
+                routeMetrics.duration().record(System.nanoTime() - start);
+            }
+        } else {
+            logger.info("Couldn't find appropriate handler, serving 404");
+            StatusLine statusLine = new StatusLine("HTTP/1.1", 404, "not found");
+            HashMap<String, List<String>> headers = new HashMap<>();
+            ResponseBody body = ResponseBody.of(NOT_FOUND_BODY);
+            headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Long.toString(body.contentLength())));
+            return CompletableFuture.completedFuture(new MyResponse(statusLine, headers, body));
+        }
+    }
+
+    private MyResponse invoke(MyRequest request, RoutedRequest routedRequest) throws Exception {
+        RequestContext context = new RequestContext(request, routedRequest.pathParameters(), formSettings);
+        try {
+            return invoke(routedRequest.routeHandler(), context);
+        } finally {
+            // pooled dependencies go back to their pools once the response is built, streamed bodies can't keep using them
+            context.close();
+        }
+    }
+
+    private MyResponse invoke(RouteHandler routeHandler, RequestContext context) throws Exception {
+        RouteMetrics routeMetrics = routeHandler.getMetrics();
+        long start = System.nanoTime();
+        Object[] arguments = routeHandler.bindArguments(context);
+        long bound = System.nanoTime();
+        routeMetrics.bind().record(bound - start);
+        Object returnValue = routeHandler.execute(arguments);
+        long invoked = System.nanoTime();
+        routeMetrics.invoke().record(invoked - bound);
+        return toResponse(routeHandler, returnValue, invoked);
+    }
+
+    // The invoke time of async routes lasts until their stage completes. A timed out stage isn't cancelled, the
+    // handler may still be using its request scope, which therefore ends with the stage and not with the response.
+    private CompletableFuture<MyResponse> invokeAsync(MyRequest request, RoutedRequest routedRequest, List<ContentEncoding> accepted) {
+        RouteHandler routeHandler = routedRequest.routeHandler();
+        RouteMetrics routeMetrics = routeHandler.getMetrics();
+        RequestContext context = new RequestContext(request, routedRequest.pathParameters(), formSettings);
+        CompletableFuture<?> stage;
+        long bound;
+        try {
+            long start = System.nanoTime();
+            Object[] arguments = routeHandler.bindArguments(context);
+            bound = System.nanoTime();
+            routeMetrics.bind().record(bound - start);
+            CompletionStage<?> returnValue = (CompletionStage<?>) routeHandler.execute(arguments);
+            stage = returnValue != null ? returnValue.toCompletableFuture() : CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            context.close();
+            return CompletableFuture.failedFuture(e);
+        }
+        long timeoutNanos = routeHandler.getTimeoutNanos();
+        CompletableFuture<?> result = timeoutNanos > 0 ? stage.copy().orTimeout(timeoutNanos, TimeUnit.NANOSECONDS) : stage;
+        return result.handle((value, failure) -> {
+            long invoked = System.nanoTime();
+            routeMetrics.invoke().record(invoked - bound);
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            // a stage failing with its own TimeoutException is done, one that timed out here isn't
+            if (cause instanceof TimeoutException && timeoutNanos > 0 && !stage.isDone()) {
+                stage.whenComplete((v, f) -> context.close());
+                logger.warn("Route " + request.requestLine().path() + " didn't complete within " +
+                        TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                Status status = routeHandler.getTimeoutStatus();
+                return status == Status.SERVICE_UNAVAILABLE ? MyWebServer.serviceUnavailable() : MyWebServer.errorResponse(status);
+            }
+            try {
+                if (cause != null) {
+                    throw new CompletionException(cause);
+                }
+                return compression.apply(toResponse(routeHandler, value, invoked), accepted);
+            } catch (CompletionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                context.close();
+            }
+        });
+    }
+
+    private MyResponse toResponse(RouteHandler routeHandler, Object returnValue, long invoked) throws Exception {
+        RouteMetrics routeMetrics = routeHandler.getMetrics();
+        ResponseBody body;
+        StatusLine statusLine = new StatusLine("HTTP/1.1", 200, "OK");
+        HashMap<String, List<String>> headers = new HashMap<>();
+        if (returnValue instanceof ResponseEntity responseEntity) {
+            headers.putAll(responseEntity.getHeaders());
+            body = getBody(responseEntity.getBody(), routeHandler);
+            if (responseEntity.getStatus().isPresent()) {
+                Status status = responseEntity.getStatus().get();
+                statusLine = new StatusLine("HTTP/1.1", status.code, status.reason);
+            }
+            for (ResponseCookie cookie : responseEntity.getCookies()) {
+                String cookieLine = cookie.name() + "=" + cookie.value() + ";" +
+                        "path=" + cookie.path() + ";" +
+                        "expiration=" + cookie.expiration();
+                if (headers.containsKey("set-cookie")) {
+                    headers.get("set-cookie").add(cookieLine);
+                } else {
+                    List<String> list = new ArrayList<>();
+                    list.add(cookieLine);
+                    headers.put("set-cookie", list);
+                }
+            }
+        } else {
+            body = getBody(returnValue, routeHandler);
+        }
+        headers.put(CONTENT_TYPE_HEADER_NAME, List.of(routeHandler.getContentType()));
+        if (body.contentLength() >= 0) {
+            headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Long.toString(body.contentLength())));
+        }
+        // streamed bodies are serialized while being written, that time ends up in webdi_response_write_seconds
+        routeMetrics.serialize().record(System.nanoTime() - invoked);
+        return new MyResponse(statusLine, headers, body);
+    }
+
+    ResponseBody getBody(Object returnValue, RouteHandler routeHandler) throws Exception {
+        if (returnValue == null) {
+            return ResponseBody.of(new byte[0]);
+        }
+        if (returnValue instanceof String) {
+            return ResponseBody.of(((String) returnValue).getBytes());
+        } else if (returnValue instanceof ResponseBody) {
+            return (ResponseBody) returnValue;
+        } else if (returnValue instanceof NamedFile) {
+            return ((NamedFile) returnValue).body();
+        } else if (returnValue instanceof InputStream) {
+            return ResponseBody.of((InputStream) returnValue);
+        } else if (routeHandler.getContentType().equals("application/json")) {
+            if (returnValue instanceof Iterator<?> iterator) {
+                return ResponseBody.writer(outputStream -> routeHandler.getJsonCodec().writeArray(outputStream, iterator));
+            } else if (returnValue instanceof Stream<?> stream) {
+                return ResponseBody.writer(outputStream -> {
+                    try (stream) {
+                        routeHandler.getJsonCodec().writeArray(outputStream, stream.iterator());
+                    }
+                });
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            routeHandler.writerFor(returnValue).writeValue(body, returnValue);
+            return ResponseBody.of(body);
+        } else if (returnValue instanceof Iterator<?> iterator) {
+            return ResponseBody.writer(outputStream -> {
+                while (iterator.hasNext()) {
+                    Object chunk = iterator.next();
+                    outputStream.write(chunk instanceof byte[] bytes ? bytes : chunk.toString().getBytes());
+                }
+            });
+        } else {
+            throw new WebServerException("Method annotated as @Route has unsupported return type");
+        }
+    }
+}
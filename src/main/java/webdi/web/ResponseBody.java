@@ -0,0 +1,90 @@
+package webdi.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+public interface ResponseBody {
+
+    // -1 when the length isn't known up front, the response is then sent with chunked transfer encoding
+    long contentLength();
+
+    void writeTo(OutputStream outputStream) throws IOException;
+
+    static ResponseBody of(byte[] bytes) {
+        return new ResponseBody() {
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write(bytes);
+            }
+        };
+    }
+
+    static ResponseBody of(ByteArrayOutputStream bytes) {
+        return new ResponseBody() {
+            @Override
+            public long contentLength() {
+                return bytes.size();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                bytes.writeTo(outputStream);
+            }
+        };
+    }
+
+    static ResponseBody of(InputStream inputStream) {
+        return of(inputStream, -1);
+    }
+
+    static ResponseBody of(InputStream inputStream, long contentLength) {
+        return new ResponseBody() {
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try (inputStream) {
+                    inputStream.transferTo(outputStream);
+                }
+            }
+        };
+    }
+
+    static ResponseBody writer(BodyWriter writer) {
+        return new ResponseBody() {
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                writer.writeTo(outputStream);
+            }
+        };
+    }
+
+    static ResponseBody chunks(Iterator<byte[]> chunks) {
+        return writer(outputStream -> {
+            while (chunks.hasNext()) {
+                outputStream.write(chunks.next());
+            }
+        });
+    }
+
+    @FunctionalInterface
+    interface BodyWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+}
@@ -0,0 +1,260 @@
+package webdi.web;
+
+import webdi.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static webdi.web.MyWebServer.CONTENT_LENGTH_HEADER_NAME;
+
+// Encoded responses of @Cached routes. Eviction is a size-bounded LRU with a TinyLFU admission filter: once
+// the cache is full, a new response only gets in if it was requested more often than the entries it would evict.
+// Concurrent misses for the same key wait for the first one instead of running the handler again.
+public final class ResponseCache {
+
+    public static final String MAX_SIZE_KEY = "webdi.cache.max-size";
+    public static final String MAX_ENTRY_SIZE_KEY = "webdi.cache.max-entry-size";
+
+    // rough cost of the key, status line and header map of an entry on top of its body
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public ResponseCache(long maxSize, long maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxSize / 1024));
+    }
+
+    public static ResponseCache fromConfig(Config config) {
+        return new ResponseCache(config.getLong(MAX_SIZE_KEY, 32 * 1024 * 1024), config.getLong(MAX_ENTRY_SIZE_KEY, 1024 * 1024));
+    }
+
+    static String key(MyRequest request, CachePolicy policy) {
+        RequestLine requestLine = request.requestLine();
+        if (policy.headers().length == 0) {
+            return requestLine.method() + " " + requestLine.path();
+        }
+        StringBuilder key = new StringBuilder(requestLine.method()).append(' ').append(requestLine.path());
+        for (String header : policy.headers()) {
+            key.append('\n').append(header).append(':');
+            List<String> values = request.requestHeaders().get(header);
+            if (values != null) {
+                key.append(String.join(",", values));
+            }
+        }
+        return key.toString();
+    }
+
+    // Compressed variants are produced once per entry and coding and kept next to the identity bytes.
+    MyResponse get(String key, CachePolicy policy, Compression compression, List<ContentEncoding> accepted,
+                   ResponseLoader loader) throws Exception {
+        CachedResponse cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return toResponse(key, cached, compression, accepted);
+        }
+        CompletableFuture<CachedResponse> future = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return toResponse(key, await(existing), compression, accepted);
+        }
+        try {
+            // another leader may have stored it between the lookup and putIfAbsent
+            cached = peek(key);
+            if (cached == null) {
+                misses.increment();
+                cached = encode(loader.load(), System.nanoTime() + policy.ttlNanos());
+                if (isCacheable(cached)) {
+                    store(key, cached);
+                }
+            }
+            future.complete(cached);
+            return toResponse(key, cached, compression, accepted);
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private synchronized CachedResponse lookup(String key) {
+        sketch.increment(key.hashCode());
+        return peek(key);
+    }
+
+    private synchronized CachedResponse peek(String key) {
+        CachedResponse cached = entries.get(key);
+        if (cached != null && cached.expiresAt() - System.nanoTime() <= 0) {
+            remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    private synchronized void store(String key, CachedResponse response) {
+        long weight = response.weight();
+        if (weight > maxEntrySize || weight > maxSize) {
+            rejections.increment();
+            return;
+        }
+        remove(key);
+        // the victims are all picked before any is evicted, a rejected response leaves the cache as it was
+        int frequency = sketch.frequency(key.hashCode());
+        List<String> victims = new ArrayList<>();
+        long freed = 0;
+        Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+        while (size - freed + weight > maxSize) {
+            Map.Entry<String, CachedResponse> victim = iterator.next();
+            boolean expired = victim.getValue().expiresAt() - System.nanoTime() <= 0;
+            if (!expired && frequency <= sketch.frequency(victim.getKey().hashCode())) {
+                rejections.increment();
+                return;
+            }
+            victims.add(victim.getKey());
+            freed += victim.getValue().weight();
+        }
+        for (String victim : victims) {
+            remove(victim);
+            evictions.increment();
+        }
+        entries.put(key, response);
+        size += weight;
+    }
+
+    private void remove(String key) {
+        CachedResponse removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.weight();
+        }
+    }
+
+    private MyResponse toResponse(String key, CachedResponse cached, Compression compression,
+                                  List<ContentEncoding> accepted) throws IOException {
+        MyResponse response = cached.toResponse();
+        if (!compression.isCompressible(response)) {
+            return response;
+        }
+        Compression.addVary(response.responseHeaders());
+        ContentEncoding encoding = Compression.dynamicEncoding(accepted);
+        if (encoding == null) {
+            return response;
+        }
+        byte[] compressed = cached.variants().get(encoding);
+        if (compressed == null) {
+            compressed = compression.compress(response.responseBody(), encoding);
+            addVariant(key, cached, encoding, compressed);
+        }
+        response.responseHeaders().put(CONTENT_LENGTH_HEADER_NAME, List.of(Integer.toString(compressed.length)));
+        response.responseHeaders().put(Compression.CONTENT_ENCODING_HEADER_NAME, List.of(encoding.token));
+        return new MyResponse(response.statusLine(), response.responseHeaders(), TransferableBody.of(ByteBuffer.wrap(compressed)));
+    }
+
+    // Variants count towards the size of the entry while it is in the cache.
+    private synchronized void addVariant(String key, CachedResponse cached, ContentEncoding encoding, byte[] compressed) {
+        if (cached.variants().putIfAbsent(encoding, compressed) == null && entries.get(key) == cached) {
+            size += compressed.length;
+        }
+    }
+
+    private static CachedResponse await(CompletableFuture<CachedResponse> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Responses that set cookies are per user, anything but a 200 isn't worth keeping.
+    private static boolean isCacheable(CachedResponse response) {
+        return response.statusLine().statusCode() == Status.OK.code && !response.headers().containsKey("set-cookie");
+    }
+
+    private static CachedResponse encode(MyResponse response, long expiresAt) throws Exception {
+        byte[] body;
+        ResponseBody responseBody = response.responseBody();
+        if (responseBody == null) {
+            body = new byte[0];
+        } else {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.max(32, responseBody.contentLength()));
+            responseBody.writeTo(outputStream);
+            body = outputStream.toByteArray();
+        }
+        HashMap<String, List<String>> headers = new HashMap<>(response.responseHeaders());
+        headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Integer.toString(body.length)));
+        return new CachedResponse(response.statusLine(), Collections.unmodifiableMap(headers), body,
+                new ConcurrentHashMap<>(), expiresAt);
+    }
+
+    @FunctionalInterface
+    interface ResponseLoader {
+        MyResponse load() throws Exception;
+    }
+
+    // variants are only added while holding the cache's lock, so weight() stays in step with size
+    private record CachedResponse(StatusLine statusLine, Map<String, List<String>> headers, byte[] body,
+                                  Map<ContentEncoding, byte[]> variants, long expiresAt) {
+
+        long weight() {
+            long weight = body.length + ENTRY_OVERHEAD;
+            for (byte[] variant : variants.values()) {
+                weight += variant.length;
+            }
+            return weight;
+        }
+
+        MyResponse toResponse() {
+            return new MyResponse(statusLine, new HashMap<>(headers), TransferableBody.of(ByteBuffer.wrap(body)));
+        }
+    }
+}
@@ -1,33 +1,172 @@
 package webdi.web;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import webdi.Invokers;
+import webdi.annotation.BodyParam;
+import webdi.annotation.Cached;
 import webdi.annotation.Controller;
+import webdi.annotation.Cookie;
+import webdi.annotation.FileParam;
+import webdi.annotation.FormParam;
+import webdi.annotation.Header;
+import webdi.annotation.Inject;
+import webdi.annotation.Named;
+import webdi.annotation.Priority;
+import webdi.annotation.PriorityLevel;
 import webdi.annotation.Route;
+import webdi.annotation.ScopeType;
+import webdi.annotation.Timeout;
+import webdi.di.NamedClass;
+import webdi.di.ScopedInstance;
 import webdi.exception.WebServerException;
+import webdi.metrics.MetricsRegistry;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 public class RouteHandler {
     private final Method method;
     private final Object controller;
     private final Class<?> clazz;
     private final String contentType;
+    private final ParameterBinder[] binders;
+    private final Invokers.Invoker invoker;
+    private final JsonCodec jsonCodec;
+    private final ObjectWriter returnValueWriter;
+    private final CachePolicy cachePolicy;
+    private final RouteMetrics metrics;
+    private final boolean async;
+    // 0 without @Timeout
+    private final long timeoutNanos;
+    private final Status timeoutStatus;
+    private final PriorityLevel priority;
 
-    public RouteHandler(Method method, Object controller, Class<?> clazz) {
+    public RouteHandler(Method method, Object controller, Class<?> clazz, JsonCodec jsonCodec) {
+        this(method, controller, clazz, jsonCodec, new MetricsRegistry());
+    }
+
+    public RouteHandler(Method method, Object controller, Class<?> clazz, JsonCodec jsonCodec, MetricsRegistry registry) {
+        this(method, controller, clazz, jsonCodec, registry, namedClass -> null);
+    }
+
+    // instances finds what @Inject parameters get, null when nothing is registered under the type and name
+    public RouteHandler(Method method, Object controller, Class<?> clazz, JsonCodec jsonCodec, MetricsRegistry registry,
+                        Function<NamedClass, Object> instances) {
         this.method = method;
         this.controller = controller;
         this.clazz = clazz;
         this.contentType = findContentType(method, clazz);
+        Parameter[] parameters = method.getParameters();
+        this.binders = new ParameterBinder[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            binders[i] = ParameterBinders.forParameter(parameters[i], jsonCodec, instances);
+        }
+        this.jsonCodec = jsonCodec;
+        this.async = CompletionStage.class.isAssignableFrom(method.getReturnType());
+        // async routes are serialized by the type their stage completes with
+        Type valueType = async ? findStageValueType(method.getGenericReturnType()) : method.getGenericReturnType();
+        Class<?> returnType = valueType instanceof Class<?> c ? c
+                : valueType instanceof ParameterizedType parameterizedType ? (Class<?>) parameterizedType.getRawType() : Object.class;
+        if (contentType.equals("application/json") && returnType != String.class && returnType != NamedFile.class
+                && returnType != ResponseEntity.class && returnType != Object.class) {
+            this.returnValueWriter = jsonCodec.writerFor(valueType);
+        } else {
+            this.returnValueWriter = null;
+        }
+        this.cachePolicy = findCachePolicy(method, clazz, instances);
+        if (async && cachePolicy != null) {
+            throw new WebServerException("Method " + method.getName() + " from controller " + clazz.getName() + " is annotated with @Cached but returns a CompletionStage");
+        }
+        Timeout timeout = method.getAnnotation(Timeout.class);
+        if (timeout != null) {
+            if (!async) {
+                throw new WebServerException("Method " + method.getName() + " from controller " + clazz.getName() + " is annotated with @Timeout but doesn't return a CompletionStage");
+            }
+            if (timeout.status() != Status.GATEWAY_TIMEOUT.code && timeout.status() != Status.SERVICE_UNAVAILABLE.code) {
+                throw new WebServerException("Timeout status of method " + method.getName() + " from controller " + clazz.getName() + " must be 503 or 504, but is " + timeout.status());
+            }
+            this.timeoutNanos = timeout.unit().toNanos(timeout.value());
+            this.timeoutStatus = timeout.status() == Status.GATEWAY_TIMEOUT.code ? Status.GATEWAY_TIMEOUT : Status.SERVICE_UNAVAILABLE;
+        } else {
+            this.timeoutNanos = 0;
+            this.timeoutStatus = null;
+        }
+        Route route = method.getAnnotation(Route.class);
+        this.metrics = route != null ? RouteMetrics.create(registry, route.method(), route.value())
+                : RouteMetrics.create(registry, "", method.getName());
+        Priority priorityAnnotation = method.getAnnotation(Priority.class);
+        this.priority = priorityAnnotation != null ? priorityAnnotation.value() : PriorityLevel.NORMAL;
+        try {
+            this.invoker = Invokers.forMethod(method, controller);
+        } catch (IllegalAccessException e) {
+            throw new WebServerException("Method " + method.getName() + " from controller " + clazz.getName() + " isn't accessible", e);
+        }
+    }
+
+    public Object[] bindArguments(RequestContext context) throws Exception {
+        Object[] arguments = new Object[binders.length];
+        for (int i = 0; i < binders.length; i++) {
+            arguments[i] = binders[i].bind(context);
+        }
+        return arguments;
     }
 
     public Object execute(Object[] dependencies) {
         try {
-            return method.invoke(controller, dependencies);
-        } catch (Exception e) {
+            return invoker.invoke(dependencies);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new WebServerException("Couldn't invoke method " + method.getName() + " from controller " + clazz.getName(), e);
         }
     }
 
+    // ResponseEntity bodies and Object return types only have a runtime type, their writers are cached per class
+    ObjectWriter writerFor(Object value) {
+        return returnValueWriter != null ? returnValueWriter : jsonCodec.writerFor(value.getClass());
+    }
+
+    JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    // null for routes without @Cached
+    CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    RouteMetrics getMetrics() {
+        return metrics;
+    }
+
+    // true when the method returns a CompletionStage
+    boolean isAsync() {
+        return async;
+    }
+
+    PriorityLevel getPriority() {
+        return priority;
+    }
+
+    Route getRoute() {
+        return method.getAnnotation(Route.class);
+    }
+
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    Status getTimeoutStatus() {
+        return timeoutStatus;
+    }
+
     public String getContentType() {
         return contentType;
     }
@@ -36,6 +175,54 @@ public class RouteHandler {
         return method.getParameters();
     }
 
+    // T of CompletionStage<T> and CompletableFuture<T>, Object for other stage types whose T can't be told apart
+    private static Type findStageValueType(Type returnType) {
+        if (returnType instanceof ParameterizedType parameterizedType && (parameterizedType.getRawType() == CompletionStage.class ||
+                parameterizedType.getRawType() == CompletableFuture.class)) {
+            return parameterizedType.getActualTypeArguments()[0];
+        }
+        return Object.class;
+    }
+
+    private static CachePolicy findCachePolicy(Method method, Class<?> clazz, Function<NamedClass, Object> instances) {
+        Cached cached = method.getAnnotation(Cached.class);
+        if (cached == null) {
+            return null;
+        }
+        if (!method.getAnnotation(Route.class).method().equals("GET")) {
+            throw new WebServerException("Method " + method.getName() + " from controller " + clazz.getName() + " is annotated with @Cached but isn't a GET route");
+        }
+        String[] headers = Arrays.stream(cached.headers()).map(header -> header.toLowerCase(Locale.ROOT)).toArray(String[]::new);
+        // whatever the handler reads from the request has to be in the key, or one client gets another's response
+        for (Parameter parameter : method.getParameters()) {
+            String problem = null;
+            if (parameter.isAnnotationPresent(Header.class)) {
+                String header = parameter.getAnnotation(Header.class).value().toLowerCase(Locale.ROOT);
+                if (!Arrays.asList(headers).contains(header)) {
+                    problem = "binds header " + header + ", which isn't in its cache key";
+                }
+            } else if (parameter.isAnnotationPresent(Cookie.class)) {
+                if (!Arrays.asList(headers).contains("cookie")) {
+                    problem = "binds cookie " + parameter.getAnnotation(Cookie.class).value() + ", but the cookie header isn't in its cache key";
+                }
+            } else if (parameter.isAnnotationPresent(BodyParam.class) || parameter.isAnnotationPresent(FormParam.class) ||
+                    parameter.isAnnotationPresent(FileParam.class)) {
+                problem = "binds the request body, which isn't in its cache key";
+            } else if (parameter.isAnnotationPresent(Inject.class)) {
+                Named named = parameter.getAnnotation(Named.class);
+                Object instance = instances.apply(new NamedClass(named != null ? named.value() : null, parameter.getType()));
+                if (instance instanceof ScopedInstance scopedInstance &&
+                        (scopedInstance.getType() == ScopeType.REQUEST || scopedInstance.getType() == ScopeType.POOLED)) {
+                    problem = "injects " + scopedInstance.getType().name().toLowerCase(Locale.ROOT) + " scoped " + parameter.getType().getName();
+                }
+            }
+            if (problem != null) {
+                throw new WebServerException("Method " + method.getName() + " from controller " + clazz.getName() + " is annotated with @Cached but " + problem);
+            }
+        }
+        return new CachePolicy(cached.unit().toNanos(cached.ttl()), headers);
+    }
+
     private static String findContentType(Method method, Class<?> clazz) {
         Route route = method.getAnnotation(Route.class);
         if (route == null) {
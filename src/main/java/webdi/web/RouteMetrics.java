@@ -0,0 +1,19 @@
+package webdi.web;
+
+import webdi.metrics.Counter;
+import webdi.metrics.Histogram;
+import webdi.metrics.MetricsRegistry;
+
+// Labelled with the route template, so /users/{id} is one series however many ids are requested.
+record RouteMetrics(Counter requests, Histogram duration, Histogram bind, Histogram invoke, Histogram serialize) {
+
+    static RouteMetrics create(MetricsRegistry registry, String method, String route) {
+        String[] labels = {"method", method, "route", route};
+        return new RouteMetrics(
+                registry.counter("webdi_requests_total", "Requests per route", labels),
+                registry.histogram("webdi_request_duration_seconds", "Time from routing until the response is ready to be written", labels),
+                registry.histogram("webdi_handler_bind_seconds", "Time spent binding handler arguments", labels),
+                registry.histogram("webdi_handler_invoke_seconds", "Time spent in the handler method", labels),
+                registry.histogram("webdi_handler_serialize_seconds", "Time spent turning the return value into a response body", labels));
+    }
+}
@@ -0,0 +1,8 @@
+package webdi.web;
+
+import java.io.IOException;
+
+public interface ServerEngine {
+
+    void serve() throws IOException;
+}
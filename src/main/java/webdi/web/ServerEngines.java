@@ -0,0 +1,18 @@
+package webdi.web;
+
+import webdi.exception.WebServerException;
+
+public final class ServerEngines {
+
+    private ServerEngines() {
+    }
+
+    public static ServerEngine create(ServerSettings settings, RequestHandler requestHandler, ConnectionExecutor executor) {
+        return switch (settings.engine()) {
+            case "blocking", "h2c" -> new BlockingServerEngine(settings, requestHandler, executor);
+            case "nio" -> new NioServerEngine(settings, requestHandler, executor);
+            default -> throw new WebServerException("Unknown server engine " + settings.engine() +
+                    ", expected one of blocking, nio, h2c");
+        };
+    }
+}
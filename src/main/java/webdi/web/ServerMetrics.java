@@ -0,0 +1,101 @@
+package webdi.web;
+
+import webdi.Config;
+import webdi.metrics.Counter;
+import webdi.metrics.Histogram;
+import webdi.metrics.MetricsRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static webdi.web.MyWebServer.CONTENT_LENGTH_HEADER_NAME;
+import static webdi.web.MyWebServer.CONTENT_TYPE_HEADER_NAME;
+
+// Metrics of the server itself and the route serving them in the Prometheus text format.
+public final class ServerMetrics {
+
+    public static final String ENABLED_KEY = "webdi.metrics.enabled";
+    public static final String PATH_KEY = "webdi.metrics.path";
+
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private final MetricsRegistry registry;
+    private final String path;
+    final Counter accepted;
+    final Histogram parse;
+    final Histogram route;
+    final Histogram write;
+    private final AtomicReferenceArray<Counter> responses = new AtomicReferenceArray<>(600);
+
+    // path is null when the metrics aren't exposed
+    public ServerMetrics(MetricsRegistry registry, String path) {
+        this.registry = registry;
+        this.path = path;
+        this.accepted = registry.counter("webdi_connections_accepted_total", "Accepted connections");
+        this.parse = registry.histogram("webdi_request_parse_seconds", "Time spent parsing request heads and bodies");
+        this.route = registry.histogram("webdi_request_route_seconds", "Time spent finding the route of a request");
+        this.write = registry.histogram("webdi_response_write_seconds", "Time spent writing responses to the connection");
+    }
+
+    public static ServerMetrics fromConfig(Config config, MetricsRegistry registry) {
+        return new ServerMetrics(registry, config.getBoolean(ENABLED_KEY, false) ? config.getString(PATH_KEY, "/metrics") : null);
+    }
+
+    public void register(ConnectionExecutor executor) {
+        registry.gauge("webdi_executor_active_threads", "Threads currently handling connections or requests", executor::getActiveCount);
+        registry.gauge("webdi_executor_queue_depth", "Tasks waiting for a thread", executor::getQueueDepth);
+        registry.counter("webdi_executor_rejected_total", "Tasks rejected because the executor was saturated", executor::getRejectedCount);
+    }
+
+    void register(ResponseCache cache) {
+        registry.counter("webdi_response_cache_hits_total", "Responses served from the response cache", cache::getHitCount);
+        registry.counter("webdi_response_cache_misses_total", "Cached routes that had to run their handler", cache::getMissCount);
+        registry.counter("webdi_response_cache_coalesced_total", "Misses that waited for a concurrent miss of the same key", cache::getCoalescedCount);
+        registry.counter("webdi_response_cache_evictions_total", "Entries evicted from the response cache", cache::getEvictionCount);
+        registry.counter("webdi_response_cache_rejections_total", "Responses the response cache didn't admit", cache::getRejectedCount);
+        registry.gauge("webdi_response_cache_size_bytes", "Bytes held by the response cache", cache::getSize);
+        registry.gauge("webdi_response_cache_entries", "Entries in the response cache", cache::getEntryCount);
+    }
+
+    MetricsRegistry registry() {
+        return registry;
+    }
+
+    Counter responses(int status) {
+        if (status < 0 || status >= responses.length()) {
+            // not a status of any registered counter, the registry looks it up by its label instead
+            return registry.counter("webdi_responses_total", "Responses by status code", "status", Integer.toString(status));
+        }
+        Counter counter = responses.get(status);
+        if (counter == null) {
+            // the registry hands out the same counter for the same labels, so a race only repeats the lookup
+            counter = registry.counter("webdi_responses_total", "Responses by status code", "status", Integer.toString(status));
+            responses.set(status, counter);
+        }
+        return counter;
+    }
+
+    // null when the metrics aren't exposed
+    public String path() {
+        return path;
+    }
+
+    boolean isScrape(MyRequest request) {
+        if (path == null || !request.requestLine().method().equals("GET")) {
+            return false;
+        }
+        String requestPath = request.requestLine().path();
+        int query = requestPath.indexOf('?');
+        return query < 0 ? requestPath.equals(path) : requestPath.regionMatches(0, path, 0, Math.max(query, path.length()));
+    }
+
+    MyResponse scrape() {
+        byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put(CONTENT_TYPE_HEADER_NAME, List.of(PROMETHEUS_CONTENT_TYPE));
+        headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Integer.toString(body.length)));
+        return new MyResponse(new StatusLine("HTTP/1.1", Status.OK.code, Status.OK.reason), headers, ResponseBody.of(body));
+    }
+}
@@ -0,0 +1,44 @@
+package webdi.web;
+
+import webdi.Config;
+
+import java.nio.file.Path;
+
+public record ServerSettings(int port, String engine, int eventLoops, int idleTimeoutMillis, int writeTimeoutMillis,
+                             int maxRequestsPerConnection, int maxHeaderSize, long maxBodySize, int bodySpillThreshold,
+                             Path bodySpillDirectory, int http2MaxConcurrentStreams) {
+
+    public static final String PORT_KEY = "webdi.server.port";
+    public static final String ENGINE_KEY = "webdi.server.engine";
+    public static final String EVENT_LOOPS_KEY = "webdi.server.nio.event-loops";
+    public static final String IDLE_TIMEOUT_KEY = "webdi.server.keep-alive.timeout";
+    public static final String WRITE_TIMEOUT_KEY = "webdi.server.write-timeout";
+    public static final String MAX_REQUESTS_KEY = "webdi.server.keep-alive.max-requests";
+    public static final String MAX_HEADER_SIZE_KEY = "webdi.server.max-header-size";
+    public static final String MAX_BODY_SIZE_KEY = "webdi.server.max-body-size";
+    public static final String BODY_SPILL_THRESHOLD_KEY = "webdi.server.body.spill-threshold";
+    public static final String BODY_SPILL_DIRECTORY_KEY = "webdi.server.body.spill-directory";
+    public static final String HTTP2_MAX_CONCURRENT_STREAMS_KEY = "webdi.server.http2.max-concurrent-streams";
+
+    public static ServerSettings fromConfig(Config config) {
+        // empty for the default temporary directory
+        String spillDirectory = config.getString(BODY_SPILL_DIRECTORY_KEY, "");
+        return new ServerSettings(
+                config.getInt(PORT_KEY, 8080),
+                config.getString(ENGINE_KEY, "blocking"),
+                config.getInt(EVENT_LOOPS_KEY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                config.getInt(IDLE_TIMEOUT_KEY, 15000),
+                config.getInt(WRITE_TIMEOUT_KEY, 30000),
+                config.getInt(MAX_REQUESTS_KEY, 1000),
+                config.getInt(MAX_HEADER_SIZE_KEY, 16 * 1024),
+                config.getLong(MAX_BODY_SIZE_KEY, 10 * 1024 * 1024),
+                config.getInt(BODY_SPILL_THRESHOLD_KEY, 1024 * 1024),
+                spillDirectory.isEmpty() ? null : Path.of(spillDirectory),
+                config.getInt(HTTP2_MAX_CONCURRENT_STREAMS_KEY, 100));
+    }
+
+    // The h2c engine is the blocking one, with connections that may switch to HTTP/2.
+    public boolean http2() {
+        return engine.equals("h2c");
+    }
+}
@@ -0,0 +1,96 @@
+package webdi.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// LRU cache of small static files bounded by their total size. Files on disk are kept as read-only
+// memory mapped buffers, classpath resources inside jars as heap buffers. Compressed variants live in the
+// same LRU under their own keys and are reloaded along with the file when it changes.
+final class StaticFileCache {
+
+    private final long maxSize;
+    private final long maxFileSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+
+    StaticFileCache(long maxSize, long maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+    }
+
+    // Returns the cached content of the resource, loading it if it's small enough, or null if it isn't cached.
+    ByteBuffer get(StaticResource resource) throws IOException {
+        return get(resource.key(), resource, StaticFileCache::load);
+    }
+
+    ByteBuffer get(String key, StaticResource resource, Loader loader) throws IOException {
+        if (resource.size() > maxFileSize || resource.size() > maxSize) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.lastModified() == resource.lastModified() && entry.sourceSize() == resource.size()) {
+                    return entry.content().duplicate();
+                }
+                remove(key);
+            }
+        }
+        ByteBuffer content = loader.load(resource);
+        if (content == null) {
+            return null;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(content, resource.lastModified(), resource.size()));
+            size += content.capacity();
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().getValue().content().capacity();
+                iterator.remove();
+            }
+        }
+        return content.duplicate();
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.content().capacity();
+        }
+    }
+
+    // null when the file changed while it was being read, it's then served once without caching
+    private static ByteBuffer load(StaticResource resource) throws IOException {
+        ByteBuffer content;
+        if (resource.path() != null) {
+            try (FileChannel channel = FileChannel.open(resource.path(), StandardOpenOption.READ)) {
+                long length = channel.size();
+                content = length == 0 ? ByteBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+        } else {
+            try (InputStream inputStream = resource.url().openStream()) {
+                content = ByteBuffer.wrap(inputStream.readAllBytes());
+            }
+        }
+        return content.capacity() == resource.size() ? content : null;
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        ByteBuffer load(StaticResource resource) throws IOException;
+    }
+
+    private record Entry(ByteBuffer content, long lastModified, long sourceSize) {
+    }
+}
@@ -0,0 +1,430 @@
+package webdi.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import webdi.Config;
+import webdi.exception.WebServerException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static webdi.web.MyWebServer.CONTENT_LENGTH_HEADER_NAME;
+import static webdi.web.MyWebServer.CONTENT_TYPE_HEADER_NAME;
+
+// Serves files under configured URL prefixes from directories or classpath roots, e.g.
+// webdi.static.mappings=/assets=classpath:public,/downloads=file:/var/www/downloads
+public final class StaticFiles {
+    private static final Logger logger = LoggerFactory.getLogger(StaticFiles.class);
+
+    public static final String MAPPINGS_KEY = "webdi.static.mappings";
+    public static final String CACHE_MAX_SIZE_KEY = "webdi.static.cache.max-size";
+    public static final String CACHE_MAX_FILE_SIZE_KEY = "webdi.static.cache.max-file-size";
+
+    private static final String CLASSPATH_LOCATION = "classpath:";
+    private static final String FILE_LOCATION = "file:";
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final ByteRange UNSATISFIABLE = new ByteRange(-1, 0);
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html"), Map.entry("htm", "text/html"), Map.entry("css", "text/css"),
+            Map.entry("js", "text/javascript"), Map.entry("mjs", "text/javascript"), Map.entry("json", "application/json"),
+            Map.entry("map", "application/json"), Map.entry("txt", "text/plain"), Map.entry("xml", "application/xml"),
+            Map.entry("svg", "image/svg+xml"), Map.entry("png", "image/png"), Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"), Map.entry("gif", "image/gif"), Map.entry("webp", "image/webp"),
+            Map.entry("ico", "image/x-icon"), Map.entry("woff", "font/woff"), Map.entry("woff2", "font/woff2"),
+            Map.entry("pdf", "application/pdf"), Map.entry("wasm", "application/wasm"));
+
+    private final List<Mapping> mappings;
+    private final StaticFileCache cache;
+    private final Compression compression;
+
+    private StaticFiles(List<Mapping> mappings, StaticFileCache cache, Compression compression) {
+        this.mappings = mappings;
+        this.cache = cache;
+        this.compression = compression;
+    }
+
+    public static StaticFiles none() {
+        return new StaticFiles(List.of(), new StaticFileCache(0, 0), Compression.disabled());
+    }
+
+    public static StaticFiles fromConfig(Config config, Compression compression) {
+        List<Mapping> mappings = new ArrayList<>();
+        for (String entry : config.getString(MAPPINGS_KEY, "").split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int index = entry.indexOf('=');
+            if (index < 0) {
+                throw new WebServerException("Malformed static mapping " + entry + ", expected /prefix=classpath:root or /prefix=file:directory");
+            }
+            String prefix = entry.substring(0, index).trim();
+            String location = entry.substring(index + 1).trim();
+            mappings.add(new Mapping(prefix.endsWith("/") ? prefix : prefix + "/", location(location)));
+            logger.info("Serving static files under " + prefix + " from " + location);
+        }
+        // nested prefixes are matched longest first
+        mappings.sort(Comparator.comparingInt((Mapping mapping) -> mapping.prefix().length()).reversed());
+        StaticFileCache cache = new StaticFileCache(config.getLong(CACHE_MAX_SIZE_KEY, 16 * 1024 * 1024),
+                config.getLong(CACHE_MAX_FILE_SIZE_KEY, 256 * 1024));
+        return new StaticFiles(mappings, cache, compression);
+    }
+
+    private static Location location(String location) {
+        if (location.startsWith(CLASSPATH_LOCATION)) {
+            String root = location.substring(CLASSPATH_LOCATION.length());
+            while (root.startsWith("/")) {
+                root = root.substring(1);
+            }
+            while (root.endsWith("/")) {
+                root = root.substring(0, root.length() - 1);
+            }
+            if (root.isEmpty()) {
+                throw new WebServerException("Static file location " + location + " would serve the whole classpath, " +
+                        "including classes and configuration, map a resource directory like classpath:public instead");
+            }
+            return new ClasspathLocation(root, Thread.currentThread().getContextClassLoader(), new ConcurrentHashMap<>());
+        }
+        if (location.startsWith(FILE_LOCATION)) {
+            Path root = Path.of(location.substring(FILE_LOCATION.length())).toAbsolutePath().normalize();
+            if (!Files.isDirectory(root)) {
+                throw new WebServerException("Static file directory " + root + " doesn't exist");
+            }
+            return new DirectoryLocation(root);
+        }
+        throw new WebServerException("Static file location " + location + " must start with " + CLASSPATH_LOCATION + " or " + FILE_LOCATION);
+    }
+
+    // Empty when the request isn't a GET or HEAD for an existing file under one of the mappings,
+    // so it falls through to the routes.
+    Optional<MyResponse> serve(MyRequest request, List<ContentEncoding> accepted) throws IOException {
+        if (mappings.isEmpty()) {
+            return Optional.empty();
+        }
+        RequestLine requestLine = request.requestLine();
+        boolean head = requestLine.method().equals("HEAD");
+        if (!head && !requestLine.method().equals("GET")) {
+            return Optional.empty();
+        }
+        String path = requestLine.path();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        for (Mapping mapping : mappings) {
+            if (!path.startsWith(mapping.prefix())) {
+                continue;
+            }
+            String relativePath = decode(path.substring(mapping.prefix().length()));
+            StaticResource resource = relativePath == null ? null : mapping.location().resolve(relativePath);
+            if (resource == null) {
+                return Optional.empty();
+            }
+            if (!compression.isCompressibleType(contentType(resource.key()))) {
+                return Optional.of(respond(request, resource, null, false, head));
+            }
+            // a precompressed sibling such as app.js.br wins over compressing on the fly
+            for (ContentEncoding encoding : accepted) {
+                StaticResource sibling = encoding.fileExtension == null ? null : mapping.location().resolve(relativePath + encoding.fileExtension);
+                if (sibling != null) {
+                    return Optional.of(respond(request, sibling, resource.key(), encoding, head));
+                }
+            }
+            ContentEncoding encoding = Compression.dynamicEncoding(accepted);
+            if (encoding != null && header(request, "range") == null && compression.isLargeEnough(resource.size())) {
+                return Optional.of(respondCompressed(request, resource, encoding, head));
+            }
+            return Optional.of(respond(request, resource, null, true, head));
+        }
+        return Optional.empty();
+    }
+
+    private MyResponse respond(MyRequest request, StaticResource sibling, String name, ContentEncoding encoding, boolean head) throws IOException {
+        MyResponse response = respond(request, sibling, name, true, head);
+        if (response.statusLine().statusCode() != Status.NOT_MODIFIED.code) {
+            response.responseHeaders().put(Compression.CONTENT_ENCODING_HEADER_NAME, List.of(encoding.token));
+        }
+        return response;
+    }
+
+    // name is the file the content type comes from, when null it's the resource itself.
+    private MyResponse respond(MyRequest request, StaticResource resource, String name, boolean vary, boolean head) throws IOException {
+        String etag = resource.etag();
+        String lastModified = HTTP_DATE.format(Instant.ofEpochMilli(resource.lastModified()));
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put("etag", List.of(etag));
+        headers.put("last-modified", List.of(lastModified));
+        headers.put("accept-ranges", List.of("bytes"));
+        if (vary) {
+            Compression.addVary(headers);
+        }
+        if (isNotModified(request, etag, resource.lastModified())) {
+            return new MyResponse(statusLine(Status.NOT_MODIFIED), headers, null);
+        }
+        headers.put(CONTENT_TYPE_HEADER_NAME, List.of(contentType(name == null ? resource.key() : name)));
+        Status status = Status.OK;
+        ByteRange range = new ByteRange(0, resource.size());
+        String rangeHeader = header(request, "range");
+        if (rangeHeader != null && rangeApplies(request, etag, lastModified)) {
+            ByteRange requested = parseRange(rangeHeader, resource.size());
+            if (requested == UNSATISFIABLE) {
+                headers.put("content-range", List.of("bytes */" + resource.size()));
+                headers.put(CONTENT_LENGTH_HEADER_NAME, List.of("0"));
+                return new MyResponse(statusLine(Status.RANGE_NOT_SATISFIABLE), headers, null);
+            }
+            if (requested != null) {
+                status = Status.PARTIAL_CONTENT;
+                range = requested;
+                headers.put("content-range", List.of("bytes " + range.start() + "-" + (range.start() + range.length() - 1) +
+                        "/" + resource.size()));
+            }
+        }
+        headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Long.toString(range.length())));
+        return new MyResponse(statusLine(status), headers, head ? null : body(resource, range));
+    }
+
+    // Small files keep their compressed variant in the cache, larger ones are compressed while they are sent.
+    private MyResponse respondCompressed(MyRequest request, StaticResource resource, ContentEncoding encoding, boolean head) throws IOException {
+        String etag = resource.etag(encoding);
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put("etag", List.of(etag));
+        headers.put("last-modified", List.of(HTTP_DATE.format(Instant.ofEpochMilli(resource.lastModified()))));
+        Compression.addVary(headers);
+        if (isNotModified(request, etag, resource.lastModified())) {
+            return new MyResponse(statusLine(Status.NOT_MODIFIED), headers, null);
+        }
+        headers.put(CONTENT_TYPE_HEADER_NAME, List.of(contentType(resource.key())));
+        headers.put(Compression.CONTENT_ENCODING_HEADER_NAME, List.of(encoding.token));
+        ByteBuffer compressed = cache.get(resource.key() + "\n" + encoding.token, resource, source -> {
+            ByteBuffer identity = cache.get(source);
+            return identity == null ? null : ByteBuffer.wrap(compression.compress(TransferableBody.of(identity), encoding));
+        });
+        if (compressed != null) {
+            headers.put(CONTENT_LENGTH_HEADER_NAME, List.of(Integer.toString(compressed.remaining())));
+            return new MyResponse(statusLine(Status.OK), headers, head ? null : TransferableBody.of(compressed));
+        }
+        ResponseBody body = head ? null : compression.compressed(body(resource, new ByteRange(0, resource.size())), encoding);
+        return new MyResponse(statusLine(Status.OK), headers, body);
+    }
+
+    private ResponseBody body(StaticResource resource, ByteRange range) throws IOException {
+        ByteBuffer cached = cache.get(resource);
+        if (cached != null) {
+            return TransferableBody.of(cached.slice((int) range.start(), (int) range.length()));
+        }
+        if (resource.path() != null) {
+            FileChannel channel = FileChannel.open(resource.path(), StandardOpenOption.READ);
+            return TransferableBody.of(channel, range.start(), range.length());
+        }
+        return new ResponseBody() {
+            @Override
+            public long contentLength() {
+                return range.length();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try (InputStream inputStream = resource.url().openStream()) {
+                    inputStream.skipNBytes(range.start());
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    for (long remaining = range.length(); remaining > 0;) {
+                        int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new EOFException("Resource " + resource.key() + " ended early");
+                        }
+                        outputStream.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+            }
+        };
+    }
+
+    private static boolean isNotModified(MyRequest request, String etag, long lastModified) {
+        String ifNoneMatch = header(request, "if-none-match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = header(request, "if-modified-since");
+        if (ifModifiedSince != null) {
+            try {
+                return lastModified / 1000 <= ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean rangeApplies(MyRequest request, String etag, String lastModified) {
+        String ifRange = header(request, "if-range");
+        return ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified);
+    }
+
+    // Null when the header should be ignored and the whole file sent, which includes multiple ranges.
+    private static ByteRange parseRange(String value, long size) {
+        if (!value.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                long length = Math.min(suffix, size);
+                return new ByteRange(size - length, length);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (end < start) {
+                return null;
+            }
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, Math.min(end, size - 1) - start + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Null for anything that could escape the mapped root.
+    static String decode(String relativePath) {
+        String decoded;
+        try {
+            decoded = URLDecoder.decode(relativePath.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (decoded.isEmpty() || decoded.indexOf('\\') >= 0 || decoded.indexOf('\0') >= 0) {
+            return null;
+        }
+        for (String segment : decoded.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return null;
+            }
+        }
+        return decoded;
+    }
+
+    private static String contentType(String name) {
+        int dot = name.lastIndexOf('.');
+        String contentType = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        if (contentType == null) {
+            contentType = URLConnection.guessContentTypeFromName(name);
+        }
+        return contentType == null ? "application/octet-stream" : contentType;
+    }
+
+    private static String header(MyRequest request, String name) {
+        List<String> values = request.requestHeaders().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static StatusLine statusLine(Status status) {
+        return new StatusLine("HTTP/1.1", status.code, status.reason);
+    }
+
+    private static StaticResource fileResource(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        return new StaticResource(file.toString(), file, null, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    private record Mapping(String prefix, Location location) {
+    }
+
+    private record ByteRange(long start, long length) {
+    }
+
+    private interface Location {
+        // null when there's no such file
+        StaticResource resolve(String relativePath) throws IOException;
+    }
+
+    private record DirectoryLocation(Path root) implements Location {
+        @Override
+        public StaticResource resolve(String relativePath) throws IOException {
+            Path file = root.resolve(relativePath).normalize();
+            return file.startsWith(root) ? fileResource(file) : null;
+        }
+    }
+
+    // Resources inside jars can't change, so they are resolved once; classpath directories are checked every time.
+    private record ClasspathLocation(String root, ClassLoader classLoader, Map<String, StaticResource> jarResources) implements Location {
+        @Override
+        public StaticResource resolve(String relativePath) throws IOException {
+            StaticResource resolved = jarResources.get(relativePath);
+            if (resolved != null) {
+                return resolved;
+            }
+            URL url = classLoader.getResource(root + "/" + relativePath);
+            if (url == null) {
+                return null;
+            }
+            if (url.getProtocol().equals("file")) {
+                try {
+                    return fileResource(Path.of(url.toURI()));
+                } catch (URISyntaxException e) {
+                    throw new IOException("Malformed resource url " + url, e);
+                }
+            }
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection jarConnection && jarConnection.getJarEntry().isDirectory()) {
+                return null;
+            }
+            resolved = new StaticResource(url.toString(), null, url, connection.getContentLengthLong(), connection.getLastModified());
+            jarResources.put(relativePath, resolved);
+            return resolved;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package webdi.web;
+
+import java.net.URL;
+import java.nio.file.Path;
+
+// A resolved static file, path is set for files on disk and null for resources inside jars.
+record StaticResource(String key, Path path, URL url, long size, long lastModified) {
+
+    String etag() {
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    // the same file compressed on the fly is a different representation and needs its own tag
+    String etag(ContentEncoding encoding) {
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "-" + encoding.token + "\"";
+    }
+}
@@ -3,6 +3,7 @@ package webdi.web;
 public enum Status {
     OK(200, "OK"),
     NO_CONTENT(204, "NO CONTENT"),
+    PARTIAL_CONTENT(206, "PARTIAL CONTENT"),
     PERMANENT_REDIRECT(301, "PERMANENT REDIRECT"),
     TEMPORARY_REDIRECT(302, "TEMPORARY REDIRECT"),
     NOT_MODIFIED(304, "NOT MODIFIED"),
@@ -10,8 +11,15 @@ public enum Status {
     UNAUTHORIZED_ERROR(401, "UNAUTHORIZED ERROR"),
     FORBIDDEN(403, "FORBIDDEN"),
     NOT_FOUND(404, "NOT FOUND"),
+    PAYLOAD_TOO_LARGE(413, "PAYLOAD TOO LARGE"),
+    UNSUPPORTED_MEDIA_TYPE(415, "UNSUPPORTED MEDIA TYPE"),
+    RANGE_NOT_SATISFIABLE(416, "RANGE NOT SATISFIABLE"),
+    EXPECTATION_FAILED(417, "EXPECTATION FAILED"),
+    REQUEST_HEADER_FIELDS_TOO_LARGE(431, "REQUEST HEADER FIELDS TOO LARGE"),
     INTERNAL_SERVER_ERROR(500, "INTERNAL SERVER ERROR"),
-    NOT_IMPLEMENTED(501, "NOT IMPLEMENTED")
+    NOT_IMPLEMENTED(501, "NOT IMPLEMENTED"),
+    SERVICE_UNAVAILABLE(503, "SERVICE UNAVAILABLE"),
+    GATEWAY_TIMEOUT(504, "GATEWAY TIMEOUT")
     ;
     int code;
     String reason;
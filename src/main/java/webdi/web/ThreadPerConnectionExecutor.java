@@ -0,0 +1,42 @@
+package webdi.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadPerConnectionExecutor implements ConnectionExecutor {
+
+    private final AtomicInteger counter = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    @Override
+    public boolean submit(Runnable connection) {
+        Thread thread = new Thread(() -> {
+            active.incrementAndGet();
+            try {
+                connection.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        }, "[" + counter.incrementAndGet() + "]");
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,81 @@
+package webdi.web;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// A body backed by a file region or a buffer. Engines that own the socket channel write it with
+// FileChannel.transferTo / channel writes instead of copying it through writeTo.
+interface TransferableBody extends ResponseBody, Closeable {
+
+    // Writes the body starting at the given offset and returns the number of bytes written,
+    // which can be less than what's left on a non-blocking channel.
+    long transferTo(long offset, WritableByteChannel channel) throws IOException;
+
+    @Override
+    default void writeTo(OutputStream outputStream) throws IOException {
+        try (this) {
+            WritableByteChannel channel = Channels.newChannel(outputStream);
+            for (long offset = 0; offset < contentLength();) {
+                offset += transferTo(offset, channel);
+            }
+        }
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    static TransferableBody of(FileChannel fileChannel, long position, long count) {
+        return new TransferableBody() {
+            @Override
+            public long contentLength() {
+                return count;
+            }
+
+            @Override
+            public long transferTo(long offset, WritableByteChannel channel) throws IOException {
+                long written = fileChannel.transferTo(position + offset, count - offset, channel);
+                if (written == 0 && position + offset >= fileChannel.size()) {
+                    throw new EOFException("File was truncated while it was being sent");
+                }
+                return written;
+            }
+
+            @Override
+            public void close() throws IOException {
+                fileChannel.close();
+            }
+        };
+    }
+
+    static TransferableBody of(ByteBuffer buffer) {
+        return new TransferableBody() {
+            @Override
+            public long contentLength() {
+                return buffer.remaining();
+            }
+
+            @Override
+            public long transferTo(long offset, WritableByteChannel channel) throws IOException {
+                ByteBuffer view = buffer.duplicate();
+                view.position(view.position() + (int) offset);
+                return channel.write(view);
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                if (buffer.hasArray()) {
+                    outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                } else {
+                    TransferableBody.super.writeTo(outputStream);
+                }
+            }
+        };
+    }
+}
@@ -1,7 +1,5 @@
 package webdi.web;
 
-import webdi.exception.WebServerException;
-
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -9,6 +7,12 @@ import java.util.stream.Collectors;
 
 public class TrieRouter implements Router {
     private static final Pattern PATH_PARAMETER_PATTERN = Pattern.compile("^\\{([a-z]+)(:(.+))?\\}$");
+    // constant segments win over constrained parameters, which win over unconstrained ones
+    private static final Comparator<PathParameterDefinition> PRIORITY = Comparator
+            .comparing((PathParameterDefinition definition) -> definition.pattern().isEmpty())
+            .thenComparing(definition -> definition.pattern().map(Pattern::pattern).orElse(""))
+            .thenComparing(PathParameterDefinition::name);
+
     private final Map<String, TrieNode> methodTrie = new HashMap<>();
 
     public TrieRouter(Map<HandlerKey, RouteHandler> routesMap) {
@@ -22,76 +26,117 @@ public class TrieRouter implements Router {
                 methodTrie.put(method, new TrieNode());
             }
             TrieNode node = methodTrie.get(method);
+            List<String> parameterNames = new ArrayList<>();
             for (String part : pathParts) {
                 if (!part.isEmpty()) {
                     Matcher matcher = PATH_PARAMETER_PATTERN.matcher(part);
                     TrieNode nextNode;
                     if (matcher.matches()) {
                         String parameterName = matcher.group(1);
-                        Optional<String> parameterRegex = Optional.ofNullable(matcher.group(3));
-                        PathParameterDefinition pathParameterDefinition = new PathParameterDefinition(parameterName, parameterRegex);
-                        if (!node.variableChildren.containsKey(pathParameterDefinition)) {
-                            nextNode = new TrieNode();
-                            node.variableChildren.put(pathParameterDefinition, nextNode);
-                        } else {
-                            nextNode = node.variableChildren.get(pathParameterDefinition);
-                        }
+                        Optional<Pattern> parameterPattern = Optional.ofNullable(matcher.group(3)).map(Pattern::compile);
+                        PathParameterDefinition pathParameterDefinition = new PathParameterDefinition(parameterName, parameterPattern);
+                        nextNode = node.variableChildren.computeIfAbsent(pathParameterDefinition, definition -> new TrieNode());
+                        parameterNames.add(parameterName);
                     } else {
-                        if (!node.constantChildren.containsKey(part)) {
-                            nextNode = new TrieNode();
-                            node.constantChildren.put(part, nextNode);
-                        } else {
-                            nextNode = node.constantChildren.get(part);
-                        }
+                        nextNode = node.constantChildren.computeIfAbsent(part, p -> new TrieNode());
                     }
                     node = nextNode;
                 }
             }
             node.handler = Optional.of(handler);
+            node.parameterNames = parameterNames.toArray(new String[0]);
+        }
+        for (TrieNode root : methodTrie.values()) {
+            root.compile();
         }
     }
 
     @Override
     public Optional<RoutedRequest> route(RequestLine requestLine) {
+        TrieNode root = methodTrie.get(requestLine.method());
+        if (root == null) {
+            return Optional.empty();
+        }
         String path = requestLine.path();
-        String[] pathParts = path.split("/");
-        String method = requestLine.method();
-        if (!methodTrie.containsKey(method)) {
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        int[] captures = root.maxParameters == 0 ? null : new int[root.maxParameters * 2];
+        TrieNode node = match(root, path, 0, end, captures, 0);
+        if (node == null) {
             return Optional.empty();
         }
-        TrieNode node = methodTrie.get(method);
-        Map<String, String> pathParametersMap = new HashMap<>();
-        for (String part : pathParts) {
-            if (!part.isEmpty()) {
-                if (node.constantChildren.containsKey(part)){
-                    node = node.constantChildren.get(part);
-                } else {
-                    boolean matchFound = false;
-                    for (Map.Entry<PathParameterDefinition, TrieNode> entry : node.variableChildren.entrySet()) {
-                        PathParameterDefinition pathParameterDefinition = entry.getKey();
-                        String name = pathParameterDefinition.name;
-                        Optional<String> optionalPattern = pathParameterDefinition.pattern;
-                        if (optionalPattern.isEmpty() || part.matches(optionalPattern.get())) {
-                            pathParametersMap.put(name, part);
-                            node = node.variableChildren.get(entry.getKey());
-                            matchFound = true;
-                            break;
-                        }
-                    }
-                    if (!matchFound) {
-                        return Optional.empty();
-                    }
+        return Optional.of(new RoutedRequest(node.handler.get(), pathParameters(node.parameterNames, path, captures)));
+    }
+
+    // Depth first over the compiled trie: constant child first, then the parameters in priority order,
+    // backtracking when a branch doesn't lead to a handler.
+    private static TrieNode match(TrieNode node, String path, int position, int end, int[] captures, int parameterIndex) {
+        while (position < end && path.charAt(position) == '/') {
+            position++;
+        }
+        if (position == end) {
+            return node.handler.isPresent() ? node : null;
+        }
+        int segmentEnd = position;
+        while (segmentEnd < end && path.charAt(segmentEnd) != '/') {
+            segmentEnd++;
+        }
+        TrieNode constantChild = node.findConstant(path, position, segmentEnd);
+        if (constantChild != null) {
+            TrieNode found = match(constantChild, path, segmentEnd, end, captures, parameterIndex);
+            if (found != null) {
+                return found;
+            }
+        }
+        for (int i = 0; i < node.variablePatterns.length; i++) {
+            Pattern pattern = node.variablePatterns[i];
+            if (pattern == null || pattern.matcher(path).region(position, segmentEnd).matches()) {
+                TrieNode found = match(node.variableNodes[i], path, segmentEnd, end, captures, parameterIndex + 1);
+                if (found != null) {
+                    captures[parameterIndex * 2] = position;
+                    captures[parameterIndex * 2 + 1] = segmentEnd;
+                    return found;
                 }
             }
         }
-        return node.handler.map(routeHandler -> new RoutedRequest(routeHandler, pathParametersMap));
+        return null;
+    }
+
+    private static Map<String, String> pathParameters(String[] names, String path, int[] captures) {
+        if (names.length == 0) {
+            return Map.of();
+        }
+        Map<String, String> pathParameters = new HashMap<>((int) (names.length / 0.75f) + 1);
+        for (int i = 0; i < names.length; i++) {
+            pathParameters.put(names[i], path.substring(captures[i * 2], captures[i * 2 + 1]));
+        }
+        return pathParameters;
+    }
+
+    private static int hash(String path, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
     }
 
     private static class TrieNode {
         private Optional<RouteHandler> handler;
+        private String[] parameterNames;
         private final Map<String, TrieNode> constantChildren;
         private final Map<PathParameterDefinition, TrieNode> variableChildren;
 
+        // filled in by compile()
+        private int maxParameters;
+        private String[] constantSegments;
+        private TrieNode[] constantNodes;
+        private int[] constantTable;
+        private Pattern[] variablePatterns;
+        private TrieNode[] variableNodes;
+
         public TrieNode(Optional<RouteHandler> handler, Map<String, TrieNode> constantChildren, Map<PathParameterDefinition, TrieNode> variableChildren) {
             this.handler = handler;
             this.constantChildren = constantChildren;
@@ -104,6 +149,52 @@ public class TrieRouter implements Router {
             this.variableChildren = new HashMap<>();
         }
 
+        // Lays the children out in arrays: constant segments in an open addressing table that is probed with
+        // the bounds of a segment inside the request path, parameters sorted by PRIORITY.
+        private void compile() {
+            maxParameters = parameterNames == null ? 0 : parameterNames.length;
+            constantSegments = constantChildren.keySet().toArray(new String[0]);
+            constantNodes = new TrieNode[constantSegments.length];
+            constantTable = new int[Integer.highestOneBit(Math.max(1, constantSegments.length * 2) * 2 - 1)];
+            for (int i = 0; i < constantSegments.length; i++) {
+                String segment = constantSegments[i];
+                constantNodes[i] = constantChildren.get(segment);
+                int slot = hash(segment, 0, segment.length()) & (constantTable.length - 1);
+                while (constantTable[slot] != 0) {
+                    slot = (slot + 1) & (constantTable.length - 1);
+                }
+                constantTable[slot] = i + 1;
+            }
+            List<PathParameterDefinition> definitions = new ArrayList<>(variableChildren.keySet());
+            definitions.sort(PRIORITY);
+            variablePatterns = new Pattern[definitions.size()];
+            variableNodes = new TrieNode[definitions.size()];
+            for (int i = 0; i < definitions.size(); i++) {
+                variablePatterns[i] = definitions.get(i).pattern().orElse(null);
+                variableNodes[i] = variableChildren.get(definitions.get(i));
+            }
+            for (TrieNode child : constantNodes) {
+                child.compile();
+                maxParameters = Math.max(maxParameters, child.maxParameters);
+            }
+            for (TrieNode child : variableNodes) {
+                child.compile();
+                maxParameters = Math.max(maxParameters, child.maxParameters);
+            }
+        }
+
+        private TrieNode findConstant(String path, int start, int end) {
+            int length = end - start;
+            int mask = constantTable.length - 1;
+            for (int slot = hash(path, start, end) & mask; constantTable[slot] != 0; slot = (slot + 1) & mask) {
+                String segment = constantSegments[constantTable[slot] - 1];
+                if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+                    return constantNodes[constantTable[slot] - 1];
+                }
+            }
+            return null;
+        }
+
         @Override
         public String toString() {
             var children = constantChildren.entrySet().stream().map(entry -> entry.getKey() + " -> " + entry.getValue() + ", ").collect(Collectors.joining());
@@ -111,5 +202,17 @@ public class TrieRouter implements Router {
         }
     }
 
-    private record PathParameterDefinition(String name, Optional<String> pattern) {}
+    // Patterns are compared by their source so the same parameter declared by several routes shares a node.
+    private record PathParameterDefinition(String name, Optional<Pattern> pattern) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PathParameterDefinition other && name.equals(other.name) &&
+                    pattern.map(Pattern::pattern).equals(other.pattern.map(Pattern::pattern));
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, pattern.map(Pattern::pattern).orElse(null));
+        }
+    }
 }
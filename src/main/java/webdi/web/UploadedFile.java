@@ -0,0 +1,65 @@
+package webdi.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// A file part of a multipart form. Its content stays where the request body was received, in memory or in the
+// spilled file, and is only valid until the response is complete. Handlers keep it with transferTo.
+public final class UploadedFile {
+
+    private final String name;
+    private final String fileName;
+    private final String contentType;
+    private final RequestBody body;
+    private final long offset;
+    private final long size;
+
+    UploadedFile(String name, String fileName, String contentType, RequestBody body, long offset, long size) {
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.body = body;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public InputStream openStream() throws IOException {
+        return body.openStream(offset, size);
+    }
+
+    public byte[] toByteArray() throws IOException {
+        try (InputStream inputStream = openStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    public void transferTo(Path target) throws IOException {
+        try (InputStream inputStream = openStream()) {
+            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UploadedFile[name=" + name + ", fileName=" + fileName + ", contentType=" + contentType + ", size=" + size + "]";
+    }
+}
@@ -0,0 +1,58 @@
+package webdi.web;
+
+import webdi.exception.WebServerException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualThreadConnectionExecutor implements ConnectionExecutor {
+
+    private final ExecutorService executor;
+    private final AtomicInteger active = new AtomicInteger();
+
+    public VirtualThreadConnectionExecutor() {
+        // The project targets Java 17, so the Java 21 factory is looked up reflectively.
+        try {
+            this.executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new WebServerException("Virtual thread executor requires Java 21 or newer, running on " +
+                    System.getProperty("java.version"), e);
+        } catch (Exception e) {
+            throw new WebServerException("Couldn't create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    public boolean submit(Runnable connection) {
+        executor.execute(() -> {
+            active.incrementAndGet();
+            try {
+                connection.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,82 @@
+package webdi;
+
+import org.junit.jupiter.api.Test;
+import webdi.exception.WebServerException;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConverterRegistryTest {
+
+    enum Color {
+        RED,
+        GREEN {
+            @Override
+            public String toString() {
+                return "green";
+            }
+        }
+    }
+
+    private final ConverterRegistry converters = new ConverterRegistry();
+
+    @Test
+    void convertsPrimitivesWithTheirWrapperConverters() {
+        assertEquals(42, converters.convert("42", int.class));
+        assertEquals(42L, converters.convert("42", long.class));
+        assertEquals((short) 7, converters.convert("7", short.class));
+        assertEquals((byte) -1, converters.convert("-1", byte.class));
+        assertEquals(1.5, converters.convert("1.5", double.class));
+        assertEquals(1.5f, converters.convert("1.5", float.class));
+        assertEquals(true, converters.convert("true", boolean.class));
+        assertEquals('x', converters.convert("x", char.class));
+        assertSame(converters.find(Integer.class), converters.find(int.class));
+    }
+
+    @Test
+    void convertsCommonValueTypes() {
+        assertEquals("text", converters.convert("text", String.class));
+        assertEquals(new BigDecimal("1.10"), converters.convert("1.10", BigDecimal.class));
+        assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"),
+                converters.convert("123e4567-e89b-12d3-a456-426614174000", UUID.class));
+        assertEquals(LocalDate.of(2024, 1, 2), converters.convert("2024-01-02", LocalDate.class));
+        assertEquals(Duration.ofMinutes(5), converters.convert("PT5M", Duration.class));
+    }
+
+    @Test
+    void looksUpEnumsByConstantName() {
+        assertEquals(Color.RED, converters.convert("RED", Color.class));
+        // a constant with a body is a subclass, the converter is still found for the declared enum type
+        assertEquals(Color.GREEN, converters.convert("GREEN", Color.class));
+        assertSame(converters.find(Color.class), converters.find(Color.class));
+        assertThrows(IllegalArgumentException.class, () -> converters.convert("red", Color.class));
+    }
+
+    @Test
+    void reportsMalformedValuesAsIllegalArguments() {
+        // binders answer these with 400
+        assertThrows(IllegalArgumentException.class, () -> converters.convert("4x2", int.class));
+        assertThrows(IllegalArgumentException.class, () -> converters.convert("xy", char.class));
+        assertThrows(IllegalArgumentException.class, () -> converters.convert("not-a-uuid", UUID.class));
+        assertThrows(DateTimeException.class, () -> converters.convert("2024-13-01", LocalDate.class));
+    }
+
+    @Test
+    void registeredConvertersReplaceDefaultsForWrapperAndPrimitive() {
+        converters.register(Boolean.class, value -> value.equals("yes"));
+        assertEquals(true, converters.convert("yes", boolean.class));
+        assertEquals(false, converters.convert("true", Boolean.class));
+        assertEquals(true, ConverterRegistry.defaults().convert("true", boolean.class));
+    }
+
+    @Test
+    void failsForTypesWithoutConverter() {
+        assertNull(converters.find(Object.class));
+        assertThrows(WebServerException.class, () -> converters.get(Thread.class));
+    }
+}
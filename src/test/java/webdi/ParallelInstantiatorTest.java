@@ -0,0 +1,150 @@
+package webdi;
+
+import org.junit.jupiter.api.Test;
+import webdi.di.Injectable;
+import webdi.exception.InjectionException;
+
+import java.lang.reflect.Parameter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelInstantiatorTest {
+
+    // only the identity of an injectable matters here, the creator passed to the instantiator builds it
+    private record Node(String name) implements Injectable {
+        @Override
+        public List<Class<?>> getImplementedTypes() {
+            return List.of();
+        }
+
+        @Override
+        public Parameter[] getParameters() {
+            return new Parameter[0];
+        }
+
+        @Override
+        public Object construct(Object[] dependencies) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<String> getName() {
+            return Optional.of(name);
+        }
+    }
+
+    private static final Node A = new Node("a");
+    private static final Node B = new Node("b");
+    private static final Node C = new Node("c");
+    private static final Node D = new Node("d");
+
+    @Test
+    void createsEachInjectableOnceAfterItsDependencies() {
+        // d depends on b and c, which both depend on a
+        Map<Injectable, Set<Injectable>> dependencies = Map.of(B, Set.of(A), C, Set.of(A), D, Set.of(B, C));
+        Set<Injectable> created = ConcurrentHashMap.newKeySet();
+        Object[] instances = ParallelInstantiator.create(List.of(A, B, C, D), dependencies, 4, injectable -> {
+            for (Injectable dependency : dependencies.getOrDefault(injectable, Set.of())) {
+                assertTrue(created.contains(dependency), injectable + " created before " + dependency);
+            }
+            assertTrue(created.add(injectable), injectable + " created twice");
+            return ((Node) injectable).name();
+        });
+        assertArrayEquals(new Object[]{"a", "b", "c", "d"}, instances);
+        assertEquals(4, created.size());
+    }
+
+    @Test
+    void submitsDependentsOnlyOnceWhenDependenciesFinishWhileRootsAreSubmitted() {
+        // a is long done when the roots in between are submitted and b comes up
+        List<Injectable> order = new ArrayList<>(List.of(A));
+        for (int i = 0; i < 1000; i++) {
+            order.add(new Node("root" + i));
+        }
+        order.add(B);
+        Map<Injectable, Integer> calls = new ConcurrentHashMap<>();
+        ParallelInstantiator.create(order, Map.of(B, Set.of(A)), 2, injectable -> calls.merge(injectable, 1, Integer::sum));
+        assertEquals(1, calls.get(B));
+    }
+
+    @Test
+    void runsBlockingFactoriesSideBySideOnOneThread() {
+        // both factories wait for each other, they only finish if the pool adds a worker for the blocked one
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Object[] instances = ParallelInstantiator.create(List.of(A, B), Map.of(), 1, injectable -> {
+            bothStarted.countDown();
+            try {
+                return bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertArrayEquals(new Object[]{true, true}, instances);
+    }
+
+    @Test
+    void reportsFirstFailureInOrderWithLaterOnesSuppressed() {
+        // c fails first in time, b comes first in the order and is the one reported
+        CountDownLatch cFailed = new CountDownLatch(1);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> ParallelInstantiator.create(List.of(A, B, C), Map.of(), 4, injectable -> {
+                    if (injectable == B) {
+                        awaitQuietly(cFailed);
+                        throw new IllegalStateException("b");
+                    }
+                    if (injectable == C) {
+                        cFailed.countDown();
+                        throw new IllegalStateException("c");
+                    }
+                    return "a";
+                }));
+        assertEquals("b", e.getMessage());
+        assertEquals(List.of("c"), Arrays.stream(e.getSuppressed()).map(Throwable::getMessage).toList());
+    }
+
+    @Test
+    void wrapsCheckedFailures() {
+        InjectionException e = assertThrows(InjectionException.class,
+                () -> ParallelInstantiator.create(List.of(A), Map.of(), 1, injectable -> {
+                    throw sneaky(new Exception("checked"));
+                }));
+        assertEquals("checked", e.getCause().getMessage());
+    }
+
+    @Test
+    void skipsDependentsOfFailedInjectables() {
+        // b and d need the failed a, whether c runs depends on timing
+        Map<Injectable, Set<Injectable>> dependencies = Map.of(B, Set.of(A), D, Set.of(B, C));
+        List<Injectable> called = Collections.synchronizedList(new ArrayList<>());
+        Function<Injectable, Object> creator = injectable -> {
+            called.add(injectable);
+            if (injectable == A) {
+                throw new IllegalStateException("a");
+            }
+            return injectable;
+        };
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> ParallelInstantiator.create(List.of(A, C, B, D), dependencies, 4, creator));
+        assertEquals("a", e.getMessage());
+        assertFalse(called.contains(B));
+        assertFalse(called.contains(D));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> RuntimeException sneaky(Throwable throwable) throws T {
+        throw (T) throwable;
+    }
+}
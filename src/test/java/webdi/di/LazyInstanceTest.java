@@ -0,0 +1,135 @@
+package webdi.di;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyInstanceTest {
+
+    public interface Greeter {
+        String greet(String name);
+    }
+
+    public static class EnglishGreeter implements Greeter {
+        private final Object[] arguments;
+
+        public EnglishGreeter(Object[] arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public String greet(String name) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("no name");
+            }
+            return "hello " + name;
+        }
+    }
+
+    // counts how often the lazy instance asks for the object to be built
+    private static final class CountingInjectable implements Injectable {
+        private final AtomicInteger constructions = new AtomicInteger();
+        private final Function<Object[], Object> factory;
+
+        private CountingInjectable(Function<Object[], Object> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public List<Class<?>> getImplementedTypes() {
+            return List.of(Greeter.class);
+        }
+
+        @Override
+        public Parameter[] getParameters() {
+            return new Parameter[0];
+        }
+
+        @Override
+        public Object construct(Object[] dependencies) {
+            constructions.incrementAndGet();
+            return factory.apply(dependencies);
+        }
+
+        @Override
+        public Optional<String> getName() {
+            return Optional.empty();
+        }
+    }
+
+    @Test
+    void constructsOnFirstUseOnly() {
+        CountingInjectable injectable = new CountingInjectable(EnglishGreeter::new);
+        LazyInstance lazyInstance = new LazyInstance(injectable, new Object[0]);
+        Greeter proxy = (Greeter) lazyInstance.proxy(Greeter.class);
+        assertEquals(0, injectable.constructions.get());
+
+        assertEquals("hello ada", proxy.greet("ada"));
+        assertEquals("hello bob", proxy.greet("bob"));
+        assertSame(lazyInstance.get(), LazyInstance.unwrap(lazyInstance));
+        assertEquals(1, injectable.constructions.get());
+    }
+
+    @Test
+    void constructsOnceUnderConcurrentFirstUse() throws Exception {
+        CountingInjectable injectable = new CountingInjectable(arguments -> {
+            // keep the first caller inside construct while the others arrive
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new EnglishGreeter(arguments);
+        });
+        LazyInstance lazyInstance = new LazyInstance(injectable, new Object[0]);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier start = new CyclicBarrier(threads);
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return lazyInstance.get();
+                }));
+            }
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, injectable.constructions.get());
+    }
+
+    @Test
+    void resolvesLazyArgumentsWhenConstructed() {
+        CountingInjectable dependency = new CountingInjectable(EnglishGreeter::new);
+        LazyInstance lazyDependency = new LazyInstance(dependency, new Object[0]);
+        LazyInstance lazyInstance = new LazyInstance(new CountingInjectable(EnglishGreeter::new), new Object[]{lazyDependency, "plain"});
+        assertEquals(0, dependency.constructions.get());
+
+        EnglishGreeter greeter = (EnglishGreeter) lazyInstance.get();
+        assertSame(lazyDependency.get(), greeter.arguments[0]);
+        assertEquals("plain", greeter.arguments[1]);
+        assertEquals(1, dependency.constructions.get());
+    }
+
+    @Test
+    void sharesOneProxyPerTypeAndRethrowsTargetExceptions() {
+        LazyInstance lazyInstance = new LazyInstance(new CountingInjectable(EnglishGreeter::new), new Object[0]);
+        Greeter proxy = (Greeter) lazyInstance.proxy(Greeter.class);
+        assertSame(proxy, lazyInstance.proxy(Greeter.class));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> proxy.greet(""));
+        assertEquals("no name", e.getMessage());
+    }
+}
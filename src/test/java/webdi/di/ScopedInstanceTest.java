@@ -0,0 +1,189 @@
+package webdi.di;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Inject;
+import webdi.annotation.Scope;
+import webdi.annotation.ScopeType;
+import webdi.exception.InjectionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopedInstanceTest {
+
+    @Scope(ScopeType.PROTOTYPE)
+    public static class Prototype {
+    }
+
+    @Scope(ScopeType.REQUEST)
+    public static class RequestState {
+    }
+
+    @Scope(value = ScopeType.POOLED, poolSize = 2)
+    public static class Buffer implements Recyclable {
+        int recycled;
+
+        @Override
+        public void recycle() {
+            recycled++;
+        }
+    }
+
+    @Scope(value = ScopeType.POOLED, poolSize = 2)
+    public static class Broken implements Recyclable {
+        @Override
+        public void recycle() {
+            throw new IllegalStateException("can't reset");
+        }
+    }
+
+    @Scope(ScopeType.REQUEST)
+    public static class Handler {
+        final RequestState state;
+
+        @Inject
+        public Handler(RequestState state) {
+            this.state = state;
+        }
+    }
+
+    @Scope(ScopeType.SINGLETON)
+    public static class Singleton {
+    }
+
+    @Test
+    void createsPrototypesEveryTime() {
+        ScopedInstance prototype = scoped(Prototype.class);
+        assertNotSame(prototype.get(null), prototype.get(null));
+        try (RequestScope requestScope = new RequestScope()) {
+            assertNotSame(prototype.get(requestScope), prototype.get(requestScope));
+        }
+    }
+
+    @Test
+    void keepsOneInstancePerRequest() {
+        ScopedInstance requestState = scoped(RequestState.class);
+        Object first;
+        try (RequestScope requestScope = new RequestScope()) {
+            first = requestState.get(requestScope);
+            assertSame(first, requestState.get(requestScope));
+        }
+        try (RequestScope requestScope = new RequestScope()) {
+            assertNotSame(first, requestState.get(requestScope));
+        }
+    }
+
+    @Test
+    void resolvesScopedArgumentsWithinTheSameRequest() {
+        ScopedInstance requestState = scoped(RequestState.class);
+        ScopedInstance handler = new ScopedInstance(new InjectableComponent(Handler.class),
+                Handler.class.getAnnotation(Scope.class), new Object[]{requestState});
+        try (RequestScope requestScope = new RequestScope()) {
+            assertSame(requestState.get(requestScope), ((Handler) handler.get(requestScope)).state);
+        }
+    }
+
+    @Test
+    void rejectsRequestScopesOutsideRequests() {
+        assertThrows(InjectionException.class, () -> scoped(RequestState.class).get(null));
+        assertThrows(InjectionException.class, () -> scoped(Buffer.class).get(null));
+        assertThrows(InjectionException.class, () -> scoped(Singleton.class));
+    }
+
+    @Test
+    void returnsPooledInstancesWhenTheRequestEnds() {
+        ScopedInstance buffer = scoped(Buffer.class);
+        Buffer first;
+        try (RequestScope requestScope = new RequestScope()) {
+            first = (Buffer) buffer.get(requestScope);
+            assertSame(first, buffer.get(requestScope));
+        }
+        assertEquals(1, first.recycled);
+        try (RequestScope requestScope = new RequestScope()) {
+            assertSame(first, buffer.get(requestScope));
+        }
+        assertEquals(2, first.recycled);
+    }
+
+    @Test
+    void dropsInstancesThatFailToRecycle() {
+        ScopedInstance broken = scoped(Broken.class);
+        Object first;
+        try (RequestScope requestScope = new RequestScope()) {
+            first = broken.get(requestScope);
+        }
+        try (RequestScope requestScope = new RequestScope()) {
+            assertNotSame(first, broken.get(requestScope));
+        }
+    }
+
+    @Test
+    void keepsAtMostPoolSizeIdleInstances() {
+        ScopedInstance buffer = scoped(Buffer.class);
+        List<RequestScope> requestScopes = new ArrayList<>();
+        Set<Object> created = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 3; i++) {
+            RequestScope requestScope = new RequestScope();
+            created.add(buffer.get(requestScope));
+            requestScopes.add(requestScope);
+        }
+        assertEquals(3, created.size());
+        requestScopes.forEach(RequestScope::close);
+        Set<Object> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 3; i++) {
+            reused.add(buffer.get(new RequestScope()));
+        }
+        reused.retainAll(created);
+        assertEquals(2, reused.size());
+    }
+
+    @Test
+    void poolNeverHandsOutAnInstanceTwice() throws Exception {
+        ObjectPool pool = new ObjectPool(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pool.release(new Object()));
+        }
+        assertFalse(pool.release(new Object()));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Set<Object> inUse = ConcurrentHashMap.newKeySet();
+            CyclicBarrier start = new CyclicBarrier(threads);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 10_000; i++) {
+                        Object instance = pool.borrow();
+                        if (instance != null) {
+                            assertTrue(inUse.add(instance), "borrowed twice");
+                            inUse.remove(instance);
+                            assertTrue(pool.release(instance));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int idle = 0;
+        while (pool.borrow() != null) {
+            idle++;
+        }
+        assertEquals(4, idle);
+    }
+
+    private static ScopedInstance scoped(Class<?> clazz) {
+        return new ScopedInstance(new InjectableComponent(clazz), clazz.getAnnotation(Scope.class), new Object[0]);
+    }
+}
@@ -0,0 +1,113 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Controller;
+import webdi.annotation.Inject;
+import webdi.annotation.Route;
+import webdi.annotation.Scope;
+import webdi.annotation.ScopeType;
+import webdi.annotation.Timeout;
+import webdi.di.InjectableComponent;
+import webdi.di.NamedClass;
+import webdi.di.Recyclable;
+import webdi.di.ScopedInstance;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRouteTest {
+
+    @Scope(value = ScopeType.POOLED, poolSize = 1)
+    public static class Buffer implements Recyclable {
+        static final AtomicInteger recycled = new AtomicInteger();
+
+        @Override
+        public void recycle() {
+            recycled.incrementAndGet();
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class AsyncController {
+        volatile CompletableFuture<String> pending;
+
+        @Route("/async")
+        public CompletionStage<String> async(@Inject Buffer buffer) {
+            pending = new CompletableFuture<>();
+            return pending;
+        }
+
+        @Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+        @Route("/slow")
+        public CompletionStage<String> slow(@Inject Buffer buffer) {
+            pending = new CompletableFuture<>();
+            return pending;
+        }
+    }
+
+    private final AsyncController controller = new AsyncController();
+    private final RequestHandler requestHandler = requestHandler(controller);
+
+    @Test
+    void returnsPooledInstancesWhenTheStageCompletes() throws Exception {
+        int recycled = Buffer.recycled.get();
+        CompletableFuture<MyResponse> response = requestHandler.handleRequest(request("/async"), null);
+        assertFalse(response.isDone());
+        assertEquals(recycled, Buffer.recycled.get());
+
+        controller.pending.complete("done");
+        assertEquals("done", body(response.get(5, TimeUnit.SECONDS)));
+        assertEquals(recycled + 1, Buffer.recycled.get());
+    }
+
+    @Test
+    void keepsPooledInstancesOfTimedOutStagesUntilTheyComplete() throws Exception {
+        int recycled = Buffer.recycled.get();
+        MyResponse response = requestHandler.handleRequest(request("/slow"), null).get(5, TimeUnit.SECONDS);
+        assertEquals(Status.GATEWAY_TIMEOUT.code, response.statusLine().statusCode());
+        // the handler may still be using its buffer
+        assertEquals(recycled, Buffer.recycled.get());
+
+        controller.pending.complete("late");
+        assertEquals(recycled + 1, Buffer.recycled.get());
+    }
+
+    private static MyRequest request(String path) {
+        return new MyRequest(new RequestLine("GET", path, "HTTP/1.1"), new HashMap<>(), RequestBody.of(new byte[0]));
+    }
+
+    private static String body(MyResponse response) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.responseBody().writeTo(body);
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static RequestHandler requestHandler(Object controller) {
+        ScopedInstance buffer = new ScopedInstance(new InjectableComponent(Buffer.class), Buffer.class.getAnnotation(Scope.class), new Object[0]);
+        Function<NamedClass, Object> instances = namedClass -> namedClass.clazz() == Buffer.class ? buffer : null;
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : controller.getClass().getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()), new RouteHandler(method, controller,
+                        controller.getClass(), new JsonCodec(), new MetricsRegistry(), instances));
+            }
+        }
+        return new RequestHandler(new TrieRouter(routes), StaticFiles.none(), new ResponseCache(1 << 20, 1 << 16),
+                Compression.disabled(), new ServerMetrics(new MetricsRegistry(), null), ConcurrencyLimits.disabled(),
+                FormSettings.defaults());
+    }
+}
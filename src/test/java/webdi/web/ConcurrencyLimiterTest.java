@@ -0,0 +1,102 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void growsWhileLatencyStaysAtBaseline() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 1000);
+        for (int i = 0; i < 100; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        assertTrue(limiter.getLimit() > 40, "limit " + limiter.getLimit());
+    }
+
+    @Test
+    void staysBelowMaximum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 30);
+        for (int i = 0; i < 200; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        assertEquals(30, limiter.getLimit());
+    }
+
+    @Test
+    void shrinksWhenLatencyRisesAboveBaseline() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 4, 1000);
+        for (int i = 0; i < 5; i++) {
+            saturateAndRelease(limiter, FAST);
+        }
+        int grown = limiter.getLimit();
+        for (int i = 0; i < 30; i++) {
+            saturateAndRelease(limiter, SLOW);
+        }
+        assertTrue(limiter.getLimit() < grown / 2, "limit " + limiter.getLimit() + " after " + grown);
+    }
+
+    @Test
+    void ignoresLatencyOfUnusedLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(1.0, true));
+            limiter.release(FAST, false);
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void backsOffOnDroppedRequests() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(1.0, true));
+            limiter.release(FAST, true);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void limitsSharesOfTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 1000);
+        assertEquals(10, acquireAll(limiter, 0.5));
+        assertEquals(5, acquireAll(limiter, 0.75));
+        assertEquals(5, acquireAll(limiter, 1.0));
+        assertEquals(3, limiter.getRejectedCount());
+    }
+
+    @Test
+    void checksWithoutTakingPermit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        assertTrue(limiter.tryAcquire(1.0, false));
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire(1.0, true));
+        assertFalse(limiter.tryAcquire(1.0, false));
+        limiter.cancel();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, limiter.getLimit());
+    }
+
+    // Fills the limit and releases one of the permits with the given latency.
+    private static void saturateAndRelease(ConcurrencyLimiter limiter, long latency) {
+        acquireAll(limiter, 1.0);
+        limiter.release(latency, false);
+        while (limiter.getInFlight() > 0) {
+            limiter.cancel();
+        }
+    }
+
+    private static int acquireAll(ConcurrencyLimiter limiter, double share) {
+        int acquired = 0;
+        while (limiter.tryAcquire(share, true)) {
+            acquired++;
+        }
+        return acquired;
+    }
+}
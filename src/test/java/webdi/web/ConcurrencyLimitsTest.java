@@ -0,0 +1,116 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Controller;
+import webdi.annotation.Priority;
+import webdi.annotation.PriorityLevel;
+import webdi.annotation.Route;
+import webdi.exception.HttpParseException;
+import webdi.metrics.MetricsRegistry;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitsTest {
+
+    @Controller(contentType = "text/plain")
+    public static class PriorityController {
+        @Priority(PriorityLevel.LOW)
+        @Route("/low")
+        public String low() {
+            return "low";
+        }
+
+        @Route("/normal")
+        public String normal() {
+            return "normal";
+        }
+
+        @Priority(PriorityLevel.CRITICAL)
+        @Route("/critical")
+        public String critical() {
+            return "critical";
+        }
+    }
+
+    // the limits of a route belong to its handler, so every request of a route has to come with the same one
+    private static final Map<String, RouteHandler> HANDLERS = routeHandlers();
+
+    private final ConcurrencyLimits limits = new ConcurrencyLimits(true, 20, 20, 20, new MetricsRegistry());
+
+    @Test
+    void givesLowerPrioritiesSmallerSharesOfTheGlobalLimit() throws Exception {
+        List<Admission> admissions = new ArrayList<>();
+        assertEquals(10, startAll(route("low"), admissions));
+        assertEquals(5, startAll(route("normal"), admissions));
+        assertEquals(5, startAll(route("critical"), admissions));
+        admissions.forEach(admission -> admission.release(false));
+        assertEquals(10, startAll(route("low"), new ArrayList<>()));
+    }
+
+    @Test
+    void rejectsAtHeadOnceTheLimitIsReached() throws Exception {
+        RoutedRequest low = route("low");
+        startAll(low, new ArrayList<>());
+        HttpParseException e = assertThrows(HttpParseException.class, () -> limits.admit(low));
+        assertEquals(Status.SERVICE_UNAVAILABLE, e.getStatus());
+        limits.admit(route("critical"));
+    }
+
+    @Test
+    void takesNoPermitUntilBodyIsComplete() throws Exception {
+        RoutedRequest low = route("low");
+        // requests still uploading their bodies don't hold permits
+        List<Admission> uploading = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            uploading.add(limits.admit(low));
+        }
+        assertEquals(0, limits.global().getInFlight());
+        for (int i = 0; i < 10; i++) {
+            uploading.get(i).start();
+        }
+        HttpParseException e = assertThrows(HttpParseException.class, () -> uploading.get(10).start());
+        assertEquals(Status.SERVICE_UNAVAILABLE, e.getStatus());
+        uploading.forEach(Admission::cancel);
+        assertEquals(0, limits.global().getInFlight());
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() throws Exception {
+        ConcurrencyLimits disabled = ConcurrencyLimits.disabled();
+        for (int i = 0; i < 100; i++) {
+            disabled.admit(route("low")).start();
+        }
+    }
+
+    private int startAll(RoutedRequest routedRequest, List<Admission> admissions) {
+        int started = 0;
+        while (true) {
+            Admission admission = new Admission(routedRequest, limits);
+            try {
+                admission.start();
+            } catch (HttpParseException e) {
+                return started;
+            }
+            admissions.add(admission);
+            started++;
+        }
+    }
+
+    private static RoutedRequest route(String name) throws Exception {
+        return new RoutedRequest(HANDLERS.get(name), Map.of());
+    }
+
+    private static Map<String, RouteHandler> routeHandlers() {
+        Map<String, RouteHandler> handlers = new HashMap<>();
+        for (Method method : PriorityController.class.getDeclaredMethods()) {
+            handlers.put(method.getName(), new RouteHandler(method, new PriorityController(), PriorityController.class, new JsonCodec()));
+        }
+        return handlers;
+    }
+}
@@ -0,0 +1,209 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.exception.HttpParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormParserTest {
+
+    private static final String BOUNDARY = "----boundary42";
+    private static final String MULTIPART = "multipart/form-data; boundary=" + BOUNDARY;
+
+    @Test
+    void decodesUrlencodedFields() throws IOException {
+        FormData form = parse("application/x-www-form-urlencoded", "a=1&b=hello+world&a=%C3%A9&flag&&c=");
+        assertEquals(List.of("1", "é"), form.fields("a"));
+        assertEquals("hello world", form.field("b"));
+        assertEquals("", form.field("flag"));
+        assertEquals("", form.field("c"));
+    }
+
+    @Test
+    void rejectsMalformedPercentEncoding() {
+        assertStatus(Status.BAD_REQUEST, "application/x-www-form-urlencoded", "a=%zz");
+    }
+
+    @Test
+    void parsesFieldsAndFiles() throws IOException {
+        FormData form = parse(MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"title\"\r\n\r\n" +
+                "report\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"upload\"; filename=\"a.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\n" +
+                "line one\r\nline two\r\n" +
+                "--" + BOUNDARY + "--\r\n");
+        assertEquals("report", form.field("title"));
+        UploadedFile file = form.file("upload");
+        assertEquals("a.txt", file.fileName());
+        assertEquals("text/plain", file.contentType());
+        assertEquals("line one\r\nline two", new String(file.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ignoresPreambleAndEpilogue() throws IOException {
+        FormData form = parse(MULTIPART, "This is a preamble\r\n--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "1\r\n" +
+                "--" + BOUNDARY + "--\r\nThis is an epilogue --" + BOUNDARY + "\r\n");
+        assertEquals(List.of("1"), form.fields("a"));
+        assertEquals(1, form.fields().size());
+    }
+
+    @Test
+    void rejectsDelimiterFollowedByOtherText() {
+        // a line break and the boundary end the part, so the rest of that line has to be empty or "--"
+        assertStatus(Status.BAD_REQUEST, MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "1\r\n" +
+                "--" + BOUNDARY + "z\r\n");
+    }
+
+    @Test
+    void keepsBoundaryWithoutLineBreakInsidePart() throws IOException {
+        FormData form = parse(MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "x--" + BOUNDARY + "\r\n-" + BOUNDARY + "\r\n" +
+                "--" + BOUNDARY + "--");
+        assertEquals("x--" + BOUNDARY + "\r\n-" + BOUNDARY, form.field("a"));
+    }
+
+    @Test
+    void acceptsQuotedBoundaryAndParameters() throws IOException {
+        String boundary = "with space;and=semicolon";
+        FormData form = parse("multipart/form-data; charset=utf-8; boundary=\"" + boundary + "\"", "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"quoted \\\"name\\\"\"; filename=\"semi;colon.txt\"\r\n\r\n" +
+                "content\r\n" +
+                "--" + boundary + "--");
+        UploadedFile file = form.file("quoted \"name\"");
+        assertEquals("semi;colon.txt", file.fileName());
+        assertEquals("application/octet-stream", file.contentType());
+        assertEquals(7, file.size());
+    }
+
+    @Test
+    void findsDelimiterAcrossBufferRefills() throws IOException {
+        // the scanner reads through a 64 KiB buffer, move the delimiter over its end
+        String head = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"; filename=\"f.bin\"\r\n\r\n";
+        for (int size = 64 * 1024 - head.length() - 24; size < 64 * 1024 - head.length() + 4; size++) {
+            byte[] content = new byte[size];
+            Arrays.fill(content, (byte) '-');
+            String body = head + new String(content, StandardCharsets.ISO_8859_1) + "\r\n--" + BOUNDARY + "--\r\n";
+            UploadedFile file = parse(MULTIPART, body).file("f");
+            assertEquals(size, file.size(), "content of " + size + " bytes");
+            assertArrayEquals(content, file.toByteArray());
+        }
+    }
+
+    @Test
+    void skipsEmptyFileInputs() throws IOException {
+        FormData form = parse(MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"upload\"; filename=\"\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n" +
+                "\r\n" +
+                "--" + BOUNDARY + "--");
+        assertNull(form.file("upload"));
+        assertTrue(form.files().isEmpty());
+    }
+
+    @Test
+    void acceptsBodyEndingWithCloseDelimiter() throws IOException {
+        FormData form = parse(MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "1\r\n" +
+                "--" + BOUNDARY + "--");
+        assertEquals("1", form.field("a"));
+    }
+
+    @Test
+    void rejectsMissingCloseDelimiter() {
+        assertStatus(Status.BAD_REQUEST, MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "1\r\n");
+        assertStatus(Status.BAD_REQUEST, MULTIPART, "--" + BOUNDARY);
+        assertStatus(Status.BAD_REQUEST, MULTIPART, "no delimiter at all");
+    }
+
+    @Test
+    void rejectsMissingOrOverlongBoundary() {
+        assertStatus(Status.BAD_REQUEST, "multipart/form-data", "--x--");
+        assertStatus(Status.BAD_REQUEST, "multipart/form-data; boundary=", "----");
+        String boundary = "b".repeat(71);
+        assertStatus(Status.BAD_REQUEST, "multipart/form-data; boundary=" + boundary, "--" + boundary + "--");
+    }
+
+    @Test
+    void rejectsMalformedPartHeader() {
+        assertStatus(Status.BAD_REQUEST, MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "no colon\r\n\r\n" +
+                "1\r\n" +
+                "--" + BOUNDARY + "--");
+    }
+
+    @Test
+    void rejectsTooManyParts() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            body.append("--").append(BOUNDARY).append("\r\nContent-Disposition: form-data; name=\"p").append(i)
+                    .append("\"\r\n\r\nv\r\n");
+        }
+        body.append("--").append(BOUNDARY).append("--");
+        assertStatus(Status.PAYLOAD_TOO_LARGE, new FormSettings(1024, 1024, 1024, 2), MULTIPART, body.toString());
+    }
+
+    @Test
+    void rejectsOversizedFieldsAndParts() {
+        FormSettings settings = new FormSettings(1024, 8, 4, 10);
+        assertStatus(Status.PAYLOAD_TOO_LARGE, settings, MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "12345\r\n" +
+                "--" + BOUNDARY + "--");
+        assertStatus(Status.PAYLOAD_TOO_LARGE, settings, MULTIPART, "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"; filename=\"a\"\r\n\r\n" +
+                "123456789\r\n" +
+                "--" + BOUNDARY + "--");
+        assertStatus(Status.PAYLOAD_TOO_LARGE, settings, "application/x-www-form-urlencoded", "a=12345");
+        assertStatus(Status.PAYLOAD_TOO_LARGE, new FormSettings(4, 4, 4, 4), "application/x-www-form-urlencoded", "a=123");
+    }
+
+    @Test
+    void rejectsOtherContentTypes() {
+        assertStatus(Status.UNSUPPORTED_MEDIA_TYPE, "application/json", "{}");
+        assertStatus(Status.UNSUPPORTED_MEDIA_TYPE, null, "a=1");
+    }
+
+    @Test
+    void treatsEmptyBodyWithoutContentTypeAsEmptyForm() throws IOException {
+        assertTrue(parse(null, "").fields().isEmpty());
+    }
+
+    private static FormData parse(String contentType, String body) throws IOException {
+        return parse(FormSettings.defaults(), contentType, body);
+    }
+
+    private static FormData parse(FormSettings settings, String contentType, String body) throws IOException {
+        HashMap<String, List<String>> headers = new HashMap<>();
+        if (contentType != null) {
+            headers.put(MyWebServer.CONTENT_TYPE_HEADER_NAME, List.of(contentType));
+        }
+        MyRequest request = new MyRequest(new RequestLine("POST", "/", "HTTP/1.1"), headers,
+                RequestBody.of(body.getBytes(StandardCharsets.UTF_8)));
+        return FormParser.parse(request, settings);
+    }
+
+    private static void assertStatus(Status status, String contentType, String body) {
+        assertStatus(status, FormSettings.defaults(), contentType, body);
+    }
+
+    private static void assertStatus(Status status, FormSettings settings, String contentType, String body) {
+        HttpParseException e = assertThrows(HttpParseException.class, () -> parse(settings, contentType, body));
+        assertEquals(status, e.getStatus());
+    }
+}
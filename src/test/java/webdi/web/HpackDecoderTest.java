@@ -0,0 +1,160 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.exception.Http2Exception;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Examples of RFC 7541 Appendix C, each sequence decoded by one decoder since the blocks share the dynamic table.
+class HpackDecoderTest {
+
+    private static final String DATE_21 = "Mon, 21 Oct 2013 20:13:21 GMT";
+    private static final String DATE_22 = "Mon, 21 Oct 2013 20:13:22 GMT";
+    private static final String LOCATION = "https://www.example.com";
+    private static final String COOKIE = "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1";
+
+    @Test
+    void decodesLiteralWithIndexing() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        assertHeaders(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572",
+                "custom-key", "custom-header");
+        // the entry went into the dynamic table as index 62
+        assertHeaders(decoder, "be", "custom-key", "custom-header");
+    }
+
+    @Test
+    void decodesLiteralWithoutIndexing() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        assertHeaders(decoder, "040c2f73616d706c652f70617468", ":path", "/sample/path");
+        assertThrows(Http2Exception.class, () -> decode(decoder, "be"));
+    }
+
+    @Test
+    void decodesNeverIndexedLiteral() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        assertHeaders(decoder, "100870617373776f726406736563726574", "password", "secret");
+        assertThrows(Http2Exception.class, () -> decode(decoder, "be"));
+    }
+
+    @Test
+    void decodesIndexedField() {
+        assertHeaders(new HpackDecoder(4096), "82", ":method", "GET");
+    }
+
+    @Test
+    void decodesRequestsWithoutHuffman() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        assertHeaders(decoder, "828684410f7777772e6578616d706c652e636f6d",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com");
+        assertHeaders(decoder, "828684be58086e6f2d6361636865",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache");
+        assertHeaders(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565",
+                ":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com",
+                "custom-key", "custom-value");
+    }
+
+    @Test
+    void decodesRequestsWithHuffman() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        assertHeaders(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com");
+        assertHeaders(decoder, "828684be5886a8eb10649cbf",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache");
+        assertHeaders(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+                ":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com",
+                "custom-key", "custom-value");
+    }
+
+    @Test
+    void decodesResponsesWithoutHuffmanEvictingEntries() {
+        HpackDecoder decoder = new HpackDecoder(256);
+        assertHeaders(decoder, "4803333032580770726976617465611d4d6f6e2c203231204f637420323031332032303a31333a323120474d54" +
+                        "6e1768747470733a2f2f7777772e6578616d706c652e636f6d",
+                ":status", "302", "cache-control", "private", "date", DATE_21, "location", LOCATION);
+        // ":status: 307" evicts ":status: 302", the other entries move up by one
+        assertHeaders(decoder, "4803333037c1c0bf",
+                ":status", "307", "cache-control", "private", "date", DATE_21, "location", LOCATION);
+        assertHeaders(decoder, "88c1611d4d6f6e2c203231204f637420323031332032303a31333a323220474d54c05a04677a69707738666f6f3d" +
+                        "4153444a4b48514b425a584f5157454f50495541585157454f49553b206d61782d6167653d333630303b2076657273696f6e3d31",
+                ":status", "200", "cache-control", "private", "date", DATE_22, "location", LOCATION,
+                "content-encoding", "gzip", "set-cookie", COOKIE);
+    }
+
+    @Test
+    void decodesResponsesWithHuffmanEvictingEntries() {
+        HpackDecoder decoder = new HpackDecoder(256);
+        assertHeaders(decoder, "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff6e919d29ad171863c78f0b97c8" +
+                        "e9ae82ae43d3",
+                ":status", "302", "cache-control", "private", "date", DATE_21, "location", LOCATION);
+        assertHeaders(decoder, "4883640effc1c0bf",
+                ":status", "307", "cache-control", "private", "date", DATE_21, "location", LOCATION);
+        assertHeaders(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839bd9ab77ad94e7821dd7f2e6c7b335dfdfcd5b" +
+                        "3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007",
+                ":status", "200", "cache-control", "private", "date", DATE_22, "location", LOCATION,
+                "content-encoding", "gzip", "set-cookie", COOKIE);
+    }
+
+    @Test
+    void shrinksTableOnSizeUpdate() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        decode(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572");
+        // a size update to 0 empties the table, back to 4096 leaves it empty
+        assertEquals(List.of(), decode(decoder, "203fe11f"));
+        assertThrows(Http2Exception.class, () -> decode(decoder, "be"));
+    }
+
+    @Test
+    void rejectsSizeUpdateAboveSetting() {
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(256), "3fe11f"));
+    }
+
+    @Test
+    void rejectsInvalidIndexes() {
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "80"));
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "c0"));
+    }
+
+    @Test
+    void rejectsTruncatedBlocks() {
+        // string length beyond the block
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "400a6375"));
+        // integer continuation missing
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "ff"));
+        // name without value
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "0401"));
+    }
+
+    @Test
+    void rejectsOverlongIntegers() {
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "ffffffffffff7f"));
+    }
+
+    @Test
+    void rejectsInvalidHuffmanPadding() {
+        // "a" (00011) padded with zeros instead of the most significant bits of EOS
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "048118"));
+        // a whole byte of padding
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(4096), "04821fff"));
+        assertHeaders(new HpackDecoder(4096), "04811f", ":path", "a");
+    }
+
+    private static void assertHeaders(HpackDecoder decoder, String hex, String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (String[] header : decode(decoder, hex)) {
+            actual.add(header[0]);
+            actual.add(header[1]);
+        }
+        assertEquals(List.of(expected), actual);
+    }
+
+    private static List<String[]> decode(HpackDecoder decoder, String hex) {
+        byte[] block = HexFormat.of().parseHex(hex);
+        return decoder.decode(block, block.length);
+    }
+}
@@ -0,0 +1,65 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HpackEncoderTest {
+
+    @Test
+    void indexesStaticPairs() {
+        assertEquals("88", encode(":status", "200"));
+        assertEquals("8e", encode(":status", "500"));
+    }
+
+    @Test
+    void referencesStaticNamesWithoutIndexing() {
+        // content-type is static entry 31, past the 4 bit prefix
+        assertEquals("0f10" + "0a" + hex("text/plain"), encode("content-type", "text/plain"));
+        assertEquals("08" + "03" + hex("201"), encode(":status", "201"));
+    }
+
+    @Test
+    void writesUnknownNamesAsLiterals() {
+        assertEquals("00" + "08" + hex("x-custom") + "01" + hex("v"), encode("x-custom", "v"));
+    }
+
+    @Test
+    void writesLongValuesWithMultiByteLengths() {
+        String value = "a".repeat(300);
+        // 300 = 127 + 173, continued as 0xad 0x01
+        assertEquals("00" + "08" + hex("x-custom") + "7fad01" + hex(value), encode("x-custom", value));
+    }
+
+    @Test
+    void roundTripsThroughDecoderWithoutTouchingItsTable() {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":status", "404");
+        HpackEncoder.encode(block, "content-length", "12345");
+        HpackEncoder.encode(block, "set-cookie", "a=b; Path=/");
+        HpackEncoder.encode(block, "x-name", "värde");
+        HpackDecoder decoder = new HpackDecoder(4096);
+        List<String[]> headers = decoder.decode(block.toByteArray(), block.size());
+        assertEquals(4, headers.size());
+        assertArrayEquals(new String[]{":status", "404"}, headers.get(0));
+        assertArrayEquals(new String[]{"content-length", "12345"}, headers.get(1));
+        assertArrayEquals(new String[]{"set-cookie", "a=b; Path=/"}, headers.get(2));
+        assertEquals("x-name", headers.get(3)[0]);
+        // the dynamic table is still empty
+        assertThrows(webdi.exception.Http2Exception.class, () -> decoder.decode(new byte[]{(byte) 0xbe}, 1));
+    }
+
+    private static String encode(String name, String value) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, name, value);
+        return HexFormat.of().formatHex(block.toByteArray());
+    }
+
+    private static String hex(String value) {
+        return HexFormat.of().formatHex(value.getBytes());
+    }
+}
@@ -0,0 +1,287 @@
+package webdi.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import webdi.annotation.BodyParam;
+import webdi.annotation.Controller;
+import webdi.annotation.Header;
+import webdi.annotation.Route;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Talks to a connection over a loopback socket frame by frame, as a client that knows HTTP/2 would.
+class Http2ConnectionTest {
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int END_STREAM = 0x1;
+    private static final int END_HEADERS = 0x4;
+
+    private static final int BIG_SIZE = 1000;
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Thread connectionThread;
+    private DataInputStream input;
+    private OutputStream output;
+    private final HpackDecoder decoder = new HpackDecoder(4096);
+
+    @Controller(contentType = "text/plain")
+    public static class TestController {
+        @Route("/hello")
+        public String hello() {
+            return "hello";
+        }
+
+        @Route("/big")
+        public String big() {
+            return "b".repeat(BIG_SIZE);
+        }
+
+        @Route(method = "POST", value = "/body")
+        public String body(@BodyParam RequestBody body, @Header("x-check") String header) throws IOException {
+            return new String(body.toByteArray(), StandardCharsets.UTF_8) + " header=" + header + " trailer=" +
+                    body.trailers().get("x-check");
+        }
+    }
+
+    @BeforeEach
+    void connect() throws Exception {
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : TestController.class.getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()),
+                        new RouteHandler(method, new TestController(), TestController.class, new JsonCodec()));
+            }
+        }
+        MetricsRegistry registry = new MetricsRegistry();
+        RequestHandler requestHandler = new RequestHandler(new TrieRouter(routes), StaticFiles.none(),
+                new ResponseCache(1 << 20, 1 << 16), Compression.disabled(), new ServerMetrics(registry, "/metrics"),
+                ConcurrencyLimits.disabled(), FormSettings.defaults());
+        ServerSettings settings = new ServerSettings(0, "h2c", 1, 5000, 30000, 1000, 16384, 4096, 1 << 20, null, 2);
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        client.setSoTimeout(5000);
+        Socket socket = serverSocket.accept();
+        Http2Connection connection = new Http2Connection(socket.getInputStream(),
+                new BufferedOutputStream(socket.getOutputStream()), requestHandler, settings, new ThreadPerConnectionExecutor());
+        connectionThread = new Thread(() -> {
+            try (socket) {
+                connection.serve();
+            } catch (IOException e) {
+                // the client went away
+            }
+        });
+        connectionThread.start();
+        input = new DataInputStream(client.getInputStream());
+        output = client.getOutputStream();
+        Frame settingsFrame = readFrame();
+        assertEquals(SETTINGS, settingsFrame.type);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        client.close();
+        connectionThread.join(5000);
+        serverSocket.close();
+    }
+
+    @Test
+    void servesMultiplexedStreams() throws IOException {
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 1, request("GET", "/hello"));
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 3, request("GET", "/big"));
+        Map<Integer, String> statuses = new HashMap<>();
+        Map<Integer, ByteArrayOutputStream> bodies = new HashMap<>();
+        Set<Integer> ended = new HashSet<>();
+        while (ended.size() < 2) {
+            Frame frame = readFrame();
+            if (frame.type == HEADERS) {
+                statuses.put(frame.streamId, headers(frame).get(":status"));
+            } else if (frame.type == DATA) {
+                bodies.computeIfAbsent(frame.streamId, id -> new ByteArrayOutputStream()).writeBytes(frame.payload);
+            }
+            if ((frame.type == HEADERS || frame.type == DATA) && (frame.flags & END_STREAM) != 0) {
+                ended.add(frame.streamId);
+            }
+        }
+        assertEquals(Map.of(1, "200", 3, "200"), statuses);
+        assertEquals("hello", bodies.get(1).toString(StandardCharsets.UTF_8));
+        assertEquals(BIG_SIZE, bodies.get(3).size());
+    }
+
+    @Test
+    void waitsForWindowUpdatesBeforeSendingMoreData() throws IOException {
+        // an initial stream window of 10 bytes
+        writeFrame(SETTINGS, 0, 0, setting(0x4, 10));
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 1, request("GET", "/big"));
+        Frame headers = readFrame(HEADERS);
+        assertEquals("200", headers(headers).get(":status"));
+        Frame first = readFrame(DATA);
+        assertEquals(10, first.payload.length);
+        assertEquals(0, first.flags & END_STREAM);
+        writeFrame(WINDOW_UPDATE, 0, 1, integer(BIG_SIZE - 10));
+        Frame rest = readFrame(DATA);
+        assertEquals(BIG_SIZE - 10, rest.payload.length);
+        assertEquals(END_STREAM, rest.flags & END_STREAM);
+    }
+
+    @Test
+    void receivesBodyInDataFramesAndKeepsTrailersApart() throws IOException {
+        writeFrame(HEADERS, END_HEADERS, 1, request("POST", "/body", "content-length", "11", "x-check", "head"));
+        writeFrame(DATA, 0, 1, "hello ".getBytes(StandardCharsets.UTF_8));
+        writeFrame(DATA, 0, 1, "world".getBytes(StandardCharsets.UTF_8));
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 1, fields("x-check", "abc"));
+        assertEquals("200", headers(readFrame(HEADERS)).get(":status"));
+        assertEquals("hello world header=head trailer=[abc]", new String(readFrame(DATA).payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void resetsStreamWhenBodyDoesNotMatchContentLength() throws IOException {
+        writeFrame(HEADERS, END_HEADERS, 1, request("POST", "/body", "content-length", "5", "x-check", "head"));
+        writeFrame(DATA, END_STREAM, 1, "abc".getBytes(StandardCharsets.UTF_8));
+        Frame reset = readFrame(RST_STREAM);
+        assertEquals(1, reset.streamId);
+        assertEquals(0x1, ByteBuffer.wrap(reset.payload).getInt());
+    }
+
+    @Test
+    void resetsStreamWithMalformedContentLength() throws IOException {
+        writeFrame(HEADERS, END_HEADERS, 1, request("POST", "/body", "content-length", "-5"));
+        assertEquals(0x1, ByteBuffer.wrap(readFrame(RST_STREAM).payload).getInt());
+        writeFrame(HEADERS, END_HEADERS, 3, request("POST", "/body", "content-length", "5", "content-length", "50"));
+        Frame reset = readFrame(RST_STREAM);
+        assertEquals(3, reset.streamId);
+        assertEquals(0x1, ByteBuffer.wrap(reset.payload).getInt());
+    }
+
+    @Test
+    void refusesStreamsOverConcurrencyLimit() throws IOException {
+        // the first two stay open waiting for their bodies
+        writeFrame(HEADERS, END_HEADERS, 1, request("POST", "/body"));
+        writeFrame(HEADERS, END_HEADERS, 3, request("POST", "/body"));
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 5, request("GET", "/hello"));
+        Frame reset = readFrame(RST_STREAM);
+        assertEquals(5, reset.streamId);
+        assertEquals(0x7, ByteBuffer.wrap(reset.payload).getInt());
+    }
+
+    @Test
+    void resetsStreamWithoutPath() throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":method", "GET");
+        HpackEncoder.encode(block, ":scheme", "http");
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 1, block.toByteArray());
+        Frame reset = readFrame(RST_STREAM);
+        assertEquals(0x1, ByteBuffer.wrap(reset.payload).getInt());
+    }
+
+    @Test
+    void answersPing() throws IOException {
+        byte[] payload = "12345678".getBytes(StandardCharsets.US_ASCII);
+        writeFrame(PING, 0, 0, payload);
+        Frame ack = readFrame(PING);
+        assertEquals(0x1, ack.flags);
+        assertArrayEquals(payload, ack.payload);
+    }
+
+    @Test
+    void closesConnectionOnOversizedFrame() throws IOException {
+        writeFrame(DATA, 0, 1, new byte[16385]);
+        Frame goAway = readFrame(GOAWAY);
+        assertEquals(0x6, ByteBuffer.wrap(goAway.payload, 4, 4).getInt());
+    }
+
+    @Test
+    void closesConnectionOnEvenStreamId() throws IOException {
+        writeFrame(HEADERS, END_STREAM | END_HEADERS, 2, request("GET", "/hello"));
+        Frame goAway = readFrame(GOAWAY);
+        assertEquals(0x1, ByteBuffer.wrap(goAway.payload, 4, 4).getInt());
+    }
+
+    private static byte[] request(String method, String path, String... headers) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":method", method);
+        HpackEncoder.encode(block, ":scheme", "http");
+        HpackEncoder.encode(block, ":path", path);
+        HpackEncoder.encode(block, ":authority", "localhost");
+        block.writeBytes(fields(headers));
+        return block.toByteArray();
+    }
+
+    private static byte[] fields(String... headers) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (int i = 0; i < headers.length; i += 2) {
+            HpackEncoder.encode(block, headers[i], headers[i + 1]);
+        }
+        return block.toByteArray();
+    }
+
+    private Map<String, String> headers(Frame frame) {
+        Map<String, String> headers = new HashMap<>();
+        for (String[] field : decoder.decode(frame.payload, frame.payload.length)) {
+            headers.put(field[0], field[1]);
+        }
+        return headers;
+    }
+
+    private static byte[] setting(int identifier, int value) {
+        return ByteBuffer.allocate(6).putShort((short) identifier).putInt(value).array();
+    }
+
+    private static byte[] integer(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(9);
+        header.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length);
+        header.put((byte) type).put((byte) flags).putInt(streamId);
+        output.write(header.array());
+        output.write(payload);
+        output.flush();
+    }
+
+    // Skips settings and window updates the connection sends on its own.
+    private Frame readFrame(int type) throws IOException {
+        while (true) {
+            Frame frame = readFrame();
+            if (frame.type == type) {
+                return frame;
+            }
+            assertTrue(frame.type == SETTINGS || frame.type == WINDOW_UPDATE, "Unexpected frame type " + frame.type);
+        }
+    }
+
+    private Frame readFrame() throws IOException {
+        byte[] header = new byte[9];
+        input.readFully(header);
+        int length = (header[0] & 0xFF) << 16 | (header[1] & 0xFF) << 8 | header[2] & 0xFF;
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        return new Frame(header[3] & 0xFF, header[4] & 0xFF, ByteBuffer.wrap(header, 5, 4).getInt() & 0x7FFFFFFF, payload);
+    }
+
+    private record Frame(int type, int flags, int streamId, byte[] payload) {
+    }
+}
@@ -0,0 +1,236 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.exception.HttpParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRequestParserTest {
+
+    private static final int MAX_HEADER_SIZE = 1024;
+    private static final int MAX_BODY_SIZE = 64;
+
+    private final HttpRequestParser parser = new HttpRequestParser(MAX_HEADER_SIZE, MAX_BODY_SIZE);
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_SIZE).flip();
+
+    @Test
+    void parsesRequestLineAndHeaders() {
+        assertTrue(feed("GET /path?q=1 HTTP/1.1\r\nHost: example.com\r\nX-Custom:  value \r\n\r\n"));
+        MyRequest request = parser.getRequest();
+        assertEquals(new RequestLine("GET", "/path?q=1", "HTTP/1.1"), request.requestLine());
+        assertEquals(List.of("example.com"), request.requestHeaders().get("host"));
+        assertEquals(List.of("value"), request.requestHeaders().get("x-custom"));
+        assertEquals(0, request.requestBody().size());
+    }
+
+    @Test
+    void keepsRepeatedHeadersInOrder() {
+        assertTrue(feed("GET / HTTP/1.1\r\nAccept: a\r\naccept: b\r\n\r\n"));
+        assertEquals(List.of("a", "b"), parser.getRequest().requestHeaders().get("accept"));
+    }
+
+    @Test
+    void acceptsBareLineFeeds() {
+        assertTrue(feed("GET / HTTP/1.0\nHost: x\n\n"));
+        assertEquals("HTTP/1.0", parser.getRequest().requestLine().protocol());
+    }
+
+    @Test
+    void resumesAcrossSplitReads() throws IOException {
+        String request = "POST /upload HTTP/1.1\r\nHost: x\r\nContent-Length: 11\r\n\r\nhello world";
+        for (int i = 0; i < request.length() - 1; i++) {
+            assertFalse(feed(request.substring(i, i + 1)), "complete after " + i + " bytes");
+        }
+        assertTrue(feed(request.substring(request.length() - 1)));
+        assertEquals("hello world", body(parser.getRequest()));
+    }
+
+    @Test
+    void parsesPipelinedRequestsFromOneBuffer() {
+        assertTrue(feed("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n"));
+        assertEquals("/a", parser.getRequest().requestLine().path());
+        parser.reset();
+        assertTrue(parser.parse(buffer));
+        assertEquals("/b", parser.getRequest().requestLine().path());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void toleratesEmptyLinesBetweenRequests() {
+        assertTrue(feed("\r\n\r\nGET / HTTP/1.1\r\n\r\n"));
+        assertEquals("/", parser.getRequest().requestLine().path());
+    }
+
+    @Test
+    void leavesNextRequestAfterBodyInBuffer() throws IOException {
+        assertTrue(feed("POST / HTTP/1.1\r\nContent-Length: 3\r\n\r\nabcGET"));
+        assertEquals("abc", body(parser.getRequest()));
+        assertEquals(3, buffer.remaining());
+    }
+
+    @Test
+    void decodesChunkedBodyWithExtensions() throws IOException {
+        assertTrue(feed("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5;name=value\r\nhello\r\n6 ; other\r\n world\r\n0\r\n\r\n"));
+        assertEquals("hello world", body(parser.getRequest()));
+    }
+
+    @Test
+    void decodesChunkedBodyAcrossSplitReads() throws IOException {
+        String request = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\na\r\n0123456789\r\n1\r\n!\r\n0\r\n\r\n";
+        for (int i = 0; i < request.length() - 1; i++) {
+            assertFalse(feed(request.substring(i, i + 1)), "complete after " + i + " bytes");
+        }
+        assertTrue(feed(request.substring(request.length() - 1)));
+        assertEquals("0123456789!", body(parser.getRequest()));
+    }
+
+    @Test
+    void keepsTrailersApartFromHeaders() {
+        assertTrue(feed("POST / HTTP/1.1\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "2\r\n{}\r\n0\r\nContent-Type: text/plain\r\nX-Checksum: abc\r\n\r\n"));
+        MyRequest request = parser.getRequest();
+        assertEquals(List.of("application/json"), request.requestHeaders().get("content-type"));
+        assertNull(request.requestHeaders().get("x-checksum"));
+        assertEquals(List.of("abc"), request.requestBody().trailers().get("x-checksum"));
+    }
+
+    @Test
+    void rejectsTransferEncodingTogetherWithContentLength() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nContent-Length: 5\r\n\r\n");
+    }
+
+    @Test
+    void rejectsTransferEncodingsOtherThanChunked() {
+        assertStatus(Status.NOT_IMPLEMENTED, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n");
+    }
+
+    @Test
+    void rejectsMalformedContentLength() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: 1x\r\n\r\n");
+        parser.reset();
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        parser.reset();
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: +5\r\n\r\n");
+        parser.reset();
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: 99999999999999999999\r\n\r\n");
+    }
+
+    @Test
+    void rejectsConflictingContentLengths() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: 5\r\nContent-Length: 50\r\n\r\n");
+        parser.reset();
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nContent-Length: 5, 6\r\n\r\n");
+    }
+
+    @Test
+    void acceptsRepeatedIdenticalContentLengths() throws IOException {
+        assertTrue(feed("POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 3, 3\r\n\r\nabc"));
+        assertEquals("abc", body(parser.getRequest()));
+    }
+
+    @Test
+    void rejectsMalformedChunkSize() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n");
+    }
+
+    @Test
+    void rejectsChunkDataWithoutLineBreak() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nabc\r\n");
+    }
+
+    @Test
+    void rejectsMalformedRequestLine() {
+        assertStatus(Status.BAD_REQUEST, "GET/HTTP/1.1\r\n\r\n");
+    }
+
+    @Test
+    void rejectsMalformedHeader() {
+        assertStatus(Status.BAD_REQUEST, "GET / HTTP/1.1\r\nno colon\r\n\r\n");
+    }
+
+    @Test
+    void rejectsWhitespaceBeforeColon() {
+        assertStatus(Status.BAD_REQUEST, "POST / HTTP/1.1\r\nTransfer-Encoding : chunked\r\n\r\n");
+        parser.reset();
+        assertStatus(Status.BAD_REQUEST, "GET / HTTP/1.1\r\nHost\t: x\r\n\r\n");
+    }
+
+    @Test
+    void rejectsHeadOverLimitBeforeLineEnds() {
+        assertStatus(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "GET / HTTP/1.1\r\nX-Long: " + "a".repeat(MAX_HEADER_SIZE - 24));
+    }
+
+    @Test
+    void rejectsHeadOverLimitAcrossLines() {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 20; i++) {
+            request.append("X-Header-").append(i).append(": ").append("a".repeat(40)).append("\r\n");
+        }
+        HttpParseException e = assertThrows(HttpParseException.class, () -> {
+            String head = request.toString();
+            for (int i = 0; i < head.length(); i += 100) {
+                feed(head.substring(i, Math.min(head.length(), i + 100)));
+            }
+        });
+        assertEquals(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, e.getStatus());
+    }
+
+    @Test
+    void rejectsContentLengthOverLimit() {
+        assertStatus(Status.PAYLOAD_TOO_LARGE, "POST / HTTP/1.1\r\nContent-Length: " + (MAX_BODY_SIZE + 1) + "\r\n\r\n");
+    }
+
+    @Test
+    void rejectsChunkedBodyOverLimit() {
+        assertStatus(Status.PAYLOAD_TOO_LARGE, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "20\r\n" + "a".repeat(32) + "\r\n" + "21\r\n");
+    }
+
+    @Test
+    void asksForContinueOnceBeforeBody() {
+        assertFalse(feed("POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\n"));
+        assertTrue(parser.takeContinue());
+        assertFalse(parser.takeContinue());
+        assertTrue(feed("ok"));
+    }
+
+    @Test
+    void doesNotAskForContinueWithoutBody() {
+        assertTrue(feed("POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(parser.takeContinue());
+    }
+
+    @Test
+    void rejectsUnknownExpectation() {
+        assertStatus(Status.EXPECTATION_FAILED, "POST / HTTP/1.1\r\nExpect: something\r\nContent-Length: 2\r\n\r\n");
+    }
+
+    @Test
+    void isIdleOnlyBeforeARequestLine() {
+        assertTrue(parser.isIdle());
+        assertFalse(feed("GET / HTTP/1.1\r\nHo"));
+        assertFalse(parser.isIdle());
+    }
+
+    private boolean feed(String bytes) {
+        buffer.compact();
+        buffer.put(bytes.getBytes(StandardCharsets.ISO_8859_1));
+        buffer.flip();
+        return parser.parse(buffer);
+    }
+
+    private void assertStatus(Status status, String request) {
+        HttpParseException e = assertThrows(HttpParseException.class, () -> feed(request));
+        assertEquals(status, e.getStatus());
+    }
+
+    private static String body(MyRequest request) throws IOException {
+        return new String(request.requestBody().toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
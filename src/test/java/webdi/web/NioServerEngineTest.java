@@ -0,0 +1,126 @@
+package webdi.web;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Controller;
+import webdi.annotation.Route;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the engine on a free port, its acceptor and event loop threads are daemons left to the end of the run.
+class NioServerEngineTest {
+
+    private static final int BIG_SIZE = 32 * 1024 * 1024;
+    private static final int WRITE_TIMEOUT = 200;
+
+    private static int port;
+
+    @Controller(contentType = "text/plain")
+    public static class TestController {
+        private static final String BIG = "b".repeat(BIG_SIZE);
+
+        @Route("/big")
+        public String big() {
+            return BIG;
+        }
+
+        @Route("/slow")
+        public String slow() throws InterruptedException {
+            Thread.sleep(1500);
+            return "slow";
+        }
+    }
+
+    @BeforeAll
+    static void start() throws Exception {
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : TestController.class.getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()),
+                        new RouteHandler(method, new TestController(), TestController.class, new JsonCodec()));
+            }
+        }
+        RequestHandler requestHandler = new RequestHandler(new TrieRouter(routes), StaticFiles.none(),
+                new ResponseCache(1 << 20, 1 << 16), Compression.disabled(), new ServerMetrics(new MetricsRegistry(), null),
+                ConcurrencyLimits.disabled(), FormSettings.defaults());
+        try (ServerSocket free = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = free.getLocalPort();
+        }
+        ServerSettings settings = new ServerSettings(port, "nio", 1, 5000, WRITE_TIMEOUT, 1000, 16384, 4096, 1 << 20, null, 2);
+        NioServerEngine engine = new NioServerEngine(settings, requestHandler, new ThreadPerConnectionExecutor());
+        Thread acceptor = new Thread(() -> {
+            try {
+                engine.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (int attempt = 0; ; attempt++) {
+            try (Socket probe = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return;
+            } catch (IOException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Test
+    void closesConnectionWhoseClientStopsReading() throws Exception {
+        try (Socket client = new Socket()) {
+            client.setReceiveBufferSize(16 * 1024);
+            client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            client.setSoTimeout(10000);
+            send(client, "/big");
+            // the sweep runs every second, give it time to find the stalled write
+            Thread.sleep(2500);
+            long read = 0;
+            InputStream input = client.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                for (int n; (n = input.read(buffer)) >= 0;) {
+                    read += n;
+                }
+            } catch (SocketException e) {
+                // reset once the server gave up
+            }
+            assertTrue(read < BIG_SIZE, "read " + read + " bytes");
+        }
+    }
+
+    @Test
+    void keepsConnectionWhileHandlerIsBusy() throws Exception {
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            client.setSoTimeout(10000);
+            send(client, "/slow");
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("slow"), response);
+        }
+    }
+
+    private static void send(Socket client, String path) throws IOException {
+        OutputStream output = client.getOutputStream();
+        output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+}
@@ -0,0 +1,109 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.BodyParam;
+import webdi.annotation.Controller;
+import webdi.annotation.FormParam;
+import webdi.annotation.Header;
+import webdi.annotation.PathParam;
+import webdi.annotation.QueryParam;
+import webdi.annotation.Route;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterBindersTest {
+
+    public record Item(String name, int count) {
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class BindingController {
+        @Route("/items/{id}")
+        public String path(@PathParam("name") String name) {
+            return name;
+        }
+
+        @Route("/query")
+        public String query(@QueryParam("page") int page) {
+            return Integer.toString(page);
+        }
+
+        @Route(method = "POST", value = "/form")
+        public String form(@FormParam("title") String title) {
+            return title;
+        }
+
+        @Route("/header")
+        public String header(@Header("X-Token") String token) {
+            return token;
+        }
+
+        @Route(method = "POST", value = "/json")
+        public String json(@BodyParam Item item) {
+            return item.name() + " " + item.count();
+        }
+    }
+
+    private final RequestHandler requestHandler = requestHandler(new BindingController());
+
+    @Test
+    void bindsPresentParameters() throws IOException {
+        assertResponse(200, "3", "GET", "/query?page=3", Map.of(), "");
+        assertResponse(200, "report", "POST", "/form", Map.of("content-type", "application/x-www-form-urlencoded"), "title=report");
+        assertResponse(200, "abc", "GET", "/header", Map.of("x-token", "abc"), "");
+        assertResponse(200, "pen 2", "POST", "/json", Map.of(), "{\"name\":\"pen\",\"count\":2}");
+    }
+
+    @Test
+    void rejectsMissingParameters() throws IOException {
+        assertResponse(400, null, "GET", "/items/1", Map.of(), "");
+        assertResponse(400, null, "GET", "/query", Map.of(), "");
+        assertResponse(400, null, "POST", "/form", Map.of("content-type", "application/x-www-form-urlencoded"), "other=1");
+        assertResponse(400, null, "GET", "/header", Map.of(), "");
+    }
+
+    @Test
+    void rejectsMalformedJsonBodies() throws IOException {
+        assertResponse(400, null, "POST", "/json", Map.of(), "{\"name\":");
+        assertResponse(400, null, "POST", "/json", Map.of(), "{\"name\":\"pen\",\"count\":\"many\"}");
+        assertResponse(400, null, "POST", "/json", Map.of(), "[1, 2]");
+    }
+
+    private void assertResponse(int status, String expectedBody, String method, String target, Map<String, String> headers,
+                                String body) throws IOException {
+        HashMap<String, List<String>> requestHeaders = new HashMap<>();
+        headers.forEach((name, value) -> requestHeaders.put(name, List.of(value)));
+        MyRequest request = new MyRequest(new RequestLine(method, target, "HTTP/1.1"), requestHeaders,
+                RequestBody.of(body.getBytes(StandardCharsets.UTF_8)));
+        MyResponse response = requestHandler.handleRequest(request, null).join();
+        assertEquals(status, response.statusLine().statusCode(), method + " " + target);
+        if (expectedBody != null) {
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            response.responseBody().writeTo(written);
+            assertEquals(expectedBody, written.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static RequestHandler requestHandler(Object controller) {
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : controller.getClass().getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()),
+                        new RouteHandler(method, controller, controller.getClass(), new JsonCodec()));
+            }
+        }
+        return new RequestHandler(new TrieRouter(routes), StaticFiles.none(), new ResponseCache(1 << 20, 1 << 16),
+                Compression.disabled(), new ServerMetrics(new MetricsRegistry(), null), ConcurrencyLimits.disabled(),
+                FormSettings.defaults());
+    }
+}
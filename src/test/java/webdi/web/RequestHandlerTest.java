@@ -0,0 +1,69 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import webdi.annotation.BodyParam;
+import webdi.annotation.Controller;
+import webdi.annotation.Route;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestHandlerTest {
+
+    @Controller(contentType = "text/plain")
+    public static class EchoController {
+        @Route(method = "POST", value = "/echo")
+        public InputStream echo(@BodyParam InputStream body) {
+            return body;
+        }
+    }
+
+    @Test
+    void keepsSpilledBodyOpenUntilResponseIsWritten(@TempDir Path spillDirectory) throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        RequestBody body = new RequestBody(content.length, 4, spillDirectory);
+        body.write(ByteBuffer.wrap(content), content.length);
+        body.finish();
+        assertFalse(body.isInMemory());
+        MyRequest request = new MyRequest(new RequestLine("POST", "/echo", "HTTP/1.1"), new HashMap<>(), body);
+
+        MyResponse response = requestHandler(new EchoController()).handleRequest(request, null).join();
+        // the route streams the body back, it's only read when the engine writes the response
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        response.responseBody().writeTo(written);
+        assertArrayEquals(content, written.toByteArray());
+
+        body.close();
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    private static RequestHandler requestHandler(Object controller) throws IOException {
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : controller.getClass().getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()),
+                        new RouteHandler(method, controller, controller.getClass(), new JsonCodec()));
+            }
+        }
+        return new RequestHandler(new TrieRouter(routes), StaticFiles.none(), new ResponseCache(1 << 20, 1 << 16),
+                Compression.disabled(), new ServerMetrics(new MetricsRegistry(), null), ConcurrencyLimits.disabled(),
+                FormSettings.defaults());
+    }
+}
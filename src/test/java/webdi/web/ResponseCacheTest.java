@@ -0,0 +1,130 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Cached;
+import webdi.annotation.Controller;
+import webdi.annotation.Cookie;
+import webdi.annotation.Header;
+import webdi.annotation.Inject;
+import webdi.annotation.Route;
+import webdi.annotation.Scope;
+import webdi.annotation.ScopeType;
+import webdi.di.InjectableComponent;
+import webdi.di.NamedClass;
+import webdi.di.ScopedInstance;
+import webdi.exception.WebServerException;
+import webdi.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    @Controller(contentType = "text/plain")
+    public static class SessionController {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Cached(headers = "Cookie")
+        @Route("/session")
+        public String session(@Cookie("session") String session) {
+            calls.incrementAndGet();
+            return "session " + session;
+        }
+
+        @Cached
+        @Route("/everyone")
+        public String everyone() {
+            calls.incrementAndGet();
+            return "everyone";
+        }
+    }
+
+    @Controller(contentType = "text/plain")
+    public static class UnsafeController {
+        @Cached
+        @Route("/cookie")
+        public String cookie(@Cookie("session") String session) {
+            return session;
+        }
+
+        @Cached(headers = "accept")
+        @Route("/header")
+        public String header(@Header("Authorization") String authorization) {
+            return authorization;
+        }
+
+        @Cached
+        @Route("/scoped")
+        public String scoped(@Inject User user) {
+            return user.toString();
+        }
+    }
+
+    @Scope(ScopeType.REQUEST)
+    public static class User {
+    }
+
+    @Test
+    void keysResponsesByCookie() throws Exception {
+        SessionController controller = new SessionController();
+        RequestHandler requestHandler = requestHandler(controller);
+        assertEquals("session a", body(requestHandler, "/session", "session=a"));
+        assertEquals("session b", body(requestHandler, "/session", "session=b"));
+        assertEquals("session a", body(requestHandler, "/session", "session=a"));
+        assertEquals(2, controller.calls.get());
+    }
+
+    @Test
+    void sharesResponsesWithoutRequestInputs() throws Exception {
+        SessionController controller = new SessionController();
+        RequestHandler requestHandler = requestHandler(controller);
+        assertEquals("everyone", body(requestHandler, "/everyone", "session=a"));
+        assertEquals("everyone", body(requestHandler, "/everyone", "session=b"));
+        assertEquals(1, controller.calls.get());
+    }
+
+    @Test
+    void rejectsRoutesReadingInputsOutsideTheKey() throws Exception {
+        ScopedInstance user = new ScopedInstance(new InjectableComponent(User.class), User.class.getAnnotation(Scope.class), new Object[0]);
+        Function<NamedClass, Object> instances = namedClass -> namedClass.clazz() == User.class ? user : null;
+        for (String name : List.of("cookie", "header", "scoped")) {
+            Method method = UnsafeController.class.getMethod(name, name.equals("scoped") ? User.class : String.class);
+            WebServerException e = assertThrows(WebServerException.class, () -> new RouteHandler(method, new UnsafeController(),
+                    UnsafeController.class, new JsonCodec(), new MetricsRegistry(), instances));
+            assertTrue(e.getMessage().contains("@Cached"), e.getMessage());
+        }
+    }
+
+    private static RequestHandler requestHandler(Object controller) {
+        Map<HandlerKey, RouteHandler> routes = new HashMap<>();
+        for (Method method : controller.getClass().getMethods()) {
+            Route route = method.getAnnotation(Route.class);
+            if (route != null) {
+                routes.put(new HandlerKey(route.method(), route.value()),
+                        new RouteHandler(method, controller, controller.getClass(), new JsonCodec()));
+            }
+        }
+        return new RequestHandler(new TrieRouter(routes), StaticFiles.none(), new ResponseCache(1 << 20, 1 << 16),
+                Compression.disabled(), new ServerMetrics(new MetricsRegistry(), null), ConcurrencyLimits.disabled(),
+                FormSettings.defaults());
+    }
+
+    private static String body(RequestHandler requestHandler, String path, String cookie) throws IOException {
+        HashMap<String, List<String>> headers = new HashMap<>();
+        headers.put("cookie", List.of(cookie));
+        MyRequest request = new MyRequest(new RequestLine("GET", path, "HTTP/1.1"), headers, RequestBody.of(new byte[0]));
+        MyResponse response = requestHandler.handleRequest(request, null).join();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.responseBody().writeTo(body);
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
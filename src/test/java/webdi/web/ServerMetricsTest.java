@@ -0,0 +1,53 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.Config;
+import webdi.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerMetricsTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    void countsResponsesUnderTheirOwnStatus() {
+        ServerMetrics metrics = new ServerMetrics(registry, null);
+        metrics.responses(200).increment();
+        metrics.responses(200).increment();
+        metrics.responses(700).increment();
+        metrics.responses(999).increment();
+        metrics.responses(-1).increment();
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("webdi_responses_total{status=\"200\"} 2"), scrape);
+        assertTrue(scrape.contains("webdi_responses_total{status=\"700\"} 1"), scrape);
+        assertTrue(scrape.contains("webdi_responses_total{status=\"999\"} 1"), scrape);
+        assertTrue(scrape.contains("webdi_responses_total{status=\"-1\"} 1"), scrape);
+        assertFalse(scrape.contains("status=\"0\""), scrape);
+    }
+
+    @Test
+    void exposesNothingByDefault() {
+        ServerMetrics metrics = ServerMetrics.fromConfig(new Config(Map.of()), registry);
+        assertNull(metrics.path());
+        assertFalse(metrics.isScrape(request("GET", "/metrics")));
+    }
+
+    @Test
+    void servesScrapesAtConfiguredPath() {
+        ServerMetrics metrics = ServerMetrics.fromConfig(new Config(Map.of(ServerMetrics.ENABLED_KEY, "true",
+                ServerMetrics.PATH_KEY, "/internal/metrics")), registry);
+        assertTrue(metrics.isScrape(request("GET", "/internal/metrics")));
+        assertTrue(metrics.isScrape(request("GET", "/internal/metrics?name=x")));
+        assertFalse(metrics.isScrape(request("POST", "/internal/metrics")));
+        assertFalse(metrics.isScrape(request("GET", "/internal/metricsx")));
+        assertFalse(metrics.isScrape(request("GET", "/metrics")));
+    }
+
+    private static MyRequest request(String method, String path) {
+        return new MyRequest(new RequestLine(method, path, "HTTP/1.1"), new HashMap<>(), RequestBody.of(new byte[0]));
+    }
+}
@@ -0,0 +1,177 @@
+package webdi.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import webdi.Config;
+import webdi.exception.WebServerException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaticFilesTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final Instant MODIFIED = Instant.parse("2024-01-02T03:04:05Z");
+
+    @TempDir
+    Path root;
+    private StaticFiles staticFiles;
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        Path file = Files.writeString(root.resolve("file.bin"), CONTENT);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+        Files.createDirectory(root.resolve("dir"));
+        Files.writeString(root.resolve("dir").resolve("a+b.txt"), "plus");
+        staticFiles = StaticFiles.fromConfig(new Config(Map.of(StaticFiles.MAPPINGS_KEY, "/files=file:" + root)),
+                Compression.disabled());
+    }
+
+    @Test
+    void decodesPathsInsideTheRoot() {
+        assertEquals("dir/file.txt", StaticFiles.decode("dir/file.txt"));
+        assertEquals("a b+c.txt", StaticFiles.decode("a%20b+c.txt"));
+        assertEquals("..hidden", StaticFiles.decode("..hidden"));
+    }
+
+    @Test
+    void rejectsPathsThatCouldEscapeTheRoot() {
+        for (String path : List.of("", "../secret", "dir/../../secret", "./file", "dir//file", "dir/", "%2e%2e/secret",
+                "%2E%2E%2Fsecret", "dir%2f..%2f..%2fsecret", "..\\secret", "dir%5c..%5csecret", "file%00.txt", "%zz")) {
+            assertNull(StaticFiles.decode(path), path);
+        }
+    }
+
+    @Test
+    void servesFilesAndFallsThroughForMissingOnes() throws IOException {
+        MyResponse response = serve("/files/file.bin").orElseThrow();
+        assertEquals(200, response.statusLine().statusCode());
+        assertEquals(List.of("10"), response.responseHeaders().get("content-length"));
+        assertEquals(CONTENT, body(response));
+        assertEquals("plus", body(serve("/files/dir/a+b.txt?v=1").orElseThrow()));
+        assertTrue(serve("/files/missing.bin").isEmpty());
+        assertTrue(serve("/files/dir").isEmpty());
+        assertTrue(serve("/files/%2e%2e/secret").isEmpty());
+        assertTrue(serve("/other/file.bin").isEmpty());
+    }
+
+    @Test
+    void answersHeadWithoutBody() throws IOException {
+        MyRequest request = request("HEAD", "/files/file.bin", Map.of());
+        MyResponse response = staticFiles.serve(request, List.of()).orElseThrow();
+        assertEquals(List.of("10"), response.responseHeaders().get("content-length"));
+        assertNull(response.responseBody());
+    }
+
+    @Test
+    void servesSingleRanges() throws IOException {
+        assertRange("bytes=0-3", "bytes 0-3/10", "0123");
+        assertRange("bytes=5-", "bytes 5-9/10", "56789");
+        assertRange("bytes=7-100", "bytes 7-9/10", "789");
+        assertRange("bytes=-3", "bytes 7-9/10", "789");
+        assertRange("bytes=-30", "bytes 0-9/10", CONTENT);
+    }
+
+    @Test
+    void ignoresMultipleAndMalformedRanges() throws IOException {
+        for (String range : List.of("bytes=0-1,3-4", "bytes=3-1", "bytes=x-", "items=0-1", "bytes=-")) {
+            MyResponse response = serve("/files/file.bin", Map.of("range", range)).orElseThrow();
+            assertEquals(200, response.statusLine().statusCode(), range);
+            assertEquals(CONTENT, body(response), range);
+        }
+    }
+
+    @Test
+    void rejectsUnsatisfiableRanges() throws IOException {
+        for (String range : List.of("bytes=10-", "bytes=-0")) {
+            MyResponse response = serve("/files/file.bin", Map.of("range", range)).orElseThrow();
+            assertEquals(416, response.statusLine().statusCode(), range);
+            assertEquals(List.of("bytes */10"), response.responseHeaders().get("content-range"));
+        }
+    }
+
+    @Test
+    void appliesRangeOnlyWhenIfRangeMatches() throws IOException {
+        String etag = serve("/files/file.bin").orElseThrow().responseHeaders().get("etag").get(0);
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC).format(MODIFIED);
+        assertEquals(206, serve("/files/file.bin", Map.of("range", "bytes=0-3", "if-range", etag)).orElseThrow().statusLine().statusCode());
+        assertEquals(206, serve("/files/file.bin", Map.of("range", "bytes=0-3", "if-range", lastModified)).orElseThrow().statusLine().statusCode());
+        MyResponse stale = serve("/files/file.bin", Map.of("range", "bytes=0-3", "if-range", "\"stale\"")).orElseThrow();
+        assertEquals(200, stale.statusLine().statusCode());
+        assertEquals(CONTENT, body(stale));
+    }
+
+    @Test
+    void answersNotModifiedForMatchingValidators() throws IOException {
+        String etag = serve("/files/file.bin").orElseThrow().responseHeaders().get("etag").get(0);
+        assertStatus(304, Map.of("if-none-match", etag));
+        assertStatus(304, Map.of("if-none-match", "\"other\", W/" + etag));
+        assertStatus(304, Map.of("if-none-match", "*"));
+        assertStatus(200, Map.of("if-none-match", "\"other\""));
+        assertStatus(304, Map.of("if-modified-since", "Tue, 02 Jan 2024 03:04:05 GMT"));
+        assertStatus(200, Map.of("if-modified-since", "Tue, 02 Jan 2024 03:04:04 GMT"));
+        assertStatus(200, Map.of("if-modified-since", "yesterday"));
+        // If-None-Match wins over If-Modified-Since
+        assertStatus(200, Map.of("if-none-match", "\"other\"", "if-modified-since", "Tue, 02 Jan 2024 03:04:05 GMT"));
+        MyResponse notModified = serve("/files/file.bin", Map.of("if-none-match", etag)).orElseThrow();
+        assertNull(notModified.responseBody());
+        assertEquals(List.of(etag), notModified.responseHeaders().get("etag"));
+    }
+
+    @Test
+    void refusesToServeTheWholeClasspath() {
+        for (String location : List.of("classpath:", "classpath:/", "classpath://")) {
+            assertThrows(WebServerException.class, () -> StaticFiles.fromConfig(
+                    new Config(Map.of(StaticFiles.MAPPINGS_KEY, "/=" + location)), Compression.disabled()), location);
+        }
+    }
+
+    private void assertRange(String range, String contentRange, String expected) throws IOException {
+        MyResponse response = serve("/files/file.bin", Map.of("range", range)).orElseThrow();
+        assertEquals(206, response.statusLine().statusCode(), range);
+        assertEquals(List.of(contentRange), response.responseHeaders().get("content-range"), range);
+        assertEquals(List.of(Integer.toString(expected.length())), response.responseHeaders().get("content-length"), range);
+        assertEquals(expected, body(response), range);
+    }
+
+    private void assertStatus(int status, Map<String, String> headers) throws IOException {
+        assertEquals(status, serve("/files/file.bin", headers).orElseThrow().statusLine().statusCode(), headers.toString());
+    }
+
+    private Optional<MyResponse> serve(String path) throws IOException {
+        return serve(path, Map.of());
+    }
+
+    private Optional<MyResponse> serve(String path, Map<String, String> headers) throws IOException {
+        return staticFiles.serve(request("GET", path, headers), List.of());
+    }
+
+    private static MyRequest request(String method, String path, Map<String, String> headers) {
+        HashMap<String, List<String>> requestHeaders = new HashMap<>();
+        headers.forEach((name, value) -> requestHeaders.put(name, List.of(value)));
+        return new MyRequest(new RequestLine(method, path, "HTTP/1.1"), requestHeaders, RequestBody.of(new byte[0]));
+    }
+
+    private static String body(MyResponse response) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.responseBody().writeTo(body);
+        if (response.responseBody() instanceof TransferableBody transferableBody) {
+            transferableBody.close();
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,107 @@
+package webdi.web;
+
+import org.junit.jupiter.api.Test;
+import webdi.annotation.Controller;
+import webdi.annotation.Route;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrieRouterTest {
+
+    @Controller(contentType = "text/plain")
+    public static class RoutesController {
+        // the router only keys on HandlerKey, every route shares this handler method
+        @Route("/")
+        public String route() {
+            return "";
+        }
+    }
+
+    private final Map<String, RouteHandler> handlers = new HashMap<>();
+
+    @Test
+    void matchesConstantAndParameterSegments() {
+        TrieRouter router = router("GET /", "GET /users", "GET /users/{id}", "GET /users/{id}/posts/{post}", "POST /users");
+        assertRoute(router, "GET /", "GET /", Map.of());
+        assertRoute(router, "GET /users", "GET /users", Map.of());
+        assertRoute(router, "GET /users/42?sort=asc", "GET /users/{id}", Map.of("id", "42"));
+        assertRoute(router, "GET //users//42/", "GET /users/{id}", Map.of("id", "42"));
+        assertRoute(router, "GET /users/42/posts/7", "GET /users/{id}/posts/{post}", Map.of("id", "42", "post", "7"));
+        assertRoute(router, "POST /users", "POST /users", Map.of());
+        assertTrue(router.route(new RequestLine("POST", "/users/42", "HTTP/1.1")).isEmpty());
+        assertTrue(router.route(new RequestLine("DELETE", "/users", "HTTP/1.1")).isEmpty());
+        assertTrue(router.route(new RequestLine("GET", "/users/42/posts", "HTTP/1.1")).isEmpty());
+        assertTrue(router.route(new RequestLine("GET", "/user", "HTTP/1.1")).isEmpty());
+    }
+
+    @Test
+    void prefersConstantsOverConstrainedOverUnconstrainedParameters() {
+        TrieRouter router = router("GET /items/new", "GET /items/{id:[0-9]+}", "GET /items/{name}");
+        assertRoute(router, "GET /items/new", "GET /items/new", Map.of());
+        assertRoute(router, "GET /items/12", "GET /items/{id:[0-9]+}", Map.of("id", "12"));
+        assertRoute(router, "GET /items/pen", "GET /items/{name}", Map.of("name", "pen"));
+    }
+
+    @Test
+    void ordersConstrainedParametersByPattern() {
+        TrieRouter router = router("GET /v/{b:[a-z]+}", "GET /v/{a:[a-c]+}");
+        // both match "abc", the pattern that sorts first wins no matter which route was added first
+        assertRoute(router, "GET /v/abc", "GET /v/{a:[a-c]+}", Map.of("a", "abc"));
+        assertRoute(router, "GET /v/xyz", "GET /v/{b:[a-z]+}", Map.of("b", "xyz"));
+    }
+
+    @Test
+    void backtracksWhenPreferredBranchDoesNotLeadToHandler() {
+        TrieRouter router = router("GET /files/latest/meta", "GET /files/{id}/content", "GET /files/{id:[0-9]+}/size");
+        assertRoute(router, "GET /files/latest/content", "GET /files/{id}/content", Map.of("id", "latest"));
+        assertRoute(router, "GET /files/latest/meta", "GET /files/latest/meta", Map.of());
+        assertRoute(router, "GET /files/3/content", "GET /files/{id}/content", Map.of("id", "3"));
+        assertRoute(router, "GET /files/3/size", "GET /files/{id:[0-9]+}/size", Map.of("id", "3"));
+        assertTrue(router.route(new RequestLine("GET", "/files/latest/size", "HTTP/1.1")).isEmpty());
+    }
+
+    @Test
+    void capturesParametersOfTheBranchThatMatched() {
+        TrieRouter router = router("GET /{a}/{b}/x", "GET /{c:[0-9]+}/y/z");
+        // the constrained branch is tried first and fails on the last segment
+        assertRoute(router, "GET /1/y/x", "GET /{a}/{b}/x", Map.of("a", "1", "b", "y"));
+        assertRoute(router, "GET /1/y/z", "GET /{c:[0-9]+}/y/z", Map.of("c", "1"));
+    }
+
+    @Test
+    void sharesParameterNodesAcrossRoutes() {
+        TrieRouter router = router("GET /shops/{id:[0-9]+}/items", "GET /shops/{id:[0-9]+}/orders");
+        assertRoute(router, "GET /shops/5/items", "GET /shops/{id:[0-9]+}/items", Map.of("id", "5"));
+        assertRoute(router, "GET /shops/5/orders", "GET /shops/{id:[0-9]+}/orders", Map.of("id", "5"));
+    }
+
+    private TrieRouter router(String... routes) {
+        Method method;
+        try {
+            method = RoutesController.class.getMethod("route");
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+        Map<HandlerKey, RouteHandler> routesMap = new HashMap<>();
+        for (String route : routes) {
+            String[] parts = route.split(" ");
+            RouteHandler handler = new RouteHandler(method, new RoutesController(), RoutesController.class, new JsonCodec());
+            handlers.put(route, handler);
+            routesMap.put(new HandlerKey(parts[0], parts[1]), handler);
+        }
+        return new TrieRouter(routesMap);
+    }
+
+    private void assertRoute(TrieRouter router, String request, String route, Map<String, String> pathParameters) {
+        String[] parts = request.split(" ");
+        Optional<RoutedRequest> routed = router.route(new RequestLine(parts[0], parts[1], "HTTP/1.1"));
+        assertTrue(routed.isPresent(), request);
+        assertSame(handlers.get(route), routed.get().routeHandler(), request);
+        assertEquals(pathParameters, routed.get().pathParameters(), request);
+    }
+}